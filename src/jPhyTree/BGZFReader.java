@@ -0,0 +1,306 @@
+/**
+ * Class: BGZFReader
+ * Constructor: BGZFReader(String fileName, int numThreads)
+ * ----
+ * Decompresses a gzip-compressed VCF for the loader, one wave of
+ * blocks at a time, so a compressed file is parsed in bounded memory
+ * however large it is. BGZF files (the blocked gzip written by bgzip
+ * and GATK) are a series of independent gzip members of at most 64KB
+ * each whose headers record their compressed and uncompressed sizes,
+ * so every block of a wave can be given its place in the wave's
+ * buffer up front and all of them are inflated in parallel. Plain
+ * gzip files can only be inflated as one stream and are read
+ * sequentially, as is the rest of a BGZF file from the first member
+ * that is not a BGZF block.
+ *
+ * The reader is the uncompressed VCF as an InputStream. VCFLoader
+ * hands it to loadStream, whose VCFStreamReader pulls the next wave
+ * through it while the lines of the last one are being parsed.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+class BGZFReader extends InputStream {
+
+	/* Private Constants */
+	private static final int MAX_BLOCK_SIZE = 1 << 16;
+	private static final int HEADER_SIZE = 12;
+	private static final int TRAILER_SIZE = 8;
+	private static final int FEXTRA = 4;
+	private static final int BLOCKS_PER_TASK = 64;
+
+	/* Private Instance Variables */
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ForkJoinPool pool;
+	private final int blocksPerWave;
+	/* The file offset of the first block of the next wave */
+	private long offset;
+	/* The inflated wave, read from position up to limit */
+	private byte[] wave = new byte[0];
+	private int position;
+	private int limit;
+	/* The rest of the file as one gzip stream, once a member is found that is not a BGZF block */
+	private InputStream rest;
+
+	/**
+	 * Function: BGZFReader(String fileName, int numThreads)
+	 * Usage: InputStream vcf = new BGZFReader(fileName, numThreads)
+	 * ----
+	 * Opens a gzip or BGZF file. Nothing is inflated until the stream
+	 * is first read.
+	 *
+	 * @param fileName	The path of the compressed VCF
+	 * @param numThreads	The number of threads to inflate BGZF blocks with;
+	 * 			each wave holds BLOCKS_PER_TASK blocks per thread
+	 * @throws IOException	If the file cannot be opened
+	 */
+	BGZFReader(String fileName, int numThreads) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+		blocksPerWave = Math.max(1, numThreads) * BLOCKS_PER_TASK;
+	}
+
+	/**
+	 * Function: isGzip(String fileName)
+	 * Usage: if (BGZFReader.isGzip(fileName)) ...
+	 * ----
+	 * @param fileName	The path of the file to check
+	 * @return	true if the file starts with the gzip magic number
+	 * @throws IOException	If the file cannot be read
+	 */
+	static boolean isGzip(String fileName) throws IOException {
+		InputStream in = new FileInputStream(fileName);
+		try {
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} finally {
+			in.close();
+		}
+	}
+
+	public int read() throws IOException {
+		while (position == limit){
+			if (rest != null) return rest.read();
+			if (!nextWave()) return -1;
+		}
+		return wave[position++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		while (position == limit){
+			if (rest != null) return rest.read(b, off, len);
+			if (!nextWave()) return -1;
+		}
+		int n = Math.min(len, limit - position);
+		System.arraycopy(wave, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	public void close() throws IOException {
+		try {
+			if (rest != null) rest.close();
+		} finally {
+			file.close();
+			if (pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * Function: nextWave()
+	 * Usage: if (!nextWave()) return -1
+	 * ----
+	 * Walks the headers of up to blocksPerWave blocks from offset,
+	 * inflates them into the wave buffer and moves offset past them.
+	 * If the member at offset is a gzip member but not a BGZF block,
+	 * the rest of the file is left to a GZIPInputStream instead.
+	 *
+	 * @return	false at the end of the file
+	 * @throws IOException	If a block is truncated, corrupt or fails its CRC
+	 */
+	private boolean nextWave() throws IOException {
+		long size = channel.size();
+		if (offset >= size) return false;
+		MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+				Math.min(size - offset, (long) blocksPerWave * MAX_BLOCK_SIZE));
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		ArrayList<Block> blocks = new ArrayList<Block>();
+		int mapOffset = 0;
+		int waveSize = 0;
+		while (blocks.size() < blocksPerWave && mapOffset < map.limit()){
+			int blockSize = blockSize(map, mapOffset);
+			if (blockSize < 0) break;
+			if (mapOffset + blockSize > map.limit()){
+				if (offset + mapOffset + blockSize > size) throw new IOException("Truncated BGZF block");
+				break;
+			}
+			int extraLength = map.getShort(mapOffset + 10) & 0xffff;
+			int dataStart = mapOffset + HEADER_SIZE + extraLength;
+			int dataLength = blockSize - HEADER_SIZE - extraLength - TRAILER_SIZE;
+			int crc = map.getInt(mapOffset + blockSize - TRAILER_SIZE);
+			int uncompressedSize = map.getInt(mapOffset + blockSize - 4);
+			if (dataLength < 0 || uncompressedSize < 0 || uncompressedSize > MAX_BLOCK_SIZE)
+				throw new IOException("Corrupt BGZF block");
+			blocks.add(new Block(map, dataStart, dataLength, crc, uncompressedSize, waveSize));
+			waveSize += uncompressedSize;
+			mapOffset += blockSize;
+		}
+		if (blocks.isEmpty()){
+			//Anything after the last member that is not gzip is ignored, as GZIPInputStream does
+			if (map.limit() < 2 || (map.get(0) & 0xff) != 0x1f || (map.get(1) & 0xff) != 0x8b) return false;
+			rest = VCFStreamReader.decompress(Channels.newInputStream(channel.position(offset)));
+			return true;
+		}
+		offset += mapOffset;
+		if (wave.length < waveSize) wave = new byte[waveSize];
+		inflate(new InflateTask(blocks, wave, 0, blocks.size()));
+		position = 0;
+		limit = waveSize;
+		return true;
+	}
+
+	/**
+	 * Function: inflate(InflateTask task)
+	 * Usage: inflate(new InflateTask(blocks, wave, 0, blocks.size()))
+	 * ----
+	 * Runs the task on the pool, or on this thread when there is none,
+	 * and turns whatever it throws back into an IOException.
+	 */
+	private void inflate(InflateTask task) throws IOException {
+		try {
+			if (pool == null) task.invoke();
+			else pool.invoke(task);
+		} catch (RuntimeException e){
+			//The pool may wrap the worker's exception again, so look down the whole chain
+			for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()){
+				if (cause instanceof IOException) throw (IOException) cause;
+			}
+			throw new IOException("Cannot inflate BGZF blocks", e);
+		}
+	}
+
+	/**
+	 * Function: blockSize(ByteBuffer map, int offset)
+	 * Usage: int blockSize = blockSize(map, offset)
+	 * ----
+	 * Reads the BSIZE field from the "BC" extra subfield of a BGZF header.
+	 *
+	 * @param map	The little-endian mapping holding the header
+	 * @param offset	The offset of the block's first byte
+	 * @return	The total size of the block, or -1 if it is not a BGZF block
+	 */
+	private static int blockSize(ByteBuffer map, int offset){
+		if (offset + HEADER_SIZE > map.limit()) return -1;
+		if ((map.get(offset) & 0xff) != 0x1f || (map.get(offset + 1) & 0xff) != 0x8b) return -1;
+		if (map.get(offset + 2) != 8 || (map.get(offset + 3) & FEXTRA) == 0) return -1;
+		int extraEnd = offset + HEADER_SIZE + (map.getShort(offset + 10) & 0xffff);
+		int field = offset + HEADER_SIZE;
+		while (field + 4 <= extraEnd && extraEnd <= map.limit()){
+			int fieldLength = map.getShort(field + 2) & 0xffff;
+			if (map.get(field) == 'B' && map.get(field + 1) == 'C' && fieldLength == 2){
+				return (map.getShort(field + 4) & 0xffff) + 1;
+			}
+			field += 4 + fieldLength;
+		}
+		return -1;
+	}
+
+	/**
+	 * Class: Block
+	 * Constructor: Block(ByteBuffer map, int dataStart, int dataLength, int crc, int uncompressedSize, int outputOffset)
+	 * ----
+	 * The location of one BGZF block's deflated data and where its
+	 * inflated bytes go in the wave.
+	 */
+	private static class Block {
+		final ByteBuffer map;
+		final int dataStart;
+		final int dataLength;
+		final int crc;
+		final int uncompressedSize;
+		final int outputOffset;
+
+		Block(ByteBuffer map, int dataStart, int dataLength, int crc, int uncompressedSize, int outputOffset){
+			this.map = map;
+			this.dataStart = dataStart;
+			this.dataLength = dataLength;
+			this.crc = crc;
+			this.uncompressedSize = uncompressedSize;
+			this.outputOffset = outputOffset;
+		}
+	}
+
+	/**
+	 * Class: InflateTask
+	 * Constructor: InflateTask(List<Block> blocks, byte[] output, int from, int to)
+	 * ----
+	 * Inflates the blocks in [from, to) into their slots of output,
+	 * splitting the range in half until it is small enough to run
+	 * with a single Inflater.
+	 */
+	private static class InflateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final List<Block> blocks;
+		private final byte[] output;
+		private final int from;
+		private final int to;
+
+		InflateTask(List<Block> blocks, byte[] output, int from, int to){
+			this.blocks = blocks;
+			this.output = output;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute(){
+			if (to - from > BLOCKS_PER_TASK){
+				int mid = (from + to) >>> 1;
+				invokeAll(new InflateTask(blocks, output, from, mid), new InflateTask(blocks, output, mid, to));
+				return;
+			}
+			Inflater inflater = new Inflater(true);
+			CRC32 crc = new CRC32();
+			byte[] input = new byte[MAX_BLOCK_SIZE];
+			try {
+				for (int i = from; i < to; i++){
+					Block block = blocks.get(i);
+					ByteBuffer data = block.map.duplicate();
+					data.position(block.dataStart);
+					data.get(input, 0, block.dataLength);
+					inflater.reset();
+					inflater.setInput(input, 0, block.dataLength);
+					int n = 0;
+					while (n < block.uncompressedSize && !inflater.finished()){
+						int read = inflater.inflate(output, block.outputOffset + n, block.uncompressedSize - n);
+						if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+						n += read;
+					}
+					crc.reset();
+					crc.update(output, block.outputOffset, n);
+					if (n != block.uncompressedSize || (int) crc.getValue() != block.crc)
+						throw new RuntimeException(new IOException("Corrupt BGZF block " + i));
+				}
+			} catch (DataFormatException e){
+				throw new RuntimeException(new IOException("Corrupt BGZF block: " + e.getMessage()));
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Class: BinomialTail
+ * Constructor: BinomialTail.forErrorRate(double baseError)
+ * ----
+ * Computes the sum VCFEntry.getSumProb is defined as: for a sample
+ * with depth reads of which alt show the alternate allele,
+ *
+ *     sum over k = alt..depth of C(depth, k) * p^k * q^(depth - k)
+ *
+ * with p = baseError / 4 and q = 1 - baseError. As p + q is not 1
+ * this is (p + q)^depth times the upper tail of a binomial
+ * distribution with success probability p / (p + q).
+ *
+ * Every term is computed in log space with Colt's logGamma, so deep
+ * samples no longer overflow C(depth, k) or underflow the powers.
+ * The sums are memoized per error rate and depth: the first request
+ * for a depth up to MAX_CACHED_DEPTH fills in the tail for every alt
+ * count at that depth in one pass, and later requests are a table
+ * lookup. Deeper samples are computed directly from the regularized
+ * incomplete beta function, which takes a fixed number of steps
+ * whatever the depth. Instances are safe to use from several threads.
+ */
+package jPhyTree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import cern.jet.stat.Gamma;
+
+final class BinomialTail {
+
+	/* Private Constants */
+	private static final int MAX_CACHED_DEPTH = 1 << 10;
+
+	/* Private Class Variables */
+	private static final Map<Double, BinomialTail> instances = new HashMap<Double, BinomialTail>();
+
+	/* Private Instance Variables */
+	private final double logP;
+	private final double logQ;
+	private final double logTotal;
+	private final double successRate;
+	/* rows[d][a] is the sum for depth d and alt count a; rows[d][d + 1] is 0 */
+	private final AtomicReferenceArray<double[]> rows;
+
+	private BinomialTail(double baseError){
+		double p = baseError / 4.0;
+		double q = 1 - baseError;
+		logP = Math.log(p);
+		logQ = Math.log(q);
+		logTotal = Math.log(p + q);
+		successRate = p / (p + q);
+		rows = new AtomicReferenceArray<double[]>(MAX_CACHED_DEPTH + 1);
+	}
+
+	/**
+	 * Function: forErrorRate(double baseError)
+	 * Usage: BinomialTail tail = BinomialTail.forErrorRate(VCFConstants.BASE_ERROR)
+	 * ----
+	 * @param baseError	The per-base sequencing error rate
+	 * @return	The shared, memoizing instance for that error rate
+	 */
+	static synchronized BinomialTail forErrorRate(double baseError){
+		BinomialTail tail = instances.get(baseError);
+		if (tail == null){
+			tail = new BinomialTail(baseError);
+			instances.put(baseError, tail);
+		}
+		return tail;
+	}
+
+	/**
+	 * Function: upperTail(int alt, int depth)
+	 * Usage: double sumProb = tail.upperTail(alt, depth)
+	 * ----
+	 * @param alt	The number of reads showing the alternate allele
+	 * @param depth	The number of reads
+	 * @return	The sum of the terms for k = alt..depth; 0 if alt > depth
+	 */
+	double upperTail(int alt, int depth){
+		if (alt > depth || depth < 0) return 0.0;
+		if (alt < 0) alt = 0;
+		if (depth <= MAX_CACHED_DEPTH) return row(depth)[alt];
+		if (alt == 0) return Math.exp(depth * logTotal);
+		double beta = Gamma.incompleteBeta(alt, depth - alt + 1, successRate);
+		return Math.exp(depth * logTotal + Math.log(beta));
+	}
+
+	/**
+	 * Function: row(int depth)
+	 * Usage: double[] sums = row(depth)
+	 * ----
+	 * Returns the sums for every alt count at a depth, computing them
+	 * the first time. Two threads may both compute a missing row; they
+	 * get the same values, so either copy may be kept.
+	 */
+	private double[] row(int depth){
+		double[] sums = rows.get(depth);
+		if (sums != null) return sums;
+		sums = new double[depth + 2];
+		double logDepthFactorial = Gamma.logGamma(depth + 1);
+		//Adds the smallest terms first, as the original loop did
+		for (int k = depth; k >= 0; k--){
+			double logTerm = logDepthFactorial - Gamma.logGamma(k + 1) - Gamma.logGamma(depth - k + 1)
+					+ k * logP + (depth - k) * logQ;
+			sums[k] = sums[k + 1] + Math.exp(logTerm);
+		}
+		rows.set(depth, sums);
+		return sums;
+	}
+}
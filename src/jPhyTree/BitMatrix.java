@@ -0,0 +1,265 @@
+/**
+ * Class: BitMatrix
+ * Constructor: BitMatrix.fromColumns(int numRows, List<GATKCode> columns)
+ *              BitMatrix.fromRows(int numCols, List<GATKCode> rows)
+ * ----
+ * An immutable matrix of 0s and 1s packed one bit per cell, for the
+ * matrices of TreeChecker and SPBuilder: a row per sample and a
+ * column per mutation code. Each column is kept as the GATKCode of
+ * the samples it holds, so getColumn returns a column's code without
+ * copying anything. The rows are built from the columns the first
+ * time one is asked for, by transposing 64 x 64 bit blocks a word at
+ * a time, and kept.
+ */
+package jPhyTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public final class BitMatrix {
+
+	/* Private Instance Variables */
+	private final int numRows;
+	private final int numCols;
+	private final GATKCode[] columns;
+	/* The rows; built on first use */
+	private volatile GATKCode[] rows;
+
+	private BitMatrix(int numRows, int numCols, GATKCode[] columns, GATKCode[] rows){
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.columns = columns;
+		this.rows = rows;
+	}
+
+	/**
+	 * Function: fromColumns(int numRows, List<GATKCode> columns)
+	 * Usage: BitMatrix matrix = BitMatrix.fromColumns(numSamples, codes)
+	 * ----
+	 * @param numRows	The number of rows, which is the length of every column
+	 * @param columns	The columns, in order
+	 * @return	The matrix with those columns
+	 * @throws IllegalArgumentException	If a column is not numRows long
+	 */
+	public static BitMatrix fromColumns(int numRows, List<GATKCode> columns){
+		GATKCode[] cols = columns.toArray(new GATKCode[columns.size()]);
+		for (GATKCode column : cols){
+			if (column.length() != numRows)
+				throw new IllegalArgumentException("Expected a column of " + numRows + " rows but found " + column.length());
+		}
+		return new BitMatrix(numRows, cols.length, cols, null);
+	}
+
+	/**
+	 * Function: fromRows(int numCols, List<GATKCode> rows)
+	 * Usage: BitMatrix matrix = BitMatrix.fromRows(numCols, rows)
+	 * ----
+	 * @param numCols	The number of columns, which is the length of every row
+	 * @param rows	The rows, in order
+	 * @return	The matrix with those rows
+	 * @throws IllegalArgumentException	If a row is not numCols long
+	 */
+	public static BitMatrix fromRows(int numCols, List<GATKCode> rows){
+		return fromColumns(numCols, rows).transpose();
+	}
+
+	/**
+	 * Function: getNumRows()
+	 * Usage: int numSamples = matrix.getNumRows()
+	 * ----
+	 * @return	The number of rows
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+
+	/**
+	 * Function: getNumCols()
+	 * Usage: int numCodes = matrix.getNumCols()
+	 * ----
+	 * @return	The number of columns
+	 */
+	public int getNumCols(){
+		return numCols;
+	}
+
+	/**
+	 * Function: get(int row, int col)
+	 * Usage: if (matrix.get(i, j)) ...
+	 * ----
+	 * @return	true if the cell holds a 1
+	 */
+	public boolean get(int row, int col){
+		return columns[col].get(row);
+	}
+
+	/**
+	 * Function: getColumn(int col)
+	 * Usage: GATKCode code = matrix.getColumn(j)
+	 * ----
+	 * @param col	A 0-indexed column
+	 * @return	The column as a code of getNumRows() bits; the first row
+	 * 			is the code's first sample
+	 */
+	public GATKCode getColumn(int col){
+		return columns[col];
+	}
+
+	/**
+	 * Function: getColumns()
+	 * Usage: List<GATKCode> codes = matrix.getColumns()
+	 * ----
+	 * @return	The columns in order, as an unmodifiable list
+	 */
+	public List<GATKCode> getColumns(){
+		return Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * Function: getRow(int row)
+	 * Usage: GATKCode row = matrix.getRow(i)
+	 * ----
+	 * @param row	A 0-indexed row
+	 * @return	The row as a code of getNumCols() bits; the first column
+	 * 			is the code's first sample
+	 */
+	public GATKCode getRow(int row){
+		return getRows()[row];
+	}
+
+	private GATKCode[] getRows(){
+		GATKCode[] result = rows;
+		if (result == null){
+			result = transpose(columns, numRows);
+			rows = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Function: transpose()
+	 * Usage: BitMatrix flipped = matrix.transpose()
+	 * ----
+	 * @return	The matrix whose (j, i) cell is this matrix's (i, j) cell;
+	 * 			it shares this matrix's codes
+	 */
+	public BitMatrix transpose(){
+		return new BitMatrix(numCols, numRows, getRows(), columns);
+	}
+
+	/**
+	 * Function: withoutColumns(Collection<Integer> cols)
+	 * Usage: BitMatrix rest = matrix.withoutColumns(conflicts)
+	 * ----
+	 * @param cols	The 0-indexed columns to leave out
+	 * @return	The matrix of the other columns, in their order
+	 */
+	public BitMatrix withoutColumns(Collection<Integer> cols){
+		boolean[] removed = new boolean[numCols];
+		for (Integer col : cols) removed[col.intValue()] = true;
+		ArrayList<GATKCode> kept = new ArrayList<GATKCode>(numCols);
+		for (int j = 0; j < numCols; j++){
+			if (!removed[j]) kept.add(columns[j]);
+		}
+		return fromColumns(numRows, kept);
+	}
+
+	/**
+	 * Function: previousOne(int row, int col)
+	 * Usage: int k = matrix.previousOne(i, j - 1)
+	 * ----
+	 * Scans the row leftwards from col a word at a time.
+	 *
+	 * @param row	A 0-indexed row
+	 * @param col	The column to start from; -1 finds nothing
+	 * @return	The largest column at most col with a 1 in the row, or -1
+	 */
+	public int previousOne(int row, int col){
+		if (col < 0) return -1;
+		GATKCode code = getRow(row);
+		int w = col >>> 6;
+		//Columns w * 64 to col of the word are its highest bits
+		long word = code.getWord(w) & (-1L << (63 - (col & 63)));
+		while (word == 0){
+			if (--w < 0) return -1;
+			word = code.getWord(w);
+		}
+		return (w << 6) + 63 - Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Function: transpose(GATKCode[] codes, int length)
+	 * Usage: GATKCode[] rows = transpose(columns, numRows)
+	 * ----
+	 * Turns codes.length codes of length bits into length codes of
+	 * codes.length bits, bit j of code i becoming bit i of code j. Words
+	 * are transposed a 64 x 64 block at a time.
+	 */
+	private static GATKCode[] transpose(GATKCode[] codes, int length){
+		int outWords = GATKCode.numWords(codes.length);
+		long[][] result = new long[length][outWords];
+		long[] block = new long[64];
+		for (int b = 0; b < outWords; b++){
+			int from = b << 6;
+			int count = Math.min(64, codes.length - from);
+			for (int w = 0; w < GATKCode.numWords(length); w++){
+				for (int k = 0; k < count; k++) block[k] = codes[from + k].getWord(w);
+				Arrays.fill(block, count, 64, 0L);
+				transpose64(block);
+				int rowsInBlock = Math.min(64, length - (w << 6));
+				for (int k = 0; k < rowsInBlock; k++) result[(w << 6) + k][b] = block[k];
+			}
+		}
+		GATKCode[] transposed = new GATKCode[length];
+		for (int i = 0; i < length; i++) transposed[i] = GATKCode.fromWords(codes.length, result[i]);
+		return transposed;
+	}
+
+	/**
+	 * Function: transpose64(long[] block)
+	 * Usage: transpose64(block)
+	 * ----
+	 * Transposes a 64 x 64 bit matrix in place, word k being row k with
+	 * column 0 in its highest bit, by swapping ever smaller off-diagonal
+	 * sub-blocks (Hacker's Delight, 7-3).
+	 */
+	private static void transpose64(long[] block){
+		long mask = 0x00000000FFFFFFFFL;
+		for (int j = 32; j != 0; j >>>= 1, mask ^= mask << j){
+			for (int k = 0; k < 64; k = ((k | j) + 1) & ~j){
+				long t = (block[k] ^ (block[k | j] >>> j)) & mask;
+				block[k] ^= t;
+				block[k | j] ^= t << j;
+			}
+		}
+	}
+
+	public boolean equals(Object obj){
+		if (this == obj) return true;
+		if (!(obj instanceof BitMatrix)) return false;
+		BitMatrix other = (BitMatrix) obj;
+		return numRows == other.numRows && Arrays.equals(columns, other.columns);
+	}
+
+	public int hashCode(){
+		return 31 * numRows + Arrays.hashCode(columns);
+	}
+
+	/**
+	 * Function: toString()
+	 * Usage: String matrix = bitMatrix.toString()
+	 * ----
+	 * @return	The rows as lines of '0' and '1' characters
+	 */
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < numRows; i++){
+			if (i > 0) sb.append('\n');
+			sb.append(getRow(i));
+		}
+		return sb.toString();
+	}
+}
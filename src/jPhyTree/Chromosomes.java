@@ -0,0 +1,105 @@
+/**
+ * Class: Chromosomes
+ * Constructor: None
+ * ----
+ * A process-wide dictionary of chromosome names. Every distinct
+ * name read from a VCF is given a small integer id once, and entries
+ * store that id instead of their own copy of the name. Ids are never
+ * reused or removed, so an id stays valid for the life of the
+ * program. The dictionary is safe to use from several threads.
+ */
+package jPhyTree;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class Chromosomes {
+
+	/* Private Class Variables */
+	private static final Map<String, Integer> ids = new HashMap<String, Integer>();
+	/* Replaced, never changed, when a name is added, so reads need no lock */
+	private static volatile String[] names = new String[0];
+
+	private Chromosomes(){}
+
+	/**
+	 * Function: intern(ByteBuffer buffer, int start, int end, int hint)
+	 * Usage: int id = Chromosomes.intern(buffer, start, end, hint)
+	 * ----
+	 * Returns the id of the name held in [start, end) of the buffer,
+	 * adding it if it is new. VCFs are sorted by chromosome, so the
+	 * caller passes the id of the previous record as a hint; when it
+	 * matches, no String is created and no lock is taken.
+	 *
+	 * @param buffer	The buffer holding the name
+	 * @param start	The absolute offset of the name's first byte
+	 * @param end	The absolute offset just past the name's last byte
+	 * @param hint	The id the name is likely to have, or -1
+	 * @return	The name's id
+	 */
+	static int intern(ByteBuffer buffer, int start, int end, int hint){
+		String[] current = names;
+		if (hint >= 0 && hint < current.length && matches(current[hint], buffer, start, end)) return hint;
+		return intern(VCFTokenizer.decode(buffer, start, end));
+	}
+
+	/**
+	 * Function: intern(String name)
+	 * Usage: int id = Chromosomes.intern(name)
+	 * ----
+	 * @param name	A chromosome name
+	 * @return	The name's id, adding the name if it is new
+	 */
+	public static synchronized int intern(String name){
+		Integer id = ids.get(name);
+		if (id != null) return id;
+		String[] grown = new String[names.length + 1];
+		System.arraycopy(names, 0, grown, 0, names.length);
+		grown[names.length] = name;
+		ids.put(name, names.length);
+		names = grown;
+		return grown.length - 1;
+	}
+
+	/**
+	 * Function: lookup(String name)
+	 * Usage: int id = Chromosomes.lookup(name)
+	 * ----
+	 * @param name	A chromosome name
+	 * @return	The name's id, or -1 if no VCF read so far used it
+	 */
+	public static synchronized int lookup(String name){
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Function: name(int id)
+	 * Usage: String chrom = Chromosomes.name(id)
+	 * ----
+	 * @param id	An id returned by intern
+	 * @return	The chromosome name with that id
+	 */
+	public static String name(int id){
+		return names[id];
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int numChromosomes = Chromosomes.size()
+	 * ----
+	 * @return	The number of distinct names seen so far; ids run from 0 to size() - 1
+	 */
+	public static int size(){
+		return names.length;
+	}
+
+	private static boolean matches(String name, ByteBuffer buffer, int start, int end){
+		if (name.length() != end - start) return false;
+		for (int i = 0; i < name.length(); i++){
+			if (name.charAt(i) != (buffer.get(start + i) & 0xff)) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Class: EntryStore
+ * Constructor: None
+ * ----
+ * Where a VCFDatabase keeps its entries. Entries are numbered by
+ * ordinal in the order they were added, and the store indexes them
+ * by GATK code. HeapEntryStore keeps the VCFEntry objects themselves;
+ * MappedEntryStore keeps their decoded fields in a memory-mapped file
+ * and builds an entry each time one is read, so only the per-code
+ * index lives on the heap. A store must be closed once its database
+ * is no longer used, to give back any file it holds.
+ */
+package jPhyTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+interface EntryStore extends Closeable {
+
+	/**
+	 * Function: add(VCFEntry entry)
+	 * Usage: store.add(entry)
+	 * ----
+	 * Appends an entry, giving it the next ordinal.
+	 *
+	 * @param entry	The entry to add
+	 */
+	void add(VCFEntry entry);
+
+	/**
+	 * Function: size()
+	 * Usage: int numEntries = store.size()
+	 * ----
+	 * @return	The number of entries added so far
+	 */
+	int size();
+
+	/**
+	 * Function: get(int ordinal)
+	 * Usage: VCFEntry entry = store.get(ordinal)
+	 * ----
+	 * @param ordinal	The position of the entry, in the order entries were added
+	 * @return	The entry at that position
+	 */
+	VCFEntry get(int ordinal);
+
+	/**
+	 * Function: count(GATKCode code)
+	 * Usage: int numEntries = store.count(code)
+	 * ----
+	 * @param code	A GATK code
+	 * @return	The number of entries with that code
+	 */
+	int count(GATKCode code);
+
+	/**
+	 * Function: getOrdinals(GATKCode code)
+	 * Usage: int[] ordinals = store.getOrdinals(code)
+	 * ----
+	 * @param code	A GATK code
+	 * @return	The ordinals of the entries with that code, in ascending
+	 * 			order; empty if there are none
+	 */
+	int[] getOrdinals(GATKCode code);
+
+	/**
+	 * Function: getCodes()
+	 * Usage: Set<GATKCode> codes = store.getCodes()
+	 * ----
+	 * @return	Every code at least one entry has; the set must not be changed
+	 */
+	Set<GATKCode> getCodes();
+
+	/**
+	 * Function: close()
+	 * Usage: store.close()
+	 * ----
+	 * Releases whatever the store holds outside the heap. The store
+	 * must not be used afterwards.
+	 *
+	 * @throws IOException	If a file of the store cannot be closed
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,205 @@
+/**
+ * Class: FilterCounts
+ * Constructor: FilterCounts()
+ * ----
+ * Counts how many VCF records were read while building a
+ * VCFDatabase and how many of them each filter rejected. A record
+ * is charged to the first filter it fails, in the order the filters
+ * run: uncalled samples ("./."), germline, then low coverage.
+ *
+ * The loader also adds up where its time goes, per stage: finding the
+ * lines and fields of records (tokenize), running the filters on the
+ * raw bytes (classify) and building VCFEntries for the survivors
+ * (decode), along with the bytes of the rejected records, which are
+ * never decoded. Stage times are summed over the threads that parsed,
+ * so with more than one thread they add up to more than the wall time.
+ */
+package jPhyTree;
+
+public class FilterCounts {
+
+	/* Private Instance Variables */
+	private long records;
+	private long missing;
+	private long germline;
+	private long lowCoverage;
+	private long skippedBytes;
+	private long tokenizeNanos;
+	private long classifyNanos;
+	private long decodeNanos;
+
+	/**
+	 * Function: FilterCounts()
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a set of counts that are all zero.
+	 */
+	public FilterCounts(){
+	}
+
+	/**
+	 * Function: FilterCounts(long records, long missing, long germline, long lowCoverage)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a set of counts with the given values.
+	 */
+	FilterCounts(long records, long missing, long germline, long lowCoverage){
+		this.records = records;
+		this.missing = missing;
+		this.germline = germline;
+		this.lowCoverage = lowCoverage;
+	}
+
+	/**
+	 * Function: count(int verdict, int length)
+	 * Usage: counts.count(VCFLoader.GERMLINE, length)
+	 * ----
+	 * Records one record and the filter that decided it.
+	 *
+	 * @param verdict	One of the verdicts returned by VCFLoader.classify
+	 * @param length	The length of the record's line in bytes, counted
+	 * 			as skipped if the record was rejected
+	 */
+	void count(int verdict, int length){
+		records++;
+		if (verdict == VCFLoader.PASSED) return;
+		skippedBytes += length;
+		if (verdict == VCFLoader.MISSING) missing++;
+		else if (verdict == VCFLoader.GERMLINE) germline++;
+		else if (verdict == VCFLoader.LOW_COVERAGE) lowCoverage++;
+	}
+
+	/**
+	 * Function: addNanos(long tokenize, long classify, long decode)
+	 * Usage: counts.addNanos(tokenize, classify, decode)
+	 * ----
+	 * Adds time spent in each stage of parsing.
+	 *
+	 * @param tokenize	Nanoseconds spent finding records and their fields
+	 * @param classify	Nanoseconds spent running the filters
+	 * @param decode	Nanoseconds spent building entries for the survivors
+	 */
+	void addNanos(long tokenize, long classify, long decode){
+		tokenizeNanos += tokenize;
+		classifyNanos += classify;
+		decodeNanos += decode;
+	}
+
+	/**
+	 * Function: add(FilterCounts other)
+	 * Usage: total.add(chunkCounts)
+	 * ----
+	 * Adds another set of counts to this one.
+	 *
+	 * @param other	The counts to add
+	 */
+	void add(FilterCounts other){
+		records += other.records;
+		missing += other.missing;
+		germline += other.germline;
+		lowCoverage += other.lowCoverage;
+		skippedBytes += other.skippedBytes;
+		tokenizeNanos += other.tokenizeNanos;
+		classifyNanos += other.classifyNanos;
+		decodeNanos += other.decodeNanos;
+	}
+
+	/**
+	 * Function: getRecords()
+	 * Usage: long records = counts.getRecords()
+	 * ----
+	 * @return	The number of data records read
+	 */
+	public long getRecords(){
+		return records;
+	}
+
+	/**
+	 * Function: getRejectedMissing()
+	 * Usage: long rejected = counts.getRejectedMissing()
+	 * ----
+	 * @return	The number of records dropped for having a "./." sample
+	 */
+	public long getRejectedMissing(){
+		return missing;
+	}
+
+	/**
+	 * Function: getRejectedGermline()
+	 * Usage: long rejected = counts.getRejectedGermline()
+	 * ----
+	 * @return	The number of records dropped as germline variants shared by all samples
+	 */
+	public long getRejectedGermline(){
+		return germline;
+	}
+
+	/**
+	 * Function: getRejectedLowCoverage()
+	 * Usage: long rejected = counts.getRejectedLowCoverage()
+	 * ----
+	 * @return	The number of records dropped for average coverage at or below COVERAGE
+	 */
+	public long getRejectedLowCoverage(){
+		return lowCoverage;
+	}
+
+	/**
+	 * Function: getPassed()
+	 * Usage: long passed = counts.getPassed()
+	 * ----
+	 * @return	The number of records that passed every filter
+	 */
+	public long getPassed(){
+		return records - missing - germline - lowCoverage;
+	}
+
+	/**
+	 * Function: getSkippedBytes()
+	 * Usage: long skipped = counts.getSkippedBytes()
+	 * ----
+	 * @return	The number of bytes in the lines of rejected records,
+	 * 			which were filtered without being decoded
+	 */
+	public long getSkippedBytes(){
+		return skippedBytes;
+	}
+
+	/**
+	 * Function: getTokenizeNanos()
+	 * Usage: long nanos = counts.getTokenizeNanos()
+	 * ----
+	 * @return	The time spent finding records and their fields, in nanoseconds
+	 */
+	public long getTokenizeNanos(){
+		return tokenizeNanos;
+	}
+
+	/**
+	 * Function: getClassifyNanos()
+	 * Usage: long nanos = counts.getClassifyNanos()
+	 * ----
+	 * @return	The time spent running the filters, in nanoseconds
+	 */
+	public long getClassifyNanos(){
+		return classifyNanos;
+	}
+
+	/**
+	 * Function: getDecodeNanos()
+	 * Usage: long nanos = counts.getDecodeNanos()
+	 * ----
+	 * @return	The time spent building entries for the records that
+	 * 			passed, in nanoseconds
+	 */
+	public long getDecodeNanos(){
+		return decodeNanos;
+	}
+
+	public String toString(){
+		return records + " records: " + getPassed() + " passed, " + missing + " uncalled, "
+				+ germline + " germline, " + lowCoverage + " low coverage; " + skippedBytes + " bytes skipped; "
+				+ String.format("tokenize %.1f ms, classify %.1f ms, decode %.1f ms",
+						tokenizeNanos / 1e6, classifyNanos / 1e6, decodeNanos / 1e6);
+	}
+}
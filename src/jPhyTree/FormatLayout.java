@@ -0,0 +1,187 @@
+/**
+ * Class: FormatLayout
+ * Constructor: FormatLayout.forFormat(String format)
+ * ----
+ * Where the GT, AD and DP values sit within the sample columns of
+ * records with a given FORMAT string. GATK writes "GT:AD:DP:GQ:PL",
+ * but other callers order the keys differently, for instance
+ * "GT:GQ:AD:DP" or "GQ:PL:GT:AD:DP"; the layout of each distinct
+ * FORMAT string is worked out once and shared. A sample column may
+ * stop early, as the VCF specification allows, in which case the
+ * values past its end are missing.
+ *
+ * As VCFs rarely change FORMAT from one record to the next, callers
+ * pass the layout of the previous record as a hint; when its FORMAT
+ * matches, no String is created and no lock is taken.
+ */
+package jPhyTree;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+final class FormatLayout {
+
+	/* Private Constants */
+	private static final byte SEPARATOR = ':';
+
+	/* Private Class Variables */
+	private static final Map<String, FormatLayout> layouts = new HashMap<String, FormatLayout>();
+
+	/* The layout of "GT:AD:DP", the keys this program reads, in GATK's order */
+	static final FormatLayout GATK = forFormat("GT:AD:DP");
+
+	/* Private Instance Variables */
+	private final String format;
+	private final int genotype;
+	private final int alleleDepth;
+	private final int readDepth;
+
+	private FormatLayout(String format){
+		this.format = format;
+		int gt = -1;
+		int ad = -1;
+		int dp = -1;
+		String[] keys = format.split(":");
+		for (int i = 0; i < keys.length; i++){
+			if (gt < 0 && keys[i].equals("GT")) gt = i;
+			else if (ad < 0 && keys[i].equals("AD")) ad = i;
+			else if (dp < 0 && keys[i].equals("DP")) dp = i;
+		}
+		genotype = gt;
+		alleleDepth = ad;
+		readDepth = dp;
+	}
+
+	/**
+	 * Function: forFormat(String format)
+	 * Usage: FormatLayout layout = FormatLayout.forFormat(entry.getFormat())
+	 * ----
+	 * @param format	The FORMAT column of a record
+	 * @return	The shared layout of that FORMAT string
+	 */
+	static synchronized FormatLayout forFormat(String format){
+		FormatLayout layout = layouts.get(format);
+		if (layout == null){
+			layout = new FormatLayout(format);
+			layouts.put(format, layout);
+		}
+		return layout;
+	}
+
+	/**
+	 * Function: resolve(ByteBuffer buffer, int start, int end, FormatLayout hint)
+	 * Usage: FormatLayout layout = FormatLayout.resolve(buffer, start, end, hint)
+	 * ----
+	 * Returns the layout of the FORMAT column held in [start, end) of
+	 * the buffer.
+	 *
+	 * @param buffer	The buffer holding the column
+	 * @param start	The absolute offset of the column's first byte
+	 * @param end	The absolute offset just past the column's last byte
+	 * @param hint	The layout the column is likely to have, or null
+	 * @return	The column's layout
+	 */
+	static FormatLayout resolve(ByteBuffer buffer, int start, int end, FormatLayout hint){
+		if (hint != null && hint.matches(buffer, start, end)) return hint;
+		return forFormat(VCFTokenizer.decode(buffer, start, end));
+	}
+
+	private boolean matches(ByteBuffer buffer, int start, int end){
+		if (format.length() != end - start) return false;
+		for (int i = 0; i < format.length(); i++){
+			if (format.charAt(i) != (buffer.get(start + i) & 0xff)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function: getGenotypeIndex()
+	 * Usage: int gt = layout.getGenotypeIndex()
+	 * ----
+	 * @return	The position of GT among the FORMAT keys, or -1 if absent
+	 */
+	int getGenotypeIndex(){
+		return genotype;
+	}
+
+	/**
+	 * Function: getAlleleDepthIndex()
+	 * Usage: int ad = layout.getAlleleDepthIndex()
+	 * ----
+	 * @return	The position of AD among the FORMAT keys, or -1 if absent
+	 */
+	int getAlleleDepthIndex(){
+		return alleleDepth;
+	}
+
+	/**
+	 * Function: getReadDepthIndex()
+	 * Usage: int dp = layout.getReadDepthIndex()
+	 * ----
+	 * @return	The position of DP among the FORMAT keys, or -1 if absent
+	 */
+	int getReadDepthIndex(){
+		return readDepth;
+	}
+
+	/**
+	 * Function: valueStart(ByteBuffer buffer, int start, int end, int index)
+	 * Usage: int gtStart = FormatLayout.valueStart(buffer, start, end, layout.getGenotypeIndex())
+	 * ----
+	 * Finds a value of a sample column by skipping the values before it.
+	 * The value ends at valueEnd(buffer, valueStart, end).
+	 *
+	 * @param buffer	The buffer holding the column
+	 * @param start	The absolute offset of the column's first byte
+	 * @param end	The absolute offset just past the column's last byte
+	 * @param index	The position of the value's key among the FORMAT keys
+	 * @return	The absolute offset of the value's first byte, or -1 if the
+	 * 			key is absent or the column stops before the value
+	 */
+	static int valueStart(ByteBuffer buffer, int start, int end, int index){
+		if (index < 0) return -1;
+		for (int i = 0; i < index; i++){
+			start = VCFTokenizer.indexOf(buffer, start, end, SEPARATOR);
+			if (start == end) return -1;
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Function: valueEnd(ByteBuffer buffer, int valueStart, int end)
+	 * Usage: int gtEnd = FormatLayout.valueEnd(buffer, gtStart, end)
+	 * ----
+	 * @return	The absolute offset just past the value starting at valueStart
+	 */
+	static int valueEnd(ByteBuffer buffer, int valueStart, int end){
+		return VCFTokenizer.indexOf(buffer, valueStart, end, SEPARATOR);
+	}
+
+	/**
+	 * Function: value(String column, int index)
+	 * Usage: String ad = FormatLayout.value(entry.getAlleleFreq(sample), layout.getAlleleDepthIndex())
+	 * ----
+	 * The String form of valueStart, for a sample column already decoded.
+	 *
+	 * @param column	A sample column
+	 * @param index	The position of the value's key among the FORMAT keys
+	 * @return	The value, or null if the key is absent or the column stops before it
+	 */
+	static String value(String column, int index){
+		if (index < 0) return null;
+		int start = 0;
+		for (int i = 0; i < index; i++){
+			start = column.indexOf(SEPARATOR, start);
+			if (start < 0) return null;
+			start++;
+		}
+		int end = column.indexOf(SEPARATOR, start);
+		return column.substring(start, end < 0 ? column.length() : end);
+	}
+
+	public String toString(){
+		return format;
+	}
+}
@@ -0,0 +1,332 @@
+/**
+ * Class: GATKCode
+ * Constructor: GATKCode(String code)
+ *              GATKCode.fromList(List<Integer> values)
+ * ----
+ * An immutable, bit-packed GATK code. Sample i of the code is
+ * stored in bit (63 - i % 64) of word i / 64, so the first sample
+ * is the most significant bit, just as it is the leftmost character
+ * of the String form. Codes of up to 64 samples are held in a
+ * single long; longer codes fall back to an array of words.
+ *
+ * Comparing two codes of the same length orders them exactly as
+ * their String forms would order when read as binary numbers.
+ */
+package jPhyTree;
+
+import java.util.Arrays;
+import java.util.List;
+
+public final class GATKCode implements Comparable<GATKCode> {
+
+	/* Private Constants */
+	private static final int WORD_BITS = 64;
+
+	/* Private Instance Variables */
+	private final int length;
+	private final long bits;
+	private final long[] words;
+
+	/**
+	 * Function: GATKCode(String code)
+	 * Usage: (Constructor)
+	 * ----
+	 * Packs a String of '0' and '1' characters.
+	 *
+	 * @param code	The GATK code as a String, one character per sample
+	 */
+	public GATKCode(String code){
+		this(code.length(), parse(code));
+	}
+
+	/**
+	 * Function: GATKCode(int length, long bits)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a code of at most 64 samples from its single word.
+	 */
+	private GATKCode(int length, long bits){
+		this.length = length;
+		this.bits = bits;
+		this.words = null;
+	}
+
+	/**
+	 * Function: GATKCode(int length, long[] words)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a code from its words. The array is owned by the
+	 * new code and must not be changed afterwards.
+	 */
+	private GATKCode(int length, long[] words){
+		this.length = length;
+		if (length <= WORD_BITS){
+			this.bits = words.length == 0 ? 0L : words[0];
+			this.words = null;
+		} else {
+			this.bits = words[0];
+			this.words = words;
+		}
+	}
+
+	/**
+	 * Function: fromWords(int length, long[] words)
+	 * Usage: GATKCode code = GATKCode.fromWords(length, words)
+	 * ----
+	 * Wraps words laid out as described in the class comment. The
+	 * array is taken over by the code and must not be changed afterwards.
+	 *
+	 * @param length	The number of samples in the code
+	 * @param words	numWords(length) words holding the sample bits
+	 * @return	The new code
+	 */
+	static GATKCode fromWords(int length, long[] words){
+		return new GATKCode(length, words);
+	}
+
+	/**
+	 * Function: fromList(List<Integer> values)
+	 * Usage: GATKCode code = GATKCode.fromList(transMatrix.get(row))
+	 * ----
+	 * Packs a row or column of a 0/1 matrix, one sample per value.
+	 *
+	 * @param values	The values; any value other than 0 is a 1
+	 * @return	The new code
+	 */
+	public static GATKCode fromList(List<Integer> values){
+		long[] result = new long[numWords(values.size())];
+		for (int i = 0; i < values.size(); i++){
+			if (values.get(i).intValue() != 0) result[i >>> 6] |= bitMask(i);
+		}
+		return new GATKCode(values.size(), result);
+	}
+
+	/**
+	 * Function: allOnes(int length)
+	 * Usage: GATKCode germline = GATKCode.allOnes(length)
+	 * ----
+	 * @param length	The number of samples in the code
+	 * @return	The code with every sample set
+	 */
+	public static GATKCode allOnes(int length){
+		long[] result = new long[numWords(length)];
+		for (int i = 0; i < length; i++) result[i >>> 6] |= bitMask(i);
+		return new GATKCode(length, result);
+	}
+
+	/**
+	 * Function: numWords(int length)
+	 * Usage: long[] words = new long[GATKCode.numWords(length)]
+	 * ----
+	 * @param length	A number of samples
+	 * @return	The number of 64-bit words needed to hold that many samples
+	 */
+	static int numWords(int length){
+		return (length + WORD_BITS - 1) / WORD_BITS;
+	}
+
+	/**
+	 * Function: bitMask(int sample)
+	 * Usage: words[sample >>> 6] |= GATKCode.bitMask(sample)
+	 * ----
+	 * @param sample	A 0-indexed sample
+	 * @return	The bit for that sample within its word
+	 */
+	static long bitMask(int sample){
+		return Long.MIN_VALUE >>> (sample & (WORD_BITS - 1));
+	}
+
+	private static long[] parse(String code){
+		long[] result = new long[numWords(code.length())];
+		for (int i = 0; i < code.length(); i++){
+			char c = code.charAt(i);
+			if (c == '1') result[i >>> 6] |= bitMask(i);
+			else if (c != '0') throw new IllegalArgumentException("Not a binary code: " + code);
+		}
+		return result;
+	}
+
+	/**
+	 * Function: length()
+	 * Usage: int numSamples = code.length()
+	 * ----
+	 * @return	The number of samples in the code
+	 */
+	public int length(){
+		return length;
+	}
+
+	/**
+	 * Function: numWords()
+	 * Usage: int n = code.numWords()
+	 * ----
+	 * @return	The number of 64-bit words the code occupies
+	 */
+	public int numWords(){
+		return numWords(length);
+	}
+
+	/**
+	 * Function: getWord(int index)
+	 * Usage: long word = code.getWord(index)
+	 * ----
+	 * @param index	The word to read, 0 holding the first 64 samples
+	 * @return	The word's bits
+	 */
+	public long getWord(int index){
+		return words == null ? bits : words[index];
+	}
+
+	/**
+	 * Function: get(int sample)
+	 * Usage: boolean isSet = code.get(sample)
+	 * ----
+	 * @param sample	The 0-indexed sample
+	 * @return	true if the sample's character is '1'
+	 */
+	public boolean get(int sample){
+		if (sample < 0 || sample >= length) throw new IndexOutOfBoundsException("Sample: " + sample);
+		return (getWord(sample >>> 6) & bitMask(sample)) != 0;
+	}
+
+	/**
+	 * Function: or(GATKCode other)
+	 * Usage: GATKCode union = code.or(other)
+	 * ----
+	 * @param other	A code of the same length
+	 * @return	The code with every sample set in either code
+	 */
+	public GATKCode or(GATKCode other){
+		checkLength(other);
+		if (words == null) return new GATKCode(length, bits | other.bits);
+		long[] result = new long[words.length];
+		for (int i = 0; i < words.length; i++) result[i] = words[i] | other.words[i];
+		return new GATKCode(length, result);
+	}
+
+	/**
+	 * Function: and(GATKCode other)
+	 * Usage: GATKCode shared = code.and(other)
+	 * ----
+	 * @param other	A code of the same length
+	 * @return	The code with every sample set in both codes
+	 */
+	public GATKCode and(GATKCode other){
+		checkLength(other);
+		if (words == null) return new GATKCode(length, bits & other.bits);
+		long[] result = new long[words.length];
+		for (int i = 0; i < words.length; i++) result[i] = words[i] & other.words[i];
+		return new GATKCode(length, result);
+	}
+
+	/**
+	 * Function: isSubsetOf(GATKCode other)
+	 * Usage: if (code.isSubsetOf(other)) ...
+	 * ----
+	 * @param other	A code of the same length
+	 * @return	true if every sample set in this code is set in other
+	 */
+	public boolean isSubsetOf(GATKCode other){
+		checkLength(other);
+		if (words == null) return (bits & ~other.bits) == 0;
+		for (int i = 0; i < words.length; i++){
+			if ((words[i] & ~other.words[i]) != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function: intersects(GATKCode other)
+	 * Usage: if (code.intersects(other)) ...
+	 * ----
+	 * @param other	A code of the same length
+	 * @return	true if some sample is set in both codes
+	 */
+	public boolean intersects(GATKCode other){
+		checkLength(other);
+		if (words == null) return (bits & other.bits) != 0;
+		for (int i = 0; i < words.length; i++){
+			if ((words[i] & other.words[i]) != 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Function: bitCount()
+	 * Usage: int numSet = code.bitCount()
+	 * ----
+	 * @return	The number of samples set in the code
+	 */
+	public int bitCount(){
+		if (words == null) return Long.bitCount(bits);
+		int count = 0;
+		for (int i = 0; i < words.length; i++) count += Long.bitCount(words[i]);
+		return count;
+	}
+
+	/**
+	 * Function: hammingDistance(GATKCode other)
+	 * Usage: int dist = code.hammingDistance(other)
+	 * ----
+	 * @param other	A code of the same length
+	 * @return	The number of samples at which the two codes differ
+	 */
+	public int hammingDistance(GATKCode other){
+		checkLength(other);
+		if (words == null) return Long.bitCount(bits ^ other.bits);
+		int count = 0;
+		for (int i = 0; i < words.length; i++) count += Long.bitCount(words[i] ^ other.words[i]);
+		return count;
+	}
+
+	private void checkLength(GATKCode other){
+		if (other.length != length)
+			throw new IllegalArgumentException("Code lengths differ: " + length + " and " + other.length);
+	}
+
+	/**
+	 * Function: compareTo(GATKCode other)
+	 * Usage: int cmp = code.compareTo(other)
+	 * ----
+	 * Shorter codes sort first. Codes of the same length are compared
+	 * as unsigned binary numbers, first sample most significant.
+	 */
+	public int compareTo(GATKCode other){
+		if (length != other.length) return length < other.length ? -1 : 1;
+		int numWords = numWords();
+		for (int i = 0; i < numWords; i++){
+			long a = getWord(i) + Long.MIN_VALUE;
+			long b = other.getWord(i) + Long.MIN_VALUE;
+			if (a != b) return a < b ? -1 : 1;
+		}
+		return 0;
+	}
+
+	public boolean equals(Object obj){
+		if (this == obj) return true;
+		if (!(obj instanceof GATKCode)) return false;
+		GATKCode other = (GATKCode) obj;
+		if (length != other.length) return false;
+		if (words == null) return bits == other.bits;
+		return Arrays.equals(words, other.words);
+	}
+
+	public int hashCode(){
+		if (words == null) return 31 * length + (int) (bits ^ (bits >>> 32));
+		return 31 * length + Arrays.hashCode(words);
+	}
+
+	/**
+	 * Function: toString()
+	 * Usage: String code = gatkCode.toString()
+	 * ----
+	 * @return	The code as a String of '0' and '1' characters
+	 */
+	public String toString(){
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++){
+			chars[i] = (getWord(i >>> 6) & bitMask(i)) != 0 ? '1' : '0';
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Class: GATKTable
+ * Constructor: GATKTable.load(String fileName)
+ * ----
+ * A GATK table (the Chromosome, Location and GATK columns written by
+ * VCFDatabase.generateGATKFile or VCFConverter) read back into
+ * primitive columns: the Chromosomes id and position of each row as
+ * ints, and its code packed the way GATKCode packs it, numWords longs
+ * per row. The file is memory-mapped and parsed in place, without
+ * turning lines into Strings.
+ *
+ * A table holds everything TreeChecker needs, so archived tables can
+ * be turned back into a matrix (countCodes, writeMatrix) or checked
+ * directly (TreeChecker.checkIfTree(GATKTable)) without the VCFs they
+ * were made from.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class GATKTable {
+
+	/* Private Constants */
+	private static final String HEADER = "Chromosome";
+	private static final int INITIAL_ROWS = 1 << 10;
+
+	/* Private Instance Variables */
+	private int size;
+	private int numSamples = -1;
+	private int numWords;
+	private int[] chromosomes;
+	private int[] positions;
+	/* The code of row i is words[i * numWords] to words[(i + 1) * numWords - 1] */
+	private long[] words;
+
+	private GATKTable(){
+		chromosomes = new int[INITIAL_ROWS];
+		positions = new int[INITIAL_ROWS];
+	}
+
+	/**
+	 * Function: load(String fileName)
+	 * Usage: GATKTable table = GATKTable.load(fileName)
+	 * ----
+	 * Reads a GATK table. The header line, if there is one, is skipped.
+	 * Every row must have a code of the same length.
+	 *
+	 * @param fileName	The path of the table
+	 * @return	The table's columns
+	 * @throws IOException	If the file cannot be read, or a row is not a
+	 * 			chromosome, a position and a code of 0's and 1's
+	 */
+	public static GATKTable load(String fileName) throws IOException {
+		GATKTable table = new GATKTable();
+		int line = 0;
+		int hint = -1;
+		for (ByteBuffer window : VCFTokenizer.mapFile(fileName)){
+			int position = window.position();
+			int limit = window.limit();
+			while (position < limit){
+				int start = position;
+				int end = VCFTokenizer.indexOf(window, start, limit, (byte) '\n');
+				position = end + 1;
+				line++;
+				if (end > start && window.get(end - 1) == '\r') end--;
+				if (end == start || (line == 1 && startsWith(window, start, end, HEADER))) continue;
+				int chromEnd = VCFTokenizer.indexOf(window, start, end, (byte) '\t');
+				int posEnd = VCFTokenizer.indexOf(window, chromEnd + 1, end, (byte) '\t');
+				if (posEnd >= end) throw new IOException("Expected three columns on line " + line + " of " + fileName);
+				hint = Chromosomes.intern(window, start, chromEnd, hint);
+				int pos;
+				try {
+					pos = VCFTokenizer.parseInt(window, chromEnd + 1, posEnd);
+				} catch (NumberFormatException e){
+					throw new IOException("Bad location on line " + line + " of " + fileName);
+				}
+				table.addRow(hint, pos, window, posEnd + 1, end, line);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Function: addRow(int chromosome, int position, ByteBuffer buffer, int codeStart, int codeEnd, int line)
+	 * Usage: addRow(chromosome, position, buffer, codeStart, codeEnd, line)
+	 * ----
+	 * Appends a row, packing the code in [codeStart, codeEnd) of the buffer.
+	 * The first row fixes the code length.
+	 */
+	private void addRow(int chromosome, int position, ByteBuffer buffer, int codeStart, int codeEnd, int line) throws IOException {
+		int length = codeEnd - codeStart;
+		if (numSamples < 0){
+			numSamples = length;
+			numWords = GATKCode.numWords(length);
+			words = new long[INITIAL_ROWS * numWords];
+		}
+		if (length != numSamples)
+			throw new IOException("Expected a code of " + numSamples + " samples on line " + line + " but found " + length);
+		if (size == chromosomes.length){
+			chromosomes = Arrays.copyOf(chromosomes, 2 * size);
+			positions = Arrays.copyOf(positions, 2 * size);
+			words = Arrays.copyOf(words, 2 * size * numWords);
+		}
+		chromosomes[size] = chromosome;
+		positions[size] = position;
+		int row = size * numWords;
+		for (int i = 0; i < length; i++){
+			byte b = buffer.get(codeStart + i);
+			if (b == '1') words[row + (i >>> 6)] |= GATKCode.bitMask(i);
+			else if (b != '0') throw new IOException("Bad GATK code on line " + line);
+		}
+		size++;
+	}
+
+	private static boolean startsWith(ByteBuffer buffer, int start, int end, String prefix){
+		if (end - start < prefix.length()) return false;
+		for (int i = 0; i < prefix.length(); i++){
+			if (buffer.get(start + i) != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int rows = table.size()
+	 * ----
+	 * @return	The number of rows in the table
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Function: getNumSamples()
+	 * Usage: int samples = table.getNumSamples()
+	 * ----
+	 * @return	The length of the table's codes, or 0 if it has no rows
+	 */
+	public int getNumSamples(){
+		return Math.max(numSamples, 0);
+	}
+
+	/**
+	 * Function: getChromosomeId(int row)
+	 * Usage: int chromId = table.getChromosomeId(row)
+	 * ----
+	 * @param row	A row below size()
+	 * @return	The Chromosomes id of the row's chromosome
+	 */
+	public int getChromosomeId(int row){
+		checkRow(row);
+		return chromosomes[row];
+	}
+
+	/**
+	 * Function: getPosition(int row)
+	 * Usage: int pos = table.getPosition(row)
+	 * ----
+	 * @param row	A row below size()
+	 * @return	The row's location
+	 */
+	public int getPosition(int row){
+		checkRow(row);
+		return positions[row];
+	}
+
+	/**
+	 * Function: getCode(int row)
+	 * Usage: GATKCode code = table.getCode(row)
+	 * ----
+	 * @param row	A row below size()
+	 * @return	The row's GATK code
+	 */
+	public GATKCode getCode(int row){
+		checkRow(row);
+		return GATKCode.fromWords(numSamples, Arrays.copyOfRange(words, row * numWords, (row + 1) * numWords));
+	}
+
+	private void checkRow(int row){
+		if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+	}
+
+	/**
+	 * Function: countCodes()
+	 * Usage: Map<GATKCode, int[]> counts = table.countCodes()
+	 * ----
+	 * Counts the rows of each code. Codes are only built for the first
+	 * row of each run of equal codes.
+	 *
+	 * @return	The number of rows of each code, in the first cell of its array
+	 */
+	public Map<GATKCode, int[]> countCodes(){
+		Map<GATKCode, int[]> counts = new HashMap<GATKCode, int[]>();
+		int[] count = null;
+		for (int row = 0; row < size; row++){
+			if (count == null || !sameCode(row, row - 1)){
+				GATKCode code = getCode(row);
+				count = counts.get(code);
+				if (count == null){
+					count = new int[1];
+					counts.put(code, count);
+				}
+			}
+			count[0]++;
+		}
+		return counts;
+	}
+
+	private boolean sameCode(int a, int b){
+		for (int w = 0; w < numWords; w++){
+			if (words[a * numWords + w] != words[b * numWords + w]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function: writeMatrix(String outputFile)
+	 * Usage: table.writeMatrix(outputFile)
+	 * ----
+	 * Writes the matrix VCFDatabase.generateMatrix would have written
+	 * for the VCF the table was made from.
+	 *
+	 * @param outputFile	The file to write the matrix to
+	 * @throws IOException	If the file cannot be written
+	 */
+	public void writeMatrix(String outputFile) throws IOException {
+		PrintWriter pw = new PrintWriter(new FileWriter(outputFile));
+		try {
+			VCFConverter.writeMatrix(pw, getNumSamples(), countCodes());
+		} finally {
+			pw.close();
+		}
+	}
+}
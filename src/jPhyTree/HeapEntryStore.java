@@ -0,0 +1,64 @@
+/**
+ * Class: HeapEntryStore
+ * Constructor: HeapEntryStore()
+ * ----
+ * Keeps entries in an ArrayList and, for every GATK code, the list
+ * of ordinals of the entries that have it. This is the store every
+ * VCFDatabase uses unless it is opened off-heap.
+ */
+package jPhyTree;
+
+import java.util.*;
+
+class HeapEntryStore implements EntryStore {
+
+	/* Private Instance Variables */
+	private ArrayList<VCFEntry> entries;
+	private Map<GATKCode, IntList> codeIndex;
+
+	/**
+	 * Function: HeapEntryStore()
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty store.
+	 */
+	HeapEntryStore(){
+		entries = new ArrayList<VCFEntry>();
+		codeIndex = new HashMap<GATKCode, IntList>();
+	}
+
+	public void add(VCFEntry entry){
+		IntList ordinals = codeIndex.get(entry.getGATKCode());
+		if (ordinals == null){
+			ordinals = new IntList();
+			codeIndex.put(entry.getGATKCode(), ordinals);
+		}
+		ordinals.add(entries.size());
+		entries.add(entry);
+	}
+
+	public int size(){
+		return entries.size();
+	}
+
+	public VCFEntry get(int ordinal){
+		return entries.get(ordinal);
+	}
+
+	public int count(GATKCode code){
+		IntList ordinals = codeIndex.get(code);
+		return ordinals == null ? 0 : ordinals.size();
+	}
+
+	public int[] getOrdinals(GATKCode code){
+		IntList ordinals = codeIndex.get(code);
+		return ordinals == null ? new int[0] : ordinals.toArray();
+	}
+
+	public Set<GATKCode> getCodes(){
+		return codeIndex.keySet();
+	}
+
+	public void close(){
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Class: IntList
+ * Constructor: IntList()
+ * ----
+ * A growable list of primitive ints. Used for lists of entry
+ * ordinals, where an ArrayList<Integer> would box every element.
+ */
+package jPhyTree;
+
+class IntList {
+
+	/* Private Instance Variables */
+	private int[] values;
+	private int size;
+
+	/**
+	 * Function: IntList()
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty list.
+	 */
+	IntList(){
+		values = new int[4];
+	}
+
+	/**
+	 * Function: add(int value)
+	 * Usage: list.add(value)
+	 * ----
+	 * Appends a value, doubling the backing array when it is full.
+	 *
+	 * @param value	The value to append
+	 */
+	void add(int value){
+		if (size == values.length){
+			int[] grown = new int[values.length * 2];
+			System.arraycopy(values, 0, grown, 0, size);
+			values = grown;
+		}
+		values[size++] = value;
+	}
+
+	/**
+	 * Function: get(int index)
+	 * Usage: int value = list.get(index)
+	 * ----
+	 * @param index	A position below size()
+	 * @return	The value at that position
+	 */
+	int get(int index){
+		if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return values[index];
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int n = list.size()
+	 * ----
+	 * @return	The number of values in the list
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * Function: toArray()
+	 * Usage: int[] values = list.toArray()
+	 * ----
+	 * @return	A copy of the values in the list
+	 */
+	int[] toArray(){
+		int[] result = new int[size];
+		System.arraycopy(values, 0, result, 0, size);
+		return result;
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Class: MappedEntryStore
+ * Constructor: MappedEntryStore()
+ *              MappedEntryStore(File file)
+ * ----
+ * Keeps entries off the heap, in fixed-width slots of a memory-mapped
+ * file. A slot holds everything a COMPACT_NO_RAW entry decodes from
+ * its line: the chromosome id, position, alleles, GATK code words,
+ * the GT code of every sample and the AD and DP depths. All entries
+ * of a store must have the same number of samples, so every slot has
+ * the same size and entry i is found by arithmetic alone.
+ *
+ * The per-code index is threaded through the slots as well: each
+ * slot holds the ordinal of the next entry with the same code, and
+ * the heap only keeps the first, last and count of every code. The
+ * heap a store needs is therefore proportional to the number of
+ * distinct codes, not to the number of entries; the entries
+ * themselves are paged in and out by the operating system.
+ *
+ * get() builds a new VCFEntry from the slot on every call, so
+ * callers should not expect the same object back twice. Slots are
+ * only written by add(), which must not run at the same time as any
+ * other call; once the store is filled it can be read from several
+ * threads.
+ *
+ * close() closes the file and, if the store made it, deletes it;
+ * the store cannot be read after that.
+ */
+package jPhyTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+class MappedEntryStore implements EntryStore {
+
+	/* Private Constants */
+	private static final int SEGMENT_SIZE = 1 << 26;
+	private static final int NO_ENTRY = -1;
+	/* Offsets within a slot; the code words, genotypes and depths follow */
+	private static final int CHROMOSOME = 0;
+	private static final int POSITION = 4;
+	private static final int REF = 8;
+	private static final int ALT = 9;
+	private static final int NEXT = 12;
+	private static final int WORDS = 16;
+
+	/* Private Instance Variables */
+	private final File path;
+	/* Whether the file was made by the store, and so is deleted by close */
+	private final boolean temporary;
+	private RandomAccessFile file;
+	private ArrayList<MappedByteBuffer> segments;
+	/* For every code: the number of entries, the first ordinal and the last ordinal */
+	private Map<GATKCode, int[]> chains;
+	private int size;
+	private int numSamples = -1;
+	private int numWords;
+	private int genotypesOffset;
+	private int depthsOffset;
+	private int slotSize;
+	private int slotsPerSegment;
+
+	/**
+	 * Function: MappedEntryStore()
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty store backed by a temporary file, which is
+	 * deleted when the store is closed, or failing that when the
+	 * program exits.
+	 *
+	 * @throws IOException	If the temporary file cannot be created
+	 */
+	MappedEntryStore() throws IOException {
+		this(createTempFile(), true);
+	}
+
+	/**
+	 * Function: MappedEntryStore(File file)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty store backed by the given file. Anything already
+	 * in the file is overwritten. The file is left in place when the
+	 * store is closed.
+	 *
+	 * @param file	The file to keep the slots in
+	 * @throws IOException	If the file cannot be opened
+	 */
+	MappedEntryStore(File file) throws IOException {
+		this(file, false);
+	}
+
+	private MappedEntryStore(File file, boolean temporary) throws IOException {
+		this.path = file;
+		this.temporary = temporary;
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		segments = new ArrayList<MappedByteBuffer>();
+		chains = new HashMap<GATKCode, int[]>();
+	}
+
+	private static File createTempFile() throws IOException {
+		File temp = File.createTempFile("jPhyTree", ".entries");
+		temp.deleteOnExit();
+		return temp;
+	}
+
+	/**
+	 * Function: add(VCFEntry entry)
+	 * Usage: store.add(entry)
+	 * ----
+	 * Copies the entry's decoded fields into the next slot. The first
+	 * entry added fixes the number of samples, and with it the slot size.
+	 *
+	 * @param entry	The entry to add
+	 * @throws IllegalArgumentException	If the entry has a different number
+	 * 			of samples than the entries already stored
+	 * @throws IllegalStateException	If the file cannot be grown
+	 */
+	public void add(VCFEntry entry){
+		if (numSamples < 0) setNumSamples(entry.getNumSamples());
+		if (entry.getNumSamples() != numSamples)
+			throw new IllegalArgumentException("Expected " + numSamples + " samples but the entry has " + entry.getNumSamples());
+		int ordinal = size;
+		MappedByteBuffer segment = segmentFor(ordinal);
+		int slot = slotOffset(ordinal);
+		segment.putInt(slot + CHROMOSOME, entry.getChromosomeId());
+		segment.putInt(slot + POSITION, entry.getPositionValue());
+		segment.put(slot + REF, (byte) entry.getRefChar());
+		segment.put(slot + ALT, (byte) entry.getAltChar());
+		segment.putInt(slot + NEXT, NO_ENTRY);
+		GATKCode code = entry.getGATKCode();
+		for (int w = 0; w < numWords; w++) segment.putLong(slot + WORDS + 8 * w, code.getWord(w));
+		for (int s = 0; s < numSamples; s++){
+			segment.put(slot + genotypesOffset + s, entry.getGenotypeCode(s));
+			segment.putInt(slot + depthsOffset + 4 * s, entry.getRefDepth(s));
+			segment.putInt(slot + depthsOffset + 4 * (numSamples + s), entry.getAltDepth(s));
+			segment.putInt(slot + depthsOffset + 4 * (2 * numSamples + s), entry.getRawReadDepth(s));
+		}
+		int[] chain = chains.get(code);
+		if (chain == null){
+			chains.put(code, new int[] {1, ordinal, ordinal});
+		} else {
+			segmentFor(chain[2]).putInt(slotOffset(chain[2]) + NEXT, ordinal);
+			chain[0]++;
+			chain[2] = ordinal;
+		}
+		size++;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Function: get(int ordinal)
+	 * Usage: VCFEntry entry = store.get(ordinal)
+	 * ----
+	 * Builds a COMPACT_NO_RAW entry from the slot at ordinal.
+	 *
+	 * @param ordinal	The position of the entry, in the order entries were added
+	 * @return	A new entry holding the slot's fields
+	 */
+	public VCFEntry get(int ordinal){
+		if (ordinal < 0 || ordinal >= size) throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", Size: " + size);
+		MappedByteBuffer segment = segment(ordinal);
+		int slot = slotOffset(ordinal);
+		long[] words = new long[numWords];
+		for (int w = 0; w < numWords; w++) words[w] = segment.getLong(slot + WORDS + 8 * w);
+		byte[] genotypes = new byte[numSamples];
+		for (int s = 0; s < numSamples; s++) genotypes[s] = segment.get(slot + genotypesOffset + s);
+		int[] depths = new int[3 * numSamples];
+		for (int d = 0; d < depths.length; d++) depths[d] = segment.getInt(slot + depthsOffset + 4 * d);
+		return new VCFEntry(segment.getInt(slot + CHROMOSOME), segment.getInt(slot + POSITION),
+				(char) (segment.get(slot + REF) & 0xff), (char) (segment.get(slot + ALT) & 0xff),
+				genotypes, depths, GATKCode.fromWords(numSamples, words));
+	}
+
+	public int count(GATKCode code){
+		int[] chain = chains.get(code);
+		return chain == null ? 0 : chain[0];
+	}
+
+	/**
+	 * Function: getOrdinals(GATKCode code)
+	 * Usage: int[] ordinals = store.getOrdinals(code)
+	 * ----
+	 * Follows the code's chain of slots from its first entry to its last.
+	 *
+	 * @param code	A GATK code
+	 * @return	The ordinals of the entries with that code, in ascending order
+	 */
+	public int[] getOrdinals(GATKCode code){
+		int[] chain = chains.get(code);
+		if (chain == null) return new int[0];
+		int[] ordinals = new int[chain[0]];
+		int ordinal = chain[1];
+		for (int i = 0; i < ordinals.length; i++){
+			ordinals[i] = ordinal;
+			ordinal = segment(ordinal).getInt(slotOffset(ordinal) + NEXT);
+		}
+		return ordinals;
+	}
+
+	public Set<GATKCode> getCodes(){
+		return chains.keySet();
+	}
+
+	/**
+	 * Function: close()
+	 * Usage: store.close()
+	 * ----
+	 * Closes the file and drops the mappings, so the operating system
+	 * can unmap them once they are collected. A temporary file is then
+	 * deleted. Closing a closed store does nothing.
+	 *
+	 * @throws IOException	If the file cannot be closed
+	 */
+	public void close() throws IOException {
+		if (file == null) return;
+		try {
+			file.close();
+		} finally {
+			file = null;
+			segments = null;
+			if (temporary) path.delete();
+		}
+	}
+
+	/**
+	 * Function: setNumSamples(int samples)
+	 * Usage: setNumSamples(entry.getNumSamples())
+	 * ----
+	 * Lays out the slot for entries with the given number of samples.
+	 * Depths are kept 4-byte aligned.
+	 */
+	private void setNumSamples(int samples){
+		numSamples = samples;
+		numWords = GATKCode.numWords(samples);
+		genotypesOffset = WORDS + 8 * numWords;
+		depthsOffset = genotypesOffset + ((samples + 3) & ~3);
+		slotSize = depthsOffset + 12 * samples;
+		slotsPerSegment = Math.max(1, SEGMENT_SIZE / slotSize);
+	}
+
+	private MappedByteBuffer segment(int ordinal){
+		if (file == null) throw new IllegalStateException("The entry store is closed");
+		return segments.get(ordinal / slotsPerSegment);
+	}
+
+	private int slotOffset(int ordinal){
+		return (ordinal % slotsPerSegment) * slotSize;
+	}
+
+	/**
+	 * Function: segmentFor(int ordinal)
+	 * Usage: MappedByteBuffer segment = segmentFor(ordinal)
+	 * ----
+	 * Returns the mapping holding the slot at ordinal, growing the file
+	 * by one segment if the slot is the first past its end.
+	 */
+	private MappedByteBuffer segmentFor(int ordinal){
+		if (file == null) throw new IllegalStateException("The entry store is closed");
+		int index = ordinal / slotsPerSegment;
+		if (index < segments.size()) return segments.get(index);
+		long length = (long) slotsPerSegment * slotSize;
+		try {
+			segments.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, index * length, length));
+		} catch (IOException e){
+			throw new IllegalStateException("Cannot grow the entry store", e);
+		}
+		return segments.get(index);
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Class: ProbabilityOrder
+ * Constructor: None
+ * ----
+ * Orders entry ordinals by a probability key, working on primitive
+ * arrays so that no key or ordinal is boxed. Both functions order
+ * by key, smallest first, and keep entries with equal keys in the
+ * order they were given in.
+ */
+package jPhyTree;
+
+class ProbabilityOrder {
+
+	private ProbabilityOrder(){}
+
+	/**
+	 * Function: sort(double[] keys, int[] ordinals)
+	 * Usage: int[] sorted = ProbabilityOrder.sort(keys, ordinals)
+	 * ----
+	 * Sorts the ordinals by their keys with a merge sort.
+	 *
+	 * @param keys	The key of each ordinal
+	 * @param ordinals	The ordinals to sort; not changed
+	 * @return	The ordinals, smallest key first
+	 */
+	static int[] sort(double[] keys, int[] ordinals){
+		int[] positions = new int[ordinals.length];
+		for (int i = 0; i < positions.length; i++) positions[i] = i;
+		mergeSort(keys, positions, new int[positions.length], 0, positions.length);
+		return toOrdinals(positions, ordinals, positions.length);
+	}
+
+	/**
+	 * Function: smallest(double[] keys, int[] ordinals, int k)
+	 * Usage: int[] top = ProbabilityOrder.smallest(keys, ordinals, k)
+	 * ----
+	 * Returns the first k ordinals sort would return, keeping a heap of
+	 * the best k seen so far instead of sorting every ordinal. Takes
+	 * O(n log k) time rather than O(n log n).
+	 *
+	 * @param keys	The key of each ordinal
+	 * @param ordinals	The ordinals to choose from; not changed
+	 * @param k	How many ordinals to return
+	 * @return	The min(k, ordinals.length) ordinals with the smallest keys, smallest first
+	 */
+	static int[] smallest(double[] keys, int[] ordinals, int k){
+		k = Math.min(k, ordinals.length);
+		if (k <= 0) return new int[0];
+		//A max-heap of positions, so the worst of the best k is at the root
+		int[] heap = new int[k];
+		int size = 0;
+		for (int i = 0; i < ordinals.length; i++){
+			if (size < k){
+				heap[size] = i;
+				siftUp(keys, heap, size++);
+			} else if (before(keys, i, heap[0])){
+				heap[0] = i;
+				siftDown(keys, heap, size);
+			}
+		}
+		mergeSort(keys, heap, new int[k], 0, k);
+		return toOrdinals(heap, ordinals, k);
+	}
+
+	/**
+	 * Function: before(double[] keys, int a, int b)
+	 * Usage: if (before(keys, a, b)) ...
+	 * ----
+	 * @return	true if position a comes before position b: it has the
+	 * 			smaller key, or the same key and was given first
+	 */
+	private static boolean before(double[] keys, int a, int b){
+		int order = Double.compare(keys[a], keys[b]);
+		return order < 0 || (order == 0 && a < b);
+	}
+
+	private static void mergeSort(double[] keys, int[] positions, int[] scratch, int from, int to){
+		if (to - from < 2) return;
+		int mid = (from + to) >>> 1;
+		mergeSort(keys, positions, scratch, from, mid);
+		mergeSort(keys, positions, scratch, mid, to);
+		if (!before(keys, positions[mid], positions[mid - 1])) return;
+		System.arraycopy(positions, from, scratch, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++){
+			if (right >= to || (left < mid && !before(keys, scratch[right], scratch[left]))) positions[i] = scratch[left++];
+			else positions[i] = scratch[right++];
+		}
+	}
+
+	private static void siftUp(double[] keys, int[] heap, int index){
+		while (index > 0){
+			int parent = (index - 1) >>> 1;
+			if (!before(keys, heap[parent], heap[index])) return;
+			swap(heap, parent, index);
+			index = parent;
+		}
+	}
+
+	private static void siftDown(double[] keys, int[] heap, int size){
+		int index = 0;
+		while (true){
+			int largest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < size && before(keys, heap[largest], heap[left])) largest = left;
+			if (right < size && before(keys, heap[largest], heap[right])) largest = right;
+			if (largest == index) return;
+			swap(heap, largest, index);
+			index = largest;
+		}
+	}
+
+	private static void swap(int[] values, int a, int b){
+		int temp = values[a];
+		values[a] = values[b];
+		values[b] = temp;
+	}
+
+	private static int[] toOrdinals(int[] positions, int[] ordinals, int count){
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++) result[i] = ordinals[positions[i]];
+		return result;
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * Class: RecordLayout
+ * Constructor: None
+ * ----
+ * How much of each VCF line a VCFEntry keeps. Every layout decodes
+ * the chromosome (as a Chromosomes id), the position, the alleles,
+ * the GATK code and the GT, AD and DP values of every sample, which
+ * is all the tree building code reads.
+ *
+ * FULL keeps the offset of every field of the line, so the String
+ * getters (getInfo(), getFormat(), getAlleleFreq(), ...) are fast.
+ *
+ * COMPACT only keeps where the line starts and ends in its buffer,
+ * and finds the fields again when a String getter is called. For a
+ * memory-mapped file the line stays on disk, so the only heap cost
+ * is the offsets; for compressed or streamed input the buffers the
+ * lines were inflated or read into are kept on the heap.
+ *
+ * COMPACT_NO_RAW keeps nothing of the line. Getters that need the
+ * line, such as getInfo() or getQuality(), throw an
+ * IllegalStateException.
+ */
+package jPhyTree;
+
+public enum RecordLayout {
+	FULL,
+	COMPACT,
+	COMPACT_NO_RAW
+}
@@ -0,0 +1,130 @@
+/**
+ * Class: Region
+ * Constructor: Region(String chromosome, int start, int end)
+ *              Region.parse(String region)
+ * ----
+ * A range of positions on one chromosome, written the way tabix and
+ * samtools write regions: "chr1" for a whole chromosome, "chr1:1000"
+ * for one position and "chr1:1000-2000" for a range. Positions are
+ * 1-based, as in a VCF's POS column, and both ends are included.
+ */
+package jPhyTree;
+
+import java.util.ArrayList;
+
+public final class Region {
+
+	/* Private Instance Variables */
+	private final String chromosome;
+	private final int start;
+	private final int end;
+
+	/**
+	 * Function: Region(String chromosome, int start, int end)
+	 * Usage: (Constructor)
+	 * ----
+	 * @param chromosome	The chromosome name, as in the VCF's CHROM column
+	 * @param start	The first position of the region
+	 * @param end	The last position of the region; at least start
+	 */
+	public Region(String chromosome, int start, int end){
+		if (end < start) throw new IllegalArgumentException("Region ends before it starts: " + chromosome + ":" + start + "-" + end);
+		this.chromosome = chromosome;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Function: parse(String region)
+	 * Usage: Region region = Region.parse("chr1:1000-2000")
+	 * ----
+	 * Reads a region written as "chrom", "chrom:pos" or "chrom:start-end".
+	 * Commas within the positions, as in "chr1:1,000-2,000", are ignored.
+	 *
+	 * @param region	The region as a String
+	 * @return	The region
+	 * @throws IllegalArgumentException	If the positions are not numbers
+	 */
+	public static Region parse(String region){
+		int colon = region.lastIndexOf(':');
+		if (colon < 0) return new Region(region, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		String chromosome = region.substring(0, colon);
+		String range = region.substring(colon + 1).replace(",", "");
+		int dash = range.indexOf('-');
+		try {
+			if (dash < 0){
+				int pos = Integer.parseInt(range);
+				return new Region(chromosome, pos, pos);
+			}
+			int start = Integer.parseInt(range.substring(0, dash));
+			int end = dash == range.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(range.substring(dash + 1));
+			return new Region(chromosome, start, end);
+		} catch (NumberFormatException e){
+			throw new IllegalArgumentException("Not a region: " + region);
+		}
+	}
+
+	/**
+	 * Function: parseAll(String regions)
+	 * Usage: ArrayList<Region> regions = Region.parseAll("chr1 chr2:100-200")
+	 * ----
+	 * Reads a list of regions separated by whitespace or semicolons.
+	 *
+	 * @param regions	The regions as a String
+	 * @return	The regions, in the order given
+	 */
+	public static ArrayList<Region> parseAll(String regions){
+		ArrayList<Region> result = new ArrayList<Region>();
+		for (String region : regions.trim().split("[\\s;]+")){
+			if (region.length() > 0) result.add(parse(region));
+		}
+		return result;
+	}
+
+	/**
+	 * Function: getChromosome()
+	 * Usage: String chrom = region.getChromosome()
+	 * ----
+	 * @return	The chromosome name
+	 */
+	public String getChromosome(){
+		return chromosome;
+	}
+
+	/**
+	 * Function: getStart()
+	 * Usage: int start = region.getStart()
+	 * ----
+	 * @return	The first position of the region
+	 */
+	public int getStart(){
+		return start;
+	}
+
+	/**
+	 * Function: getEnd()
+	 * Usage: int end = region.getEnd()
+	 * ----
+	 * @return	The last position of the region
+	 */
+	public int getEnd(){
+		return end;
+	}
+
+	public boolean equals(Object obj){
+		if (this == obj) return true;
+		if (!(obj instanceof Region)) return false;
+		Region other = (Region) obj;
+		return chromosome.equals(other.chromosome) && start == other.start && end == other.end;
+	}
+
+	public int hashCode(){
+		return 31 * (31 * chromosome.hashCode() + start) + end;
+	}
+
+	public String toString(){
+		if (start == Integer.MIN_VALUE && end == Integer.MAX_VALUE) return chromosome;
+		if (start == end) return chromosome + ":" + start;
+		return chromosome + ":" + start + "-" + (end == Integer.MAX_VALUE ? "" : Integer.toString(end));
+	}
+}
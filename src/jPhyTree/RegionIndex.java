@@ -0,0 +1,162 @@
+/**
+ * Class: RegionIndex
+ * Constructor: RegionIndex.build(EntryStore store)
+ * ----
+ * A positional index over the entries of a store, partitioned by
+ * chromosome. For each chromosome the entries are sorted by position
+ * (entries at the same position stay in the order they were added),
+ * and, as in tabix's linear index, the chromosome is cut into bins of
+ * BIN_SIZE positions with the first sorted entry of every bin noted.
+ * A range query finds each of its ends by looking up the bin holding
+ * it and binary searching only within that bin, so its cost barely
+ * depends on how many entries lie outside the range.
+ *
+ * The index is built in one pass over the store; entries added later
+ * are not seen.
+ */
+package jPhyTree;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+class RegionIndex {
+
+	/* Private Constants */
+	private static final int BIN_SHIFT = 14;
+	private static final int BIN_SIZE = 1 << BIN_SHIFT;
+
+	/* Private Instance Variables */
+	private final int size;
+	/* Indexed by Chromosomes id; null for chromosomes without entries */
+	private final int[][] positions;
+	private final int[][] ordinals;
+	/* bins[c][k] is the first index into positions[c] with a position of at least k * BIN_SIZE */
+	private final int[][] bins;
+
+	private RegionIndex(int size, int numChromosomes){
+		this.size = size;
+		positions = new int[numChromosomes][];
+		ordinals = new int[numChromosomes][];
+		bins = new int[numChromosomes][];
+	}
+
+	/**
+	 * Function: build(EntryStore store)
+	 * Usage: RegionIndex index = RegionIndex.build(store)
+	 * ----
+	 * @param store	The entries to index
+	 * @return	The index of the store's entries as they are now
+	 */
+	static RegionIndex build(EntryStore store){
+		int size = store.size();
+		int[] chromIds = new int[size];
+		int[] counts = new int[Chromosomes.size()];
+		//Position in the high half so sorting a chromosome's keys sorts by position, then ordinal
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++){
+			VCFEntry entry = store.get(i);
+			chromIds[i] = entry.getChromosomeId();
+			keys[i] = ((long) entry.getPositionValue() << 32) | i;
+			counts[chromIds[i]]++;
+		}
+		RegionIndex index = new RegionIndex(size, counts.length);
+		long[][] chromKeys = new long[counts.length][];
+		for (int c = 0; c < counts.length; c++){
+			if (counts[c] > 0) chromKeys[c] = new long[counts[c]];
+			counts[c] = 0;
+		}
+		for (int i = 0; i < size; i++) chromKeys[chromIds[i]][counts[chromIds[i]]++] = keys[i];
+		for (int c = 0; c < counts.length; c++){
+			if (chromKeys[c] != null) index.addChromosome(c, chromKeys[c]);
+		}
+		return index;
+	}
+
+	private void addChromosome(int chromId, long[] keys){
+		Arrays.sort(keys);
+		int[] chromPositions = new int[keys.length];
+		int[] chromOrdinals = new int[keys.length];
+		for (int i = 0; i < keys.length; i++){
+			chromPositions[i] = (int) (keys[i] >> 32);
+			chromOrdinals[i] = (int) keys[i];
+		}
+		int lastPosition = Math.max(chromPositions[keys.length - 1], 0);
+		int[] chromBins = new int[(lastPosition >>> BIN_SHIFT) + 2];
+		int i = 0;
+		for (int k = 0; k < chromBins.length; k++){
+			long binStart = (long) k << BIN_SHIFT;
+			while (i < keys.length && chromPositions[i] < binStart) i++;
+			chromBins[k] = i;
+		}
+		positions[chromId] = chromPositions;
+		ordinals[chromId] = chromOrdinals;
+		bins[chromId] = chromBins;
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int numEntries = index.size()
+	 * ----
+	 * @return	The number of entries the index covers
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * Function: find(Region region)
+	 * Usage: int[] ordinals = index.find(region)
+	 * ----
+	 * @param region	A chromosome and range of positions
+	 * @return	The ordinals of the entries in the region, sorted by position
+	 */
+	int[] find(Region region){
+		int chromId = Chromosomes.lookup(region.getChromosome());
+		if (chromId < 0 || chromId >= positions.length || positions[chromId] == null) return new int[0];
+		int from = lowerBound(chromId, region.getStart());
+		int to = region.getEnd() == Integer.MAX_VALUE ? positions[chromId].length : lowerBound(chromId, region.getEnd() + 1);
+		return Arrays.copyOfRange(ordinals[chromId], from, Math.max(from, to));
+	}
+
+	/**
+	 * Function: mark(Region region, BitSet result)
+	 * Usage: index.mark(region, result)
+	 * ----
+	 * Sets the ordinal of every entry in the region.
+	 *
+	 * @param region	A chromosome and range of positions
+	 * @param result	The set to add the ordinals to
+	 */
+	void mark(Region region, BitSet result){
+		int chromId = Chromosomes.lookup(region.getChromosome());
+		if (chromId < 0 || chromId >= positions.length || positions[chromId] == null) return;
+		int from = lowerBound(chromId, region.getStart());
+		int to = region.getEnd() == Integer.MAX_VALUE ? positions[chromId].length : lowerBound(chromId, region.getEnd() + 1);
+		for (int i = from; i < to; i++) result.set(ordinals[chromId][i]);
+	}
+
+	/**
+	 * Function: lowerBound(int chromId, int position)
+	 * Usage: int from = lowerBound(chromId, position)
+	 * ----
+	 * @return	The index of the chromosome's first entry at or after
+	 * 			position, found within the bin holding position
+	 */
+	private int lowerBound(int chromId, int position){
+		int[] chromPositions = positions[chromId];
+		int[] chromBins = bins[chromId];
+		if (position <= 0) return lowerBound(chromPositions, 0, chromBins[0], position);
+		int bin = position >>> BIN_SHIFT;
+		if (bin >= chromBins.length - 1) return chromPositions.length;
+		return lowerBound(chromPositions, chromBins[bin], chromBins[bin + 1], position);
+	}
+
+	private static int lowerBound(int[] values, int from, int to, int value){
+		while (from < to){
+			int mid = (from + to) >>> 1;
+			if (values[mid] < value) from = mid + 1;
+			else to = mid;
+		}
+		return from;
+	}
+}
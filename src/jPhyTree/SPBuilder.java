@@ -16,12 +16,12 @@ public class SPBuilder {
 	private HashMap<Integer, String> nodeLabels;
 	private VCFDatabase vcfDB;
 
-	public SPBuilder(Map<String, Double> mutMap, ArrayList<ArrayList<Integer>> noConflictMatrixPrime, Set<ArrayList<Integer>> conflicts, 
+	public SPBuilder(Map<String, Double> mutMap, BitMatrix noConflictMatrixPrime, Set<GATKCode> conflicts, 
 			String testName, VCFDatabase db){
 		TreeBuilder tb = new TreeBuilder();
 		vcfDB = db;
 		HashMap<Integer, Integer> LColFuncMap = tb.getLColFuncMap(noConflictMatrixPrime);
-		Map<Integer, ArrayList<Integer>> edgeToCodeMap = new HashMap<Integer, ArrayList<Integer>>();
+		Map<Integer, GATKCode> edgeToCodeMap = new HashMap<Integer, GATKCode>();
 		nodeLabels = new HashMap<Integer, String>();
 		currTree = assembleGraph(noConflictMatrixPrime, LColFuncMap, mutMap, edgeToCodeMap, nodeLabels, testName);
 		
@@ -36,8 +36,8 @@ public class SPBuilder {
 		return currTree;
 	}
 	
-	private DirectedGraph<Integer, Integer> assembleGraph(ArrayList<ArrayList<Integer>> matrixPrime, 
-			HashMap<Integer, Integer> lColFuncMap, Map<String, Double> mutMap, Map<Integer, ArrayList<Integer>> edgeToCodeMap, 
+	private DirectedGraph<Integer, Integer> assembleGraph(BitMatrix matrixPrime, 
+			HashMap<Integer, Integer> lColFuncMap, Map<String, Double> mutMap, Map<Integer, GATKCode> edgeToCodeMap, 
 			HashMap<Integer, String> nodeLabels, String testName) {
 		DirectedGraph<Integer, Integer> g = new DirectedSparseGraph<Integer, Integer>();
 		/**
@@ -46,8 +46,8 @@ public class SPBuilder {
 //		System.out.println("SUBPOP MatPrime");
 //		TreeChecker.printMatrix(matrixPrime);
 //		System.out.println("-----");
-		int numRows = matrixPrime.size();
-		int numCols = matrixPrime.get(0).size();
+		int numRows = matrixPrime.getNumRows();
+		int numCols = matrixPrime.getNumCols();
 		//Add root
 		g.addVertex((Integer) 0);
 		for (int i = 0; i < numCols; i++){
@@ -75,11 +75,8 @@ public class SPBuilder {
 		 * Taken out for time testing
 		 */
 //		System.out.println(redEdgeMap.toString());
-		for(ArrayList<Integer> greenEdge : edgeToCodeMap.values()){
-			String greenEdgeStr = "";
-			for (int i = 0; i < greenEdge.size(); i++){
-				greenEdgeStr += greenEdge.get(i);
-			}
+		for(GATKCode greenEdge : edgeToCodeMap.values()){
+			String greenEdgeStr = greenEdge.toString();
 		/**
 		 * Taken out for time testing
 		 */
@@ -102,13 +99,7 @@ public class SPBuilder {
 		//If we find no red edges, add the samples and return the graph
 		if (redEdgeMap.isEmpty()){
 			for (int i = 0; i < numRows; i++){
-				int maxIndex = 0;
-				for (int j = numCols - 1; j >= 0; j--){
-					if (matrixPrime.get(i).get(j) == 1){
-						maxIndex = j + 1;
-						break;
-					}
-				}
+				int maxIndex = matrixPrime.previousOne(i, numCols - 1) + 1;
 				Integer currParent = g.getDest(maxIndex);
 				if (maxIndex == 0) currParent = 0;
 				g.addVertex(-1 * (i + 1));
@@ -177,13 +168,7 @@ public class SPBuilder {
 		boolean nodeCParentIsB = (new ArrayList<Integer>(g.getPredecessors(nodeC))).get(0).intValue() == nodeB.intValue();
 		//Attach samples
 		for (int i = 0; i < numRows; i++){
-			int maxIndex = 0;
-			for (int j = numCols - 1; j >= 0; j--){
-				if (matrixPrime.get(i).get(j) == 1){
-					maxIndex = j + 1;
-					break;
-				}
-			}
+			int maxIndex = matrixPrime.previousOne(i, numCols - 1) + 1;
 			Integer currParent = g.getDest(maxIndex);
 			if (maxIndex == 0) currParent = 0;
 			g.addVertex(-1 * (i + 1));
@@ -355,27 +340,19 @@ public class SPBuilder {
 	}
 
 	private Integer ExtendNode(Integer currNode,
-			Integer nodeA, DirectedGraph<Integer, Integer> g, ArrayList<ArrayList<Integer>> matrixPrime,
+			Integer nodeA, DirectedGraph<Integer, Integer> g, BitMatrix matrixPrime,
 			Map<String, Double> mutMap, String testName, Map<String, Double> redEdgeMap) {
 		// TODO Auto-generated method stub
 		//1) Get all successors of currNode
 		//2) Get highest successor conversion prob
 		//3) If over 0.5, shift A to successor
 		//Get all successors of 
-		ArrayList<Integer> currNodeCode = getMatrixColumn(matrixPrime, currNode - 1);
-		String currNodeStr = "";
-		for (int j = 0; j < currNodeCode.size(); j++) currNodeStr += currNodeCode.get(j);
-		ArrayList<Integer> nodeACode = getMatrixColumn(matrixPrime, nodeA - 1);
-		String nodeAStr = "";
-		for (int j = 0; j < nodeACode.size(); j++) nodeAStr += nodeACode.get(j);
-		int valueCurrNode = Integer.valueOf(currNodeStr, 2).intValue();
-		int valueA = Integer.valueOf(nodeAStr, 2).intValue();
-		int conflictCode = valueA | valueCurrNode;
+		GATKCode valueCurrNode = getMatrixColumn(matrixPrime, currNode - 1);
+		String currNodeStr = valueCurrNode.toString();
+		GATKCode valueA = getMatrixColumn(matrixPrime, nodeA - 1);
+		GATKCode conflictCode = valueA.or(valueCurrNode);
 		//System.out.println("ConflictCode: " + conflictCode);
-		String conflictCodeStr = Integer.toBinaryString(conflictCode);
-		while (conflictCodeStr.length() < matrixPrime.size()){
-			conflictCodeStr = "0" + conflictCodeStr;
-		}
+		String conflictCodeStr = conflictCode.toString();
 		/**
 		 * Taken out for time testing
 		 */
@@ -383,7 +360,7 @@ public class SPBuilder {
 //		System.out.println("Testing extending currNode: " + currNodeCode.toString() + " to: " + conflictCodeStr.toString());
 		ArrayList<VCFEntry> possMutations = new ArrayList<VCFEntry>();
 		ArrayList<VCFEntry> currFailCodes = new ArrayList<VCFEntry>();
-		Integer totalMut = vcfDB.getEntriesByGATK(currNodeStr).size();
+		Integer totalMut = vcfDB.countEntriesByGATK(currNodeStr);
 		int currMutConverted = vcfDB.getValidEntries(currNodeStr, conflictCodeStr, EDIT_DISTANCE, possMutations, currFailCodes, totalMut);
 		double conversionRate = (currMutConverted + 0.0) / totalMut;
 		/**
@@ -434,33 +411,26 @@ public class SPBuilder {
 			for (int i = 0; i < currSuccessors.size(); i++){
 				Integer currSuccessor = currSuccessors.get(i);
 				if (!isRedEdgeEndpoints(nodeA, currSuccessor, redEdgeMap.keySet(), matrixPrime)) continue;
-				ArrayList<Integer> currSuccessorCode = getMatrixColumn(matrixPrime, currSuccessor - 1);
+				GATKCode currSuccValue = getMatrixColumn(matrixPrime, currSuccessor - 1);
 				/**
 				 * Taken out for time testing
 				 */
 //				System.out.println("Testing extending currNode: " + currNodeCode.toString() + " to: " + currSuccessorCode.toString());
-				String succCodeStr = "";
-				
-				for (int j = 0; j < currSuccessorCode.size(); j++) succCodeStr += currSuccessorCode.get(j);
+				String succCodeStr = currSuccValue.toString();
 
-				//int valueA = Integer.valueOf(currNodeStr, 2).intValue();
-				int currSuccValue = Integer.valueOf(succCodeStr, 2).intValue();
-				conflictCode = valueA | currSuccValue;
+				conflictCode = valueA.or(currSuccValue);
 				/**
 				 * Taken out for time testing
 				 */
 //				System.out.println("ConflictCode: " + conflictCode);
-				conflictCodeStr = Integer.toBinaryString(conflictCode);
-				while (conflictCodeStr.length() < matrixPrime.size()){
-					conflictCodeStr = "0" + conflictCodeStr;
-				}
+				conflictCodeStr = conflictCode.toString();
 				/**
 				 * Taken out for time testing
 				 */
 //				System.out.println("ConflictCode: " + conflictCodeStr);
 				possMutations = new ArrayList<VCFEntry>();
 				currFailCodes = new ArrayList<VCFEntry>();
-				totalMut = vcfDB.getEntriesByGATK(succCodeStr).size();
+				totalMut = vcfDB.countEntriesByGATK(succCodeStr);
 				currMutConverted = vcfDB.getValidEntries(succCodeStr, conflictCodeStr, EDIT_DISTANCE, possMutations, currFailCodes, totalMut);
 				int totalMutConverted = currMutConverted;
 				if (mutMap.containsKey(conflictCodeStr)) {
@@ -527,36 +497,29 @@ public class SPBuilder {
 	}
 
 	private void outputConflictEdgeInfo(Integer nodeA, Integer nodeC,
-			ArrayList<ArrayList<Integer>> matrixPrime,
+			BitMatrix matrixPrime,
 			Map<String, Double> mutMap) {
 		// TODO Auto-generated method stub
-	ArrayList<Integer> codeA = getMatrixColumn(matrixPrime, nodeA - 1);
-	ArrayList<Integer> codeC = getMatrixColumn(matrixPrime, nodeC - 1);
+	GATKCode valueA = getMatrixColumn(matrixPrime, nodeA - 1);
+	GATKCode valueC = getMatrixColumn(matrixPrime, nodeC - 1);
 	/**
 	 * Taken out for time testing
 	 */
 //	System.out.println("A: " + codeA.toString() + "C: " + codeC.toString());
-	String ACodeStr = "", CCodeStr = "";
-	for (int i = 0; i < codeA.size(); i++) ACodeStr += codeA.get(i);
-	for (int i = 0; i < codeC.size(); i++) CCodeStr += codeC.get(i);
+	String ACodeStr = valueA.toString(), CCodeStr = valueC.toString();
 	ArrayList<VCFEntry> possMutations = new ArrayList<VCFEntry>();
 	ArrayList<VCFEntry> currFailCodes = new ArrayList<VCFEntry>();
-	int valueA = Integer.valueOf(ACodeStr, 2).intValue();
-	int valueC = Integer.valueOf(CCodeStr, 2).intValue();
-	int conflictCode = valueA | valueC;
+	GATKCode conflictCode = valueA.or(valueC);
 	/**
 	 * Taken out for time testing
 	 */
 //	System.out.println("ConflictCode: " + conflictCode);
-	String conflictCodeStr = Integer.toBinaryString(conflictCode);
-	while (conflictCodeStr.length() < matrixPrime.size()){
-		conflictCodeStr = "0" + conflictCodeStr;
-	}
+	String conflictCodeStr = conflictCode.toString();
 	/**
 	 * Taken out for time testing
 	 */
 //	System.out.println("ConflictCode: " + conflictCodeStr);
-	Integer totalMut = vcfDB.getEntriesByGATK(CCodeStr).size();
+	Integer totalMut = vcfDB.countEntriesByGATK(CCodeStr);
 	int currMutConverted = vcfDB.getValidEntries(CCodeStr, conflictCodeStr, EDIT_DISTANCE, possMutations, currFailCodes, totalMut);
 	/**
 	 * Taken out for time testing
@@ -566,7 +529,7 @@ public class SPBuilder {
 	}
 
 	private Integer findABySampleCounts(Map<String, Double> redEdgeMap,
-			int numRows, ArrayList<ArrayList<Integer>> matrixPrime, DirectedGraph<Integer, Integer> g, Set<Integer> oldNodeASet) {
+			int numRows, BitMatrix matrixPrime, DirectedGraph<Integer, Integer> g, Set<Integer> oldNodeASet) {
 		// TODO Auto-generated method stub
 		Map<Integer, Integer> sampleCounts = new HashMap<Integer, Integer>();
 		for (String redEdge : redEdgeMap.keySet()){
@@ -597,8 +560,8 @@ public class SPBuilder {
 		 */
 //		System.out.println("Sample Counts: " + sampleCounts.toString());
 		Integer nodeA = null;
-		for (int i = 0; i < matrixPrime.get(0).size(); i++){
-			if (matrixPrime.get(bestSample).get(i).intValue() == 1){
+		for (int i = 0; i < matrixPrime.getNumCols(); i++){
+			if (matrixPrime.get(bestSample, i)){
 				if (isSingleSampleEdge(bestSample, i, matrixPrime)) {
 					nodeA = i + 1;
 					break;
@@ -620,8 +583,8 @@ public class SPBuilder {
 			 */
 //			System.out.println("Sample Counts: " + sampleCounts.toString());
 			nodeA = null;
-			for (int i = 0; i < matrixPrime.get(0).size(); i++){
-				if (matrixPrime.get(bestSample).get(i).intValue() == 1){
+			for (int i = 0; i < matrixPrime.getNumCols(); i++){
+				if (matrixPrime.get(bestSample, i)){
 					if (isSingleSampleEdge(bestSample, i, matrixPrime)) {
 						nodeA = i + 1;
 						break;
@@ -635,7 +598,7 @@ public class SPBuilder {
 		//3) 	currNode = currNode.parent
 		Integer currNode = (new ArrayList<Integer>(g.getPredecessors(nodeA))).get(0);
 		
-		ArrayList<Integer> currColumn = null;
+		GATKCode currColumn = null;
 		if (currNode.intValue() != 0) {
 			currColumn = getMatrixColumn(matrixPrime, currNode - 1);
 			/**
@@ -644,9 +607,9 @@ public class SPBuilder {
 //			System.out.println("CurrColumn: " + currColumn.toString());
 		}
 		while (currNode.intValue() != 0){
-			for (int i = 0; i < currColumn.size(); i++){
-				if (currColumn.get(i).intValue() == 1 && sampleCounts.containsKey(i) && sampleCounts.get(i) != max) return nodeA;
-				else if (currColumn.get(i).intValue() == 1 && !sampleCounts.containsKey(i)) return nodeA;
+			for (int i = 0; i < currColumn.length(); i++){
+				if (currColumn.get(i) && sampleCounts.containsKey(i) && sampleCounts.get(i) != max) return nodeA;
+				else if (currColumn.get(i) && !sampleCounts.containsKey(i)) return nodeA;
 			}
 			nodeA = currNode;
 			currNode = (new ArrayList<Integer>(g.getPredecessors(nodeA))).get(0);
@@ -693,39 +656,24 @@ public class SPBuilder {
 //		
 //	}
 
-	private boolean isSingleSampleEdge(Integer bestSample, int col, ArrayList<ArrayList<Integer>> matrixPrime) {
-	// TODO Auto-generated method stub
-		//boolean isSampleEdge = false;
-		ArrayList<Integer> currCol = getMatrixColumn(matrixPrime, col);
-		for (int j = 0; j < currCol.size(); j++){
-			if (j != bestSample && currCol.get(j).intValue() != 0) return false;
-						
-		}
-		return true;
+	private boolean isSingleSampleEdge(Integer bestSample, int col, BitMatrix matrixPrime) {
+		//No sample but bestSample may be set
+		GATKCode currCol = getMatrixColumn(matrixPrime, col);
+		return currCol.bitCount() == (currCol.get(bestSample) ? 1 : 0);
 	}
 
 	private void outputSubPopFile(Integer A, Integer B,
-			ArrayList<ArrayList<Integer>> matrixPrime,
+			BitMatrix matrixPrime,
 			Map<String, Double> mutMap, int numRows, String testName) {
 		// TODO Auto-generated method stub
-		ArrayList<Integer> ACode = getMatrixColumn(matrixPrime, A - 1);
-		ArrayList<Integer> BCode = getMatrixColumn(matrixPrime, B - 1);
-		String ACodeStr = "", BCodeStr = "";
-		for (int i = 0; i < ACode.size(); i++) ACodeStr += ACode.get(i);
-		for (int i = 0; i < BCode.size(); i++) BCodeStr += BCode.get(i);
-		int Avalue = Integer.valueOf(ACodeStr, 2).intValue();
-		int Bvalue = Integer.valueOf(BCodeStr, 2).intValue();
-		int subPopValue = (Avalue | Bvalue);
-		String subPopStr = Integer.toString(subPopValue, 2);
+		GATKCode Avalue = getMatrixColumn(matrixPrime, A - 1);
+		GATKCode Bvalue = getMatrixColumn(matrixPrime, B - 1);
+		GATKCode subPopValue = Avalue.or(Bvalue);
+		String subPopStr = subPopValue.toString();
 		/**
 		 * Taken out for time testing
 		 */
 //		System.out.println("SubPop: " + subPopStr + " NumRows: " + numRows);
-		if (subPopStr.length() < numRows){
-			while (subPopStr.length() < numRows){
-				subPopStr = "0" + subPopStr;
-			}
-		}
 		Double subPopNum = mutMap.get(subPopStr);
 		String outputLine = "SubPop of " + subPopStr + " was found and resolved with count " + subPopNum + ".";
 		//System.out.println();
@@ -743,7 +691,7 @@ public class SPBuilder {
 	}
 
 	private Integer descendAncestor(Integer nodeA, Integer nodeB, Set<Integer> ancestors, Set<String> redEdges, 
-			ArrayList<ArrayList<Integer>> matrixPrime, Map<Integer, Double> subPopCounts, DirectedGraph<Integer, Integer> g) {
+			BitMatrix matrixPrime, Map<Integer, Double> subPopCounts, DirectedGraph<Integer, Integer> g) {
 		// TODO Auto-generated method stub
 		ArrayList<Integer> successors = new ArrayList<Integer>(g.getSuccessors(nodeB));
 		successors.removeAll(ancestors);
@@ -777,10 +725,10 @@ public class SPBuilder {
 	}
 
 	private boolean isRedEdgeEndpoints(Integer nodeA, Integer currNode,
-			Set<String> redEdges, ArrayList<ArrayList<Integer>> matrixPrime) {
+			Set<String> redEdges, BitMatrix matrixPrime) {
 		// TODO Auto-generated method stub
-		ArrayList<Integer> nodeACode = getMatrixColumn(matrixPrime, nodeA - 1);
-		ArrayList<Integer> currNodeCode = getMatrixColumn(matrixPrime, currNode - 1);
+		GATKCode nodeACode = getMatrixColumn(matrixPrime, nodeA - 1);
+		GATKCode currNodeCode = getMatrixColumn(matrixPrime, currNode - 1);
 		for (String redEdge : redEdges){
 			if (isEdgeEndpoints(nodeACode, currNodeCode, redEdge)) return true;
 		}
@@ -788,14 +736,6 @@ public class SPBuilder {
 		//return isEdgeEndPoints(nodeACode, currNodeCode, )
 	}
 
-	private int ALtoInt(ArrayList<Integer> code) {
-		// TODO Auto-generated method stub
-		String codeStr = "";
-		for (int i = 0; i < code.size(); i++) codeStr += code.get(i);
-		int value = Integer.valueOf(codeStr, 2).intValue();
-		return value;
-	}
-
 	private Integer findParents(Integer A,
 			Map<String, Double> redEdgeMap, Map<Integer, Double> subPopCounts, Set<Integer> ancestors, DirectedGraph<Integer, Integer> g) {
 		if (A == null) return null;
@@ -912,8 +852,8 @@ public class SPBuilder {
 	
 	//Fixed?
 	private Map<Integer, Double> distributeRedEdges(Map<String, Double> redEdgeMap,
-			Map<Integer, ArrayList<Integer>> edgeToCodeMap,
-			ArrayList<ArrayList<Integer>> matrixPrime, DirectedGraph<Integer, Integer> g) {
+			Map<Integer, GATKCode> edgeToCodeMap,
+			BitMatrix matrixPrime, DirectedGraph<Integer, Integer> g) {
 		//Get all red edge codes
 		ArrayList<String> redEdgeCodes = new ArrayList<String>(redEdgeMap.keySet());
 		/**
@@ -925,7 +865,7 @@ public class SPBuilder {
 		//Distribute each edge
 		for (int i = 0; i < redEdgeCodes.size(); i++){
 			String redEdge = redEdgeCodes.get(i);
-			for (int x = 0; x < matrixPrime.get(0).size(); x++){
+			for (int x = 0; x < matrixPrime.getNumCols(); x++){
 				for (int y = 0; y < x; y++){
 					if (x != y && isEdgeEndpoints(getMatrixColumn(matrixPrime, x), getMatrixColumn(matrixPrime, y), redEdge)){
 						Integer endPoint1 = x + 1;
@@ -965,17 +905,11 @@ public class SPBuilder {
 		return subPopCounts;
 	}
 
-	private boolean isEdgeEndpoints(ArrayList<Integer> code1, ArrayList<Integer> code2, String redEdgeCode) {
-		// TODO Auto-generated method stub
-		String code1Str = "", code2Str = "";
-		for (int i = 0; i < code1.size(); i++) code1Str += code1.get(i);
-		for (int i = 0; i < code2.size(); i++) code2Str += code2.get(i);
-		int code1Int = Integer.valueOf(code1Str, 2).intValue();
-		int code2Int = Integer.valueOf(code2Str, 2).intValue();
-		int destCode = Integer.valueOf(redEdgeCode, 2).intValue();
+	private boolean isEdgeEndpoints(GATKCode code1Bits, GATKCode code2Bits, String redEdgeCode) {
+		GATKCode destCode = new GATKCode(redEdgeCode);
 		//if one is subset of other, return false
-		if ((code1Int | code2Int) == code1Int || (code1Int | code2Int) == code2Int) return false;
-		if ((code1Int | code2Int) == destCode) return true;
+		if (code2Bits.isSubsetOf(code1Bits) || code1Bits.isSubsetOf(code2Bits)) return false;
+		if (code1Bits.or(code2Bits).equals(destCode)) return true;
 		return false;
 	}
 
@@ -1024,15 +958,7 @@ public class SPBuilder {
 		return total.intValue();
 	}
 
-	private ArrayList<Integer> getMatrixColumn(
-			ArrayList<ArrayList<Integer>> matrixPrime, int col) {
-		ArrayList<Integer> colCode = new ArrayList<Integer>();
-		for (int i = 0; i < matrixPrime.size(); i++){
-			ArrayList<Integer> row = matrixPrime.get(i);
-			//for (int j = 0; j < row.size(); j++) System.out.print(row.get(i));
-			colCode.add(row.get(col));
-			//System.out.println(row.get(col).toString());
-		}
-		return colCode;
+	private GATKCode getMatrixColumn(BitMatrix matrixPrime, int col) {
+		return matrixPrime.getColumn(col);
 	}
 }
@@ -0,0 +1,182 @@
+/**
+ * Class: SampleBitmaps
+ * Constructor: SampleBitmaps.build(EntryStore store)
+ * ----
+ * One bitmap per sample over the entry ordinals of a store: bit i of
+ * sample s is set when entry i carries the variant in s, that is when
+ * s is a 1 in the entry's GATK code. Questions such as "every entry
+ * present in samples 2 and 5 but absent from sample 0" are answered
+ * by ANDing and ANDNOTing the sample bitmaps a word at a time, without
+ * reading any entry.
+ *
+ * Each bitmap is cut into blocks of BLOCK_WORDS words. A block with no
+ * bit set is not stored, and a block with every bit set is shared, so
+ * a sample that is rare or nearly everywhere costs little memory, and
+ * a query skips the blocks an included sample does not reach.
+ *
+ * Bitmaps are built from the store's per-code index, so each distinct
+ * code is unpacked once however many entries have it. Entries whose
+ * code has another length than the first code are left out of every
+ * bitmap.
+ */
+package jPhyTree;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+class SampleBitmaps {
+
+	/* Private Constants */
+	private static final int BLOCK_SHIFT = 6;
+	private static final int BLOCK_WORDS = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_BITS = BLOCK_WORDS << 6;
+	private static final long[] FULL_BLOCK = new long[BLOCK_WORDS];
+	static {
+		Arrays.fill(FULL_BLOCK, -1L);
+	}
+
+	/* Private Instance Variables */
+	private final int size;
+	private final int numSamples;
+	/* blocks[s][b] holds ordinals b * BLOCK_BITS onwards of sample s; null when none is set */
+	private final long[][][] blocks;
+
+	private SampleBitmaps(int size, int numSamples){
+		this.size = size;
+		this.numSamples = numSamples;
+		blocks = new long[numSamples][(size + BLOCK_BITS - 1) / BLOCK_BITS][];
+	}
+
+	/**
+	 * Function: build(EntryStore store)
+	 * Usage: SampleBitmaps bitmaps = SampleBitmaps.build(store)
+	 * ----
+	 * @param store	The entries to index
+	 * @return	The bitmaps of the store's entries as they are now
+	 */
+	static SampleBitmaps build(EntryStore store){
+		int size = store.size();
+		int numSamples = size == 0 ? 0 : store.get(0).getGATKCode().length();
+		SampleBitmaps bitmaps = new SampleBitmaps(size, numSamples);
+		int[] samples = new int[numSamples];
+		for (GATKCode code : store.getCodes()){
+			if (code.length() != numSamples) continue;
+			int count = 0;
+			for (int s = 0; s < numSamples; s++){
+				if ((code.getWord(s >>> 6) & GATKCode.bitMask(s)) != 0) samples[count++] = s;
+			}
+			if (count == 0) continue;
+			int[] ordinals = store.getOrdinals(code);
+			for (int i = 0; i < ordinals.length; i++){
+				for (int j = 0; j < count; j++) bitmaps.set(samples[j], ordinals[i]);
+			}
+		}
+		bitmaps.shareFullBlocks();
+		return bitmaps;
+	}
+
+	private void set(int sample, int ordinal){
+		long[][] sampleBlocks = blocks[sample];
+		int b = ordinal / BLOCK_BITS;
+		if (sampleBlocks[b] == null) sampleBlocks[b] = new long[BLOCK_WORDS];
+		int bit = ordinal % BLOCK_BITS;
+		sampleBlocks[b][bit >>> 6] |= 1L << bit;
+	}
+
+	private void shareFullBlocks(){
+		for (int s = 0; s < numSamples; s++){
+			for (int b = 0; b < blocks[s].length; b++){
+				if (Arrays.equals(blocks[s][b], FULL_BLOCK)) blocks[s][b] = FULL_BLOCK;
+			}
+		}
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int numEntries = bitmaps.size()
+	 * ----
+	 * @return	The number of entries the bitmaps cover
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * Function: getNumSamples()
+	 * Usage: int samples = bitmaps.getNumSamples()
+	 * ----
+	 * @return	The length of the codes the bitmaps were built from
+	 */
+	int getNumSamples(){
+		return numSamples;
+	}
+
+	/**
+	 * Function: query(GATKCode include, GATKCode exclude)
+	 * Usage: BitSet ordinals = bitmaps.query(include, exclude)
+	 * ----
+	 * Finds the entries present in every sample of include and absent
+	 * from every sample of exclude. With no sample included, every
+	 * entry is a candidate.
+	 *
+	 * @param include	The samples the entries must be present in
+	 * @param exclude	The samples the entries must be absent from
+	 * @return	The ordinals of the matching entries, as a new BitSet
+	 * @throws IllegalArgumentException	If a mask is not getNumSamples() long
+	 */
+	BitSet query(GATKCode include, GATKCode exclude){
+		int[] in = samplesOf(include);
+		int[] out = samplesOf(exclude);
+		long[] result = new long[(size + 63) >>> 6];
+		long[] block = new long[BLOCK_WORDS];
+		for (int b = 0; b < (size + BLOCK_BITS - 1) / BLOCK_BITS; b++){
+			if (!intersect(b, in, out, block)) continue;
+			int from = b << BLOCK_SHIFT;
+			System.arraycopy(block, 0, result, from, Math.min(BLOCK_WORDS, result.length - from));
+		}
+		if ((size & 63) != 0) result[result.length - 1] &= -1L >>> (64 - (size & 63));
+		return BitSet.valueOf(result);
+	}
+
+	/**
+	 * Function: intersect(int b, int[] in, int[] out, long[] block)
+	 * Usage: if (intersect(b, in, out, block)) ...
+	 * ----
+	 * Computes block b of the query into block.
+	 *
+	 * @return	false if no entry of the block can match, leaving block unspecified
+	 */
+	private boolean intersect(int b, int[] in, int[] out, long[] block){
+		boolean started = false;
+		for (int i = 0; i < in.length; i++){
+			long[] words = blocks[in[i]][b];
+			if (words == null) return false;
+			if (words == FULL_BLOCK) continue;
+			if (!started){
+				System.arraycopy(words, 0, block, 0, BLOCK_WORDS);
+				started = true;
+			} else {
+				for (int w = 0; w < BLOCK_WORDS; w++) block[w] &= words[w];
+			}
+		}
+		if (!started) Arrays.fill(block, -1L);
+		for (int i = 0; i < out.length; i++){
+			long[] words = blocks[out[i]][b];
+			if (words == null) continue;
+			if (words == FULL_BLOCK) return false;
+			for (int w = 0; w < BLOCK_WORDS; w++) block[w] &= ~words[w];
+		}
+		return true;
+	}
+
+	private int[] samplesOf(GATKCode mask){
+		if (mask.length() != numSamples)
+			throw new IllegalArgumentException("Expected a mask of " + numSamples + " samples but found " + mask.length());
+		int[] samples = new int[mask.bitCount()];
+		int count = 0;
+		for (int s = 0; s < numSamples; s++){
+			if ((mask.getWord(s >>> 6) & GATKCode.bitMask(s)) != 0) samples[count++] = s;
+		}
+		return samples;
+	}
+}
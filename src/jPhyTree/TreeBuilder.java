@@ -75,10 +75,12 @@ public class TreeBuilder {
 		 * Looks like it works for now. Can go back later.
 		 * 
 		 */
-		if (args.length == 0) {
-			System.out.println("Must pass input matrix!");
+		//A lone positional argument is the matrix file, as -m gives it
+		if (args.length > 1 || (args.length == 1 && cmdLineArgs.hasOption("m"))) {
+			System.out.println("Usage: TreeBuilder [-a] [-r regions] [-m matrix | matrix]");
 			System.exit(1);
 		}
+		String matrixFile = cmdLineArgs.getOptionValue("m", args.length == 1 ? args[0] : null);
 		//String testName = "patient6";
 		String testName = "3_11";
 		String fileName = "testCases/simulation_vcfs/tree_" + testName + ".raw.vcf";
@@ -88,12 +90,15 @@ public class TreeBuilder {
 		 */
 		long start = System.nanoTime();
 		VCFDatabase vcfDB = new VCFDatabase(fileName);
+		if (cmdLineArgs.hasOption("r")) vcfDB = vcfDB.restrictTo(Region.parseAll(cmdLineArgs.getOptionValue("r")));
 		/**
 		 * Taken out for time testing
 		 */
-		vcfDB.generateMatrix("output.txt");
+//		vcfDB.generateMatrix("output.txt");
 //		vcfDB.generateGATKFile(testName + ".GATK-output.txt");
-		ArrayList<ArrayList<Integer>> matrixPrime = TreeChecker.checkIfTree(args[0]);
+		//The matrix is built from vcfDB in memory unless a matrix file is given
+		TreeChecker checker = matrixFile != null ? new TreeChecker(matrixFile) : new TreeChecker(vcfDB);
+		BitMatrix matrixPrime = checker.checkIfTree();
 		if (matrixPrime != null) {
 			/**
 			 * Taken out for time testing
@@ -109,11 +114,11 @@ public class TreeBuilder {
 			 * Taken out for time testing
 			 */
 //			System.out.println("This cannot be a PhyTree!");
-			matrixPrime = TreeChecker.getMatrixPrime(args[0]);
-			ArrayList<ArrayList<Integer>> noConflictMatrixPrime = TreeChecker.getCFMatrixPrime(args[0]);
-			Set<ArrayList<Integer>> conflicts = TreeChecker.getConflicts(matrixPrime, noConflictMatrixPrime);
-			Map<String, Double> mutMap = TreeChecker.getMutMap();
-			updateMutMap(mutMap, matrixPrime.size());
+			matrixPrime = checker.getMatrixPrime();
+			BitMatrix noConflictMatrixPrime = checker.getCFMatrixPrime();
+			Set<GATKCode> conflicts = checker.getConflicts();
+			Map<String, Double> mutMap = checker.getMutMap();
+			updateMutMap(mutMap, matrixPrime.getNumRows());
 			/*
 			 * while tree not satisfiable
 			 * -->mutMap update - Add in all 1's as legit code
@@ -173,6 +178,10 @@ public class TreeBuilder {
 		Options options = new Options();
 		options.addOption("a", "altInput", false, 
 				"Take in an alternate transposed matrix with rows being objects/mutations");
+		options.addOption("r", "regions", true,
+				"Only use the variants in these regions, e.g. \"chr1 chr2:1000-2000\"");
+		options.addOption("m", "matrix", true,
+				"Check this matrix file instead of the matrix of the VCF's GATK codes");
 		CommandLineParser parser = new PosixParser();
 		CommandLine cmd = null;
 		try {
@@ -185,7 +194,7 @@ public class TreeBuilder {
 	}
 	
 	/**
-	 * Function: editSNV(Set<ArrayList<Integer>> conflicts, Map<String, Double> mutMap, VCFDatabase vcfDB)
+	 * Function: editSNV(Set<GATKCode> conflicts, Map<String, Double> mutMap, VCFDatabase vcfDB)
 	 * Usage: editSNV(conflicts, mutMap, vcfDB)
 	 * ----
 	 * @param conflicts	The set of conflicting binary codes in the original music
@@ -194,7 +203,7 @@ public class TreeBuilder {
 	 * @param iterCounter Which iteration of editSNV this is
 	 * @param testName 
 	 */
-	private static void editSNV(Set<ArrayList<Integer>> conflicts,
+	private static void editSNV(Set<GATKCode> conflicts,
 			Map<String, Double> mutMap, VCFDatabase vcfDB, int iterCounter, String testName) {
 		ArrayList<String> codes = new ArrayList<String>(mutMap.keySet());
 		Collections.sort(codes);
@@ -225,16 +234,13 @@ public class TreeBuilder {
 //		}
 		//System.out.append(conflicts.toString());
 		int counter = 0;
-		for (ArrayList<Integer> conflict: conflicts){
-			String conflictStr = "";
-			for (int i = 0; i < conflict.size(); i++){
-				conflictStr += ("" + conflict.get(i));
-			}
+		for (GATKCode conflict: conflicts){
+			String conflictStr = conflict.toString();
 			if (conflictStr.equals("111001001")){
 				int i = 1;
 				i++;
 			}
-			ArrayList<VCFEntry> failCodes = null;
+			BitSet failCodes = null;
 			//System.out.println("----");
 			//System.out.println(conflictStr + ": " + mutMap.get(conflictStr));
 			//Set<String> possible = getPossibleCodes(conflictStr, 1);
@@ -242,12 +248,8 @@ public class TreeBuilder {
 			//System.out.println(possible.toString());
 			Set<String> allCodes = new HashSet<String>(mutMap.keySet());
 			//Remove all conflicts
-			for (ArrayList<Integer> currConflict: conflicts){
-				String currConflictStr = "";
-				for (int i = 0; i < currConflict.size(); i++){
-					currConflictStr += ("" + currConflict.get(i));
-				}
-				allCodes.remove(currConflictStr);
+			for (GATKCode currConflict: conflicts){
+				allCodes.remove(currConflict.toString());
 			}
 			//--
 			////allCodes.remove(conflictStr);
@@ -279,32 +281,31 @@ public class TreeBuilder {
 			}
 			ArrayList<String> conflictMatchesList = new ArrayList<String>(conflictMatches);
 			int mutConverted = 0;
-			Map<String, ArrayList<VCFEntry>> conflictToPossMutMap = new HashMap<String, ArrayList<VCFEntry>>();
+			//Tests every entry against every match in one pass; sets hold entry indices
+			ValidEntrySets entrySets = vcfDB.getValidEntrySets(conflictStr, conflictMatchesList);
+			Map<String, BitSet> conflictToPossMutMap = new HashMap<String, BitSet>();
 			for (String conflictMatch: conflictMatchesList){
-				ArrayList<VCFEntry> possMutations = new ArrayList<VCFEntry>();
-				ArrayList<VCFEntry> currFailCodes = new ArrayList<VCFEntry>();
-				//boolean is0to1 = checkIf0to1(conflictStr, conflictMatch);
-				int currMutConverted = vcfDB.getValidEntries(conflictStr, conflictMatch, EDIT_DISTANCE,
-							possMutations, currFailCodes, null);
+				BitSet possMutations = entrySets.getValid(conflictMatch);
+				BitSet currFailCodes = entrySets.getFailed(conflictMatch);
 				//System.out.println("For code " + conflictStr + " and dest " + conflictMatch + " we can convert " +
-				//		currMutConverted + " and cannot convert " + currFailCodes.size() + ".");
+				//		possMutations.cardinality() + " and cannot convert " + currFailCodes.cardinality() + ".");
 				conflictToPossMutMap.put(conflictMatch, possMutations);
-				if (failCodes == null && !currFailCodes.isEmpty()) failCodes = new ArrayList<VCFEntry>(currFailCodes);
-				else if (!currFailCodes.isEmpty()) failCodes.retainAll(currFailCodes);
+				if (failCodes == null && !currFailCodes.isEmpty()) failCodes = currFailCodes;
+				else if (!currFailCodes.isEmpty()) failCodes.and(currFailCodes);
 				//mutMap.put(conflictMatch, mutMap.get(conflictMatch) + currMutConverted);
 				//mutConverted += currMutConverted;
 				//System.out.println("Intermediate Mutation Map");
 				//System.out.println(mutMap.toString());
 			}
-			ArrayList<VCFEntry> movedEntries = new ArrayList<VCFEntry>();
+			BitSet movedEntries = new BitSet(entrySets.size());
 			for (int i = 0; i < conflictMatchesList.size(); i++){
 				String conflictMatch = findLargestUncoveredSet(conflictToPossMutMap, movedEntries);
 				if (conflictMatch == null) break;
-				ArrayList<VCFEntry> matchEntries = conflictToPossMutMap.get(conflictMatch);
-				matchEntries.removeAll(movedEntries);
-				int numMoved = matchEntries.size();
-				for (int j = 0; j < matchEntries.size(); j++){
-					VCFEntry entry = matchEntries.get(j);
+				BitSet matchEntries = conflictToPossMutMap.get(conflictMatch);
+				matchEntries.andNot(movedEntries);
+				int numMoved = matchEntries.cardinality();
+				for (int j = matchEntries.nextSetBit(0); j >= 0; j = matchEntries.nextSetBit(j + 1)){
+					VCFEntry entry = entrySets.getEntry(j);
 					/**
 					 * Taken out for time testing
 					 */
@@ -315,7 +316,7 @@ public class TreeBuilder {
 				//System.out.println("We converted " + numMoved + " entries with GATK code [" + conflictStr + "]" + 
 				//		" to GATK code [" + conflictMatch + "].");
 				conflictToPossMutMap.remove(conflictMatch);
-				movedEntries.addAll(matchEntries);
+				movedEntries.or(matchEntries);
 			}
 			//System.out.println("Total Converted: " + mutConverted);
 			/*
@@ -324,9 +325,9 @@ public class TreeBuilder {
 			 * 3. 
 			 */
 			if (failCodes != null){
-				failCodes.removeAll(movedEntries);
-				for (int j = 0; j < failCodes.size(); j++){
-					VCFEntry entry = failCodes.get(j);
+				failCodes.andNot(movedEntries);
+				for (int j = failCodes.nextSetBit(0); j >= 0; j = failCodes.nextSetBit(j + 1)){
+					VCFEntry entry = entrySets.getEntry(j);
 					//pw.write("FAILED\n");
 					/**
 					 * Taken out for time testing
@@ -385,7 +386,7 @@ public class TreeBuilder {
 	}
 
 	/**
-	 * Function: findLargestUncovered(Map<String, ArrayList<VCFEntry>> conflictToPossMutMap, ArrayList<VCFEntry> movedEntries)
+	 * Function: findLargestUncovered(Map<String, BitSet> conflictToPossMutMap, BitSet movedEntries)
 	 * Usage: String largestConflict = findLargestUncoveredSet(conflictToPossMutMap, movedEntries)
 	 * ----
 	 * This algorithm finds the set with the most "uncovered" objects (or entries) in this case.
@@ -396,17 +397,18 @@ public class TreeBuilder {
 	 * @return	The binary code where the maximal number of entries can be moved
 	 */
 	private static String findLargestUncoveredSet(
-			Map<String, ArrayList<VCFEntry>> conflictToPossMutMap,
-			ArrayList<VCFEntry> movedEntries) {
+			Map<String, BitSet> conflictToPossMutMap,
+			BitSet movedEntries) {
 		String bestMatch = null;
 		int maxEntries = 0;
 		ArrayList<String> conflictMatchesList = new ArrayList<String>(conflictToPossMutMap.keySet());
 		for (String conflictMatch: conflictMatchesList){
-			ArrayList<VCFEntry> matchEntries = conflictToPossMutMap.get(conflictMatch);
-			matchEntries.removeAll(movedEntries);
-			if (matchEntries.size() > maxEntries) {
+			BitSet matchEntries = conflictToPossMutMap.get(conflictMatch);
+			matchEntries.andNot(movedEntries);
+			int numEntries = matchEntries.cardinality();
+			if (numEntries > maxEntries) {
 				bestMatch = conflictMatch;
-				maxEntries = matchEntries.size();
+				maxEntries = numEntries;
 			}
 		}
 		return bestMatch;
@@ -475,11 +477,11 @@ public class TreeBuilder {
 	 * @param matrixPrime	M'
 	 * @param lColFuncMap	The LColFuncMap made from getLColFuncMap
 	 */
-	private void buildTree(ArrayList<ArrayList<Integer>> matrixPrime, 
+	private void buildTree(BitMatrix matrixPrime, 
 			HashMap<Integer, Integer> lColFuncMap) {
 		DirectedGraph<Integer, Integer> g = new DirectedSparseGraph<Integer, Integer>();
-		int numRows = matrixPrime.size();
-		int numCols = matrixPrime.get(0).size();
+		int numRows = matrixPrime.getNumRows();
+		int numCols = matrixPrime.getNumCols();
 		//Add root
 		g.addVertex((Integer) 0);
 		for (int i = 0; i < numCols; i++){
@@ -492,13 +494,7 @@ public class TreeBuilder {
 			}
 		}
 		for (int i = 0; i < numRows; i++){
-			int maxIndex = 0;
-			for (int j = numCols - 1; j >= 0; j--){
-				if (matrixPrime.get(i).get(j) == 1){
-					maxIndex = j + 1;
-					break;
-				}
-			}
+			int maxIndex = matrixPrime.previousOne(i, numCols - 1) + 1;
 			Integer currParent = g.getDest(maxIndex);
 			if (maxIndex == 0) currParent = 0;
 			g.addVertex(-1 * (i + 1));
@@ -653,25 +649,16 @@ public class TreeBuilder {
 	 * @return				A HashMap of column indices to its respective greatest L-value
 	 */
 	public HashMap<Integer, Integer> getLColFuncMap(
-			ArrayList<ArrayList<Integer>> matrixPrime) {
+			BitMatrix matrixPrime) {
 		HashMap<Integer, Integer> colFuncMap = new HashMap<Integer, Integer>();
-		ArrayList<ArrayList<Integer>> matCopy = new ArrayList<ArrayList<Integer>>();
-		int numRows = matrixPrime.size();
-		int numCols = matrixPrime.get(0).size();
-		for (int i = 0; i < numRows; i++){
-			int counter = 0;
-			matCopy.add(new ArrayList<Integer>());
-			for (int j = 0; j < numCols; j++){
-				if (matrixPrime.get(i).get(j) != 0){
-					matCopy.get(i).add(counter);
-					counter = j + 1;
-				} else matCopy.get(i).add(0);
-			}
-		}
+		int numRows = matrixPrime.getNumRows();
+		int numCols = matrixPrime.getNumCols();
 		for (int j = 0; j < numCols; j++){
 			int colValue = 0;
 			for (int i = 0; i < numRows; i++){
-				int cellValue = matCopy.get(i).get(j);
+				if (!matrixPrime.get(i, j)) continue;
+				//L(i, j): one past the last column before j with a 1 in row i
+				int cellValue = matrixPrime.previousOne(i, j - 1) + 1;
 				if (cellValue != 0){
 					colValue = cellValue;
 					break;
@@ -3,29 +3,84 @@ package jPhyTree;
 import java.io.*;
 import java.lang.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import edu.uci.ics.jung.graph.util.*;
 
 /**
  * Class: TreeChecker
- * Constructor: None
+ * Constructor: TreeChecker(String matrixFile)
+ *              TreeChecker(VCFDatabase db)
+ *              TreeChecker(GATKTable table)
  * Last Edited: September 13, 2012
  * ----
  * This class embodies the majority of the algorithmic work in regards to building
  * the tree.
  *
+ * Each TreeChecker is a session over one input matrix: it reads the matrix
+ * and its mutation counts once, when it is made, and never changes them
+ * afterwards. Sessions share no state, so several patients may be checked
+ * at once, and a single session may be used from several threads. M' and
+ * the conflict-free M' are worked out the first time they are needed and
+ * kept, so checkIfTree, getCFMatrixPrime and getConflicts share them.
  */
 public class TreeChecker {
 
 	private static final double THRESHOLD_PVALUE = VCFConstants.THRESHOLD_PVALUE;
+	/* Groups of codes this small are insertion sorted by radixSortDecreasing */
+	private static final int INSERTION_SORT_SIZE = 32;
+	/* A bucket that radixSortDecreasing has passed over this many times in a row without splitting is sorted by Arrays.sort */
+	private static final int MAX_UNSPLIT_PASSES = 4;
 	
 	/* Private Instance Variables */
-	private static int numRows;
-	private static int numCols;
-	private static Map<Integer, Double> rowToMutRateMap;
-	private static Map<String, Double> codeToMutRateMap;	
-	private static Set<Integer> minCover;
-	private static Double min;
+	private int numRows;
+	private int numCols;
+	private final Map<Integer, Double> rowToMutRateMap = new HashMap<Integer, Double>();
+	private final Map<String, Double> codeToMutRateMap = new HashMap<String, Double>();
+	/* The input matrix, a row per sample and a column per line of the input */
+	private final BitMatrix matrix;
+	/* M' and the conflict-free M'; built on first use */
+	private volatile BitMatrix matrixPrime;
+	private volatile BitMatrix CFMatrixPrime;
+	
+	/**
+	 * Function: TreeChecker(String matrixFile)
+	 * Usage: TreeChecker checker = new TreeChecker(matrixFile)
+	 * ----
+	 * Reads the matrix file and the number of mutations of each code.
+	 * 
+	 * @param matrixFile	A file consisting of 0s and 1s which define the input matrix
+	 */
+	public TreeChecker(String matrixFile) {
+		matrix = processMatrixFile(matrixFile);
+	}
+	
+	/**
+	 * Function: TreeChecker(VCFDatabase db)
+	 * Usage: TreeChecker checker = new TreeChecker(db)
+	 * ----
+	 * Builds the matrix of the database's GATK codes in memory, exactly
+	 * as if it had been written out by db.generateMatrix and read back.
+	 * 
+	 * @param db	The VCFDatabase of a patient
+	 */
+	public TreeChecker(VCFDatabase db) {
+		matrix = processCounts(db.countCodes(), db.getCodeLength());
+	}
+	
+	/**
+	 * Function: TreeChecker(GATKTable table)
+	 * Usage: TreeChecker checker = new TreeChecker(table)
+	 * ----
+	 * Builds the matrix the table's codes make, exactly as if it had been
+	 * written out by the table and read back.
+	 * 
+	 * @param table	A GATK table
+	 */
+	public TreeChecker(GATKTable table) {
+		matrix = processCounts(table.countCodes(), table.getNumSamples());
+	}
 	
 	/*===============================================================
 	 * Public Methods
@@ -47,8 +102,11 @@ public class TreeChecker {
 			 */
 //			System.out.println("Must pass in an input matrix file!");
 		}
+		else if (args.length > 1) {
+			ArrayList<BitMatrix> matrixPrimes = checkIfTrees(Arrays.asList(args), Runtime.getRuntime().availableProcessors());
+		}
 		else {
-			ArrayList<ArrayList<Integer>> matrixPrime = checkIfTree(args[0]);
+			BitMatrix matrixPrime = checkIfTree(args[0]);
 			/**
 			 * Taken out for time testing
 			 */
@@ -59,34 +117,51 @@ public class TreeChecker {
 
 	/**
 	 * Function: checkIfTree(String matrixFile)
-	 * Usage: ArrayList<ArrayList<Integer>> matrixPrime = TreeChecker.checkIfTree(matrixFile)
+	 * Usage: BitMatrix matrixPrime = TreeChecker.checkIfTree(matrixFile)
 	 * ----
 	 * This method checks if the given matrix file can be turned into
 	 * a phylogenetic tree.
 	 * 
-	 * This method utilizes several static methods of the class to
-	 * generate a new tree. It creates an instance of the class
-	 * and refers to it for all operations. Matrices are stored
-	 * as 2D ArrayLists of Integer objects.
+	 * This method creates a session for the file and checks it.
+	 * Matrices are stored as BitMatrices, a row per sample and a
+	 * column per code.
 	 * 
 	 * @param	matrixFile	A file consisting of 0s and 1s which define the input matrix
-	 * @return 				true if file can be made into a matrix, false otherwise 
-	 */
-	public static ArrayList<ArrayList<Integer>> checkIfTree(String matrixFile) {
-		TreeChecker treeCheckInstance = new TreeChecker();
-		ArrayList<ArrayList<Integer>> matrix = treeCheckInstance.processMatrixFile(matrixFile);
-		//Can probably just put the static method inside one another
-		ArrayList<ArrayList<Integer>> transMatrix = transposeMatrix(matrix);
-		ArrayList<Integer> binaryCodeList = generateBinaryCodeList(transMatrix);
-		HashMap<Integer, ArrayList<Integer>> codeToColumnHash = treeCheckInstance.getHashFromTransMatrix(transMatrix);
-		ArrayList<ArrayList<Integer>> matrixPrime = treeCheckInstance.generateMatrixPrime(binaryCodeList, codeToColumnHash, transMatrix);
+	 * @return 				M' if the file can be made into a tree, null otherwise 
+	 */
+	public static BitMatrix checkIfTree(String matrixFile) {
+		return new TreeChecker(matrixFile).checkIfTree();
+	}
+	
+	/**
+	 * Function: checkIfTree(GATKTable table)
+	 * Usage: BitMatrix matrixPrime = TreeChecker.checkIfTree(table)
+	 * ----
+	 * As checkIfTree(matrixFile), for the matrix the table's codes make,
+	 * built in memory instead of being written out and read back.
+	 * 
+	 * @param table	A GATK table
+	 * @return	M' if the table can be made into a tree, null otherwise
+	 */
+	public static BitMatrix checkIfTree(GATKTable table) {
+		return new TreeChecker(table).checkIfTree();
+	}
+	
+	/**
+	 * Function: checkIfTree()
+	 * Usage: BitMatrix matrixPrime = checker.checkIfTree()
+	 * ----
+	 * Checks if this session's matrix can be turned into a phylogenetic tree.
+	 * 
+	 * @return	M' if the matrix can be made into a tree, null otherwise
+	 */
+	public BitMatrix checkIfTree() {
+		BitMatrix matrixPrime = getMatrixPrime();
 		/**
 		 * Taken out for time testing
 		 */
 //		printMatrix(matrixPrime);
-		HashMap<Pair<Integer>, Integer> LFunctionMap = treeCheckInstance.generateLFunctionMap(matrixPrime);
-		HashMap<Integer, Integer> LColFuncMap = treeCheckInstance.generateLColFuncMap(LFunctionMap, matrixPrime);
-		boolean isTree = treeCheckInstance.isPhyTree(LFunctionMap, LColFuncMap);
+		boolean isTree = isPhyTree(matrixPrime);
 		//If is false, print conflicts
 		//if (!isTree) findConflicts(matrixPrime);
 		if (isTree) return matrixPrime;
@@ -94,8 +169,33 @@ public class TreeChecker {
 	}
 	
 	/**
-	 * Function: getConflicts(ArrayList<ArrayList<Integer>> matrixPrime,
-	 * 			 ArrayList<ArrayList<Integer>> noConflictMatrixPrime)
+	 * Function: checkIfTrees(List<String> matrixFiles, int numThreads)
+	 * Usage: ArrayList<BitMatrix> matrixPrimes = TreeChecker.checkIfTrees(matrixFiles, numThreads)
+	 * ----
+	 * Runs checkIfTree on each file, with a session per file, checking
+	 * up to numThreads files at once.
+	 * 
+	 * @param matrixFiles	The matrix files, one per patient
+	 * @param numThreads	The number of threads to check with; 1 checks sequentially
+	 * @return	For each file, in order, M' if it can be made into a tree, null otherwise
+	 */
+	public static ArrayList<BitMatrix> checkIfTrees(List<String> matrixFiles, int numThreads) {
+		BitMatrix[] results = new BitMatrix[matrixFiles.size()];
+		CheckTask task = new CheckTask(matrixFiles, results, 0, results.length);
+		if (numThreads <= 1) task.compute();
+		else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return new ArrayList<BitMatrix>(Arrays.asList(results));
+	}
+	
+	/**
+	 * Function: getConflicts(BitMatrix matrixPrime, BitMatrix noConflictMatrixPrime)
 	 * Usage: TreeChecker.getConflicts(matrixPrime, noConflictMatrixPrime)
 	 * ----
 	 * Takes in matrixPrime and noConflictMatrixPrime and finds the differences.
@@ -105,13 +205,11 @@ public class TreeChecker {
 	 * @param noConflictMatrixPrime matrixPrime with conflicts removed
 	 * @return A set of conflicting binary codes
 	 */
-	public static Set<ArrayList<Integer>> getConflicts(ArrayList<ArrayList<Integer>> matrixPrime, 
-			ArrayList<ArrayList<Integer>> noConflictMatrixPrime){
-		Set<ArrayList<Integer>> allCodes = new HashSet<ArrayList<Integer>>(transposeMatrix(matrixPrime));
+	public static Set<GATKCode> getConflicts(BitMatrix matrixPrime, BitMatrix noConflictMatrixPrime){
+		Set<GATKCode> allCodes = new HashSet<GATKCode>(matrixPrime.getColumns());
 		//System.out.println(allCodes.toString());
-		Set<ArrayList<Integer>> noConflictCodes = new HashSet<ArrayList<Integer>>(transposeMatrix(noConflictMatrixPrime));
-		allCodes.removeAll(noConflictCodes);
-		Set<ArrayList<Integer>> conflicts = allCodes;
+		allCodes.removeAll(noConflictMatrixPrime.getColumns());
+		Set<GATKCode> conflicts = allCodes;
 		/**
 		 * Taken out for time testing
 		 */
@@ -125,32 +223,15 @@ public class TreeChecker {
 	}
 	
 	/**
-	 * Function: findConflicts(ArrayList<ArrayList<Integer>> matrixPrime)
-	 * Usage: ArrayList<Integer> conflicts = findConflicts(matrixPrime)
+	 * Function: findConflicts(BitMatrix matrixPrime)
+	 * Usage: ArrayList<Integer> conflicts = checker.findConflicts(matrixPrime)
 	 * ----
-	 * Returns a list of columns which are in conflict
+	 * Returns a list of columns which are in conflict, weighing the
+	 * columns by this session's mutation counts
 	 * @param matrixPrime	
 	 * @return	An ArrayList of conflicting columns in matrixPrime
 	 */
-	public static ArrayList<Integer> findConflicts(ArrayList<ArrayList<Integer>> matrixPrime) {
-		ArrayList<ArrayList<Integer>> conflictMatrix = new ArrayList<ArrayList<Integer>>();
-		//Makes the conflict matrix as according to Gusfield's algorithm
-		for (int i = 0; i < matrixPrime.size(); i++){
-			conflictMatrix.add(new ArrayList<Integer>());
-			int counter = 0;
-			for (int j = 0; j < matrixPrime.get(i).size(); j++){
-				if (matrixPrime.get(i).get(j) == 1){
-					conflictMatrix.get(i).add(counter);
-					counter = j + 1;
-				} else conflictMatrix.get(i).add(-1);
-			}
-		}
-		/**
-		 * Taken out for time testing
-		 */
-//		System.out.println("ConflictMatrix:");
-//		printMatrix(conflictMatrix);
-//		System.out.println("--");
+	public ArrayList<Integer> findConflicts(BitMatrix matrixPrime) {
 		ArrayList<Integer> conflictCols = new ArrayList<Integer>();
 		/*
 		 * Vertex Cover Initialization - Creating Conflict Graph
@@ -159,12 +240,10 @@ public class TreeChecker {
 		 */
 		Set<Integer> nodes = new HashSet<Integer>();
 		Set<Pair<Integer>> edges = new HashSet<Pair<Integer>>(); 
-		ArrayList<Integer> bCodeList = generateBinaryCodeList(transposeMatrix(matrixPrime));
+		List<GATKCode> bCodeList = matrixPrime.getColumns();
 		for (int i = 0; i < numRows; i++) nodes.add(i);
-		for (int j = 0; j < conflictMatrix.get(0).size(); j++){
-//			if (colHasConflicts(conflictMatrix, j)) {
-				edges.addAll(findEdges(matrixPrime, j, bCodeList));
-//			}
+		for (int j = 0; j < matrixPrime.getNumCols(); j++){
+			edges.addAll(findEdges(matrixPrime, j));
 		}
 		/**
 		 * Taken out for time testing
@@ -177,19 +256,16 @@ public class TreeChecker {
 //			vertexCover = recVertexCover(edges, k, new HashSet<Integer>());
 //			if (vertexCover != null) break;
 //		}
-		minCover = null;
-		min = -1.00;
 		//long startTime = System.nanoTime();	
 		//System.out.println("Start: " + Long.toString(startTime));
 		//recVertexCover(edges, nodes, vertexCover);
 		//Do approximate vertex cover to find which conflicts to remove
-		minCover = approxVertexCover(edges, nodes, vertexCover);
+		Set<Integer> minCover = approxVertexCover(edges, nodes, vertexCover);
 		//long endTime = System.nanoTime();
 		//System.out.println("End: " + Long.toString(endTime));
 		//System.out.println("Took "+(endTime - startTime) + " ns for vertex cover");
 		//Add the result of approximate vertex cover
 		conflictCols.addAll(minCover);
-		//printMatrix(conflictMatrix);
 		Set<Integer> nonConflictCols = getNonConflictCols(bCodeList);
 		conflictCols.removeAll(nonConflictCols);
 		/**
@@ -203,74 +279,116 @@ public class TreeChecker {
 		return conflictCols;
 	}
 	
-	private static Set<Integer> getNonConflictCols(ArrayList<Integer> bCodeList) {
+	private static Set<Integer> getNonConflictCols(List<GATKCode> bCodeList) {
 		Set<Integer> nonConflictCols = new HashSet<Integer>();
 		for (int i = 0; i < bCodeList.size(); i++){
-			String codeStr = Integer.toBinaryString(bCodeList.get(i));
-			int counter = 0;
-			for (int j = 0; j < codeStr.length(); j++){
-				if (codeStr.charAt(j) == '1') counter++;
-			}
-			if (counter == 1) nonConflictCols.add(i);
+			if (bCodeList.get(i).bitCount() == 1) nonConflictCols.add(i);
 		}
 		return nonConflictCols;
 	}
 
 	/**
 	 * Function: getCFMatrixPrime(String matrixFile)
-	 * Usage: ArrayList<ArrayList<Integer>> CFMatrixPrime = TreeChecker.getCFMatrixPrime(matrixFile)
+	 * Usage: BitMatrix CFMatrixPrime = TreeChecker.getCFMatrixPrime(matrixFile)
 	 * ----
 	 * Takes the file with the matrix and returns matrixPrime without the conflicts.
 	 * @param matrixFile	The pathname to the text file containing the matrix
 	 * @return	matrixPrime with conflicts removed
 	 */
-	public static ArrayList<ArrayList<Integer>> getCFMatrixPrime(String matrixFile){
-		ArrayList<ArrayList<Integer>> matrixPrime = getMatrixPrime(matrixFile);
-		ArrayList<ArrayList<Integer>> matrixPrimeTrans = transposeMatrix(matrixPrime);
-		ArrayList<Integer> conflicts = findConflicts(matrixPrime);
-		Collections.sort(conflicts);
-		int counter = 0;
-		for (Integer conflict: conflicts){
-			//System.out.println("Removing code for column " + conflict.toString() + ": ");
-			ArrayList<Integer> curr = matrixPrimeTrans.get(conflict.intValue() - counter);
-			//for (int i = 0; i < curr.size(); i++) System.out.print(curr.get(i));
-			//System.out.println();
-			matrixPrimeTrans.remove(conflict.intValue() - counter);
-			counter++;
+	public static BitMatrix getCFMatrixPrime(String matrixFile){
+		return new TreeChecker(matrixFile).getCFMatrixPrime();
+	}
+	
+	/**
+	 * Function: getCFMatrixPrime(GATKTable table)
+	 * Usage: BitMatrix CFMatrixPrime = TreeChecker.getCFMatrixPrime(table)
+	 * ----
+	 * As getCFMatrixPrime(matrixFile), for the matrix the table's codes make.
+	 * @param table	A GATK table
+	 * @return	matrixPrime with conflicts removed
+	 */
+	public static BitMatrix getCFMatrixPrime(GATKTable table){
+		return new TreeChecker(table).getCFMatrixPrime();
+	}
+	
+	/**
+	 * Function: getCFMatrixPrime()
+	 * Usage: BitMatrix CFMatrixPrime = checker.getCFMatrixPrime()
+	 * ----
+	 * @return	This session's matrixPrime with conflicts removed
+	 */
+	public BitMatrix getCFMatrixPrime(){
+		BitMatrix result = CFMatrixPrime;
+		if (result == null){
+			BitMatrix matrixPrime = getMatrixPrime();
+			result = matrixPrime.withoutColumns(findConflicts(matrixPrime));
+			CFMatrixPrime = result;
 		}
-		//printMatrix(matrixPrimeTrans);
-		return transposeMatrix(matrixPrimeTrans);
+		return result;
+	}
+	
+	/**
+	 * Function: getConflicts()
+	 * Usage: Set<GATKCode> conflicts = checker.getConflicts()
+	 * ----
+	 * @return	The binary codes of M' that the conflict-free M' leaves out
+	 */
+	public Set<GATKCode> getConflicts(){
+		return getConflicts(getMatrixPrime(), getCFMatrixPrime());
 	}
 	
 	/**
 	 * Function: getMatrixPrime(String matrixFile)
-	 * Usage: ArrayList<ArrayList<Integer>> matrixPrime = TreeCheckInstance.getMatrixPrime(matrixFile)
+	 * Usage: BitMatrix matrixPrime = TreeChecker.getMatrixPrime(matrixFile)
 	 * ----
 	 * Public static method which will return M' given an input matrix
 	 * 
-	 * Makes a new instance of TreeChecker and runs through necessary steps
+	 * Makes a new session for the file and runs through necessary steps
 	 * to get M'.
 	 * 
 	 * @param matrixFile	Input matrix file
 	 * @return				matrixPrime (M')
 	 */
-	public static ArrayList<ArrayList<Integer>> getMatrixPrime(String matrixFile){
-		TreeChecker treeCheckInstance = new TreeChecker();
-		ArrayList<ArrayList<Integer>> matrix = treeCheckInstance.processMatrixFile(matrixFile);
-		ArrayList<ArrayList<Integer>> transMatrix = treeCheckInstance.transposeMatrix(matrix);
-		ArrayList<Integer> binaryCodeList = treeCheckInstance.generateBinaryCodeList(transMatrix);
-		HashMap<Integer, ArrayList<Integer>> codeToColumnHash = treeCheckInstance.getHashFromTransMatrix(transMatrix);
-		return treeCheckInstance.generateMatrixPrime(binaryCodeList, codeToColumnHash, transMatrix);
+	public static BitMatrix getMatrixPrime(String matrixFile){
+		return new TreeChecker(matrixFile).getMatrixPrime();
+	}
+	
+	/**
+	 * Function: getMatrixPrime(GATKTable table)
+	 * Usage: BitMatrix matrixPrime = TreeChecker.getMatrixPrime(table)
+	 * ----
+	 * As getMatrixPrime(matrixFile), for the matrix the table's codes make.
+	 * 
+	 * @param table	A GATK table
+	 * @return	matrixPrime (M')
+	 */
+	public static BitMatrix getMatrixPrime(GATKTable table){
+		return new TreeChecker(table).getMatrixPrime();
+	}
+	
+	/**
+	 * Function: getMatrixPrime()
+	 * Usage: BitMatrix matrixPrime = checker.getMatrixPrime()
+	 * ----
+	 * @return	M' of this session's matrix
+	 */
+	public BitMatrix getMatrixPrime(){
+		BitMatrix result = matrixPrime;
+		if (result == null){
+			result = generateMatrixPrime(matrix);
+			matrixPrime = result;
+		}
+		return result;
 	}
 	
 	/**
 	 * Function: getMutMap()
-	 * Usage: Map<String, Double> mutMap = TreeChecker.getMutMap()
+	 * Usage: Map<String, Double> mutMap = checker.getMutMap()
 	 * ----
 	 * Returns a map of codes to number of mutations for the code.
-	 * @return	A map of GATK strings to number of mutations for that code.
+	 * @return	A new map of GATK strings to number of mutations for that code.
 	 */
-	public static Map<String, Double> getMutMap(){
+	public Map<String, Double> getMutMap(){
 		return new HashMap<String, Double>(codeToMutRateMap);
 	}
 	
@@ -282,12 +400,12 @@ public class TreeChecker {
 	 * the number of binary codes in the map.
 	 * @return Number of edges in the matrix
 	 */
-	private static int getNumTotalEdges(){
+	private int getNumTotalEdges(){
 		//return getMutMap().keySet().size();
 		return numCols+1;
 	}
 	
-	private static double getTotalMutations(){
+	private double getTotalMutations(){
 		Map<String, Double> mutMap = getMutMap();
 		double counter = 0.0;
 		for (Double value: mutMap.values()){
@@ -315,7 +433,7 @@ public class TreeChecker {
 	 * @param currCover	The set of nodes which make the vertex cover
 	 * @return	The vertex cover
 	 */
-	private static Set<Integer> approxVertexCover(Set<Pair<Integer>> edges, Set<Integer> nodes, Set<Integer> currCover){
+	private Set<Integer> approxVertexCover(Set<Pair<Integer>> edges, Set<Integer> nodes, Set<Integer> currCover){
 		/*
 		 * 1. Sort mutation groups by size.
 		 * 2. Find largest mutation (that hasn't been removed).
@@ -486,25 +604,23 @@ public class TreeChecker {
 
 	
 	/**
-	 * Function: findEdges(ArrayList<ArrayList<Integer>> matrixPrime, int j, ArrayList<Integer> bCodeList)
-	 * Usage: ArrayList<Pair<Integer>> edges = findEdges(matrixPrime, j, bCodeList)
+	 * Function: findEdges(BitMatrix matrixPrime, int j)
+	 * Usage: ArrayList<Pair<Integer>> edges = findEdges(matrixPrime, j)
 	 * ----
 	 * Given a specific column, checks all previous columns in matrixPrime to see if the pair conflict.
 	 * Returns a list of all edges which conflict with the given column.
 	 *
 	 * @param matrixPrime
 	 * @param j	The current column to check for conflicts
-	 * @param bCodeList	The list of binary codes from matrixPrime
 	 * @return	A list of conflict edges
 	 */
-	private static ArrayList<Pair<Integer>> findEdges(
-			ArrayList<ArrayList<Integer>> matrixPrime, int j, ArrayList<Integer> bCodeList) {
+	private static ArrayList<Pair<Integer>> findEdges(BitMatrix matrixPrime, int j) {
 		ArrayList<Pair<Integer>> newEdges = new ArrayList<Pair<Integer>>();
-		int bCode1 = bCodeList.get(j);
+		GATKCode bCode1 = matrixPrime.getColumn(j);
 		for (int i = 0; i < j; i++){
-			int bCode2 = bCodeList.get(i);
+			GATKCode bCode2 = matrixPrime.getColumn(i);
 			//if not subsets or disjoint, conflict
-			if ((bCode1 | bCode2) != bCode2 && (bCode1 & bCode2) != 0){
+			if (!bCode1.isSubsetOf(bCode2) && bCode1.intersects(bCode2)){
 				newEdges.add(new Pair<Integer>(i, j));
 			}
 		}
@@ -512,30 +628,7 @@ public class TreeChecker {
 	}
 
 	/**
-	 * Function: colHasConflicts(ArrayList<ArrayList<Integer>> conflictMatrix, int j)
-	 * Usage: boolean hasConflict = colHasConflicts(conflictMatrix, int j)
-	 * ----
-	 * Given the conflictMatrix and a column, checks whether the column has any conflicts.
-	 * 
-	 * @param conflictMatrix	A matrix which is marked with any present conflicts
-	 * @param j					The column being checked for conflicts
-	 * @return					True if the column does have conflicts; else, false
-	 */
-	private static boolean colHasConflicts(ArrayList<ArrayList<Integer>> conflictMatrix, int j) {
-		int colValue = -1;
-		for (int i = 0; i < conflictMatrix.size(); i++){
-			int currValue = conflictMatrix.get(i).get(j);
-			if (currValue != -1 && colValue == -1){
-				colValue = currValue;
-			} else if (currValue != -1 && colValue != -1){
-				if (colValue != currValue) return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Function: printMatrix(ArrayList<ArrayList<Integer>> matrix)
+	 * Function: printMatrix(BitMatrix matrix)
 	 * Usage: printMatrix(matrix)
 	 * ----
 	 * Static method for the class that prints out a matrix
@@ -544,129 +637,60 @@ public class TreeChecker {
 	 * 
 	 * @param matrix	The 2D matrix which is to be printed
 	 */
-	public static void printMatrix(ArrayList<ArrayList<Integer>> matrix){
-		for (int i = 0; i < matrix.size(); i++){
+	public static void printMatrix(BitMatrix matrix){
+		for (int i = 0; i < matrix.getNumRows(); i++){
 			char index = (char) ('A' + i);
 			System.out.print(index);
 			System.out.print(":\t "); 
-			for (int j = 0; j < matrix.get(i).size(); j++){
-				System.out.print(matrix.get(i).get(j));
-				if (j != matrix.get(i).size() - 1) System.out.print("\t|");
+			for (int j = 0; j < matrix.getNumCols(); j++){
+				System.out.print(matrix.get(i, j) ? 1 : 0);
+				if (j != matrix.getNumCols() - 1) System.out.print("\t|");
 				else System.out.println();
 			}
 		}
 	}
 	
-	/**
-	 * Class: decreasingOrderComparator
-	 * Purpose: Normal comparisons are done in ascending order. To achieve
-	 * descending order, made this short comparator.
-	 */
-	public class decreasingOrderComparator implements Comparator<Integer>{
-		public int compare(Integer int1, Integer int2){
-			if (int1 > int2) return -1;
-			else if (int1 < int2) return 1;
-			else return 0;
-		}
-	}
-		
 	/*================================================================
 	 * Private Methods
 	 */
 	
 	/**
-	 * Uses the LFunctionMap and LColFuncMap to determine if a matrix can be built
+	 * Function: isPhyTree(BitMatrix matrixPrime)
+	 * Usage: boolean isTree = isPhyTree(matrixPrime)
+	 * ----
+	 * Gusfield's test for whether M' can be a PhyTree. The L function
+	 * takes an (i, j) coordinate-pair of M' with M'(i, j) == 1 to one
+	 * more than the largest index k < j such that M'(i, k) == 1, or 0
+	 * if there is no such index. M' can be a PhyTree exactly when, for
+	 * every column, L(i, j) is the same for all rows i with a 1 there.
 	 * 
-	 * Returns a boolean
+	 * Each row is walked once, a word at a time, holding the L value
+	 * first seen for each column in an array; the walk stops at the
+	 * first cell that disagrees. This takes O(nm) time.
 	 * 
-	 * @param lFunctionMap	HashMap created by generateLFunctionMap
-	 * @param lColFuncMap	Hashmap created by generateLColFuncMap
+	 * @param matrixPrime	M'
 	 * @return				true if input matrix can be a PhyTree; else, false
 	 */
-	private boolean isPhyTree(
-			HashMap<Pair<Integer>, Integer> lFunctionMap,
-			HashMap<Integer, Integer> lColFuncMap) {
-		for (Pair<Integer> key : lFunctionMap.keySet()){
-			int j = key.getSecond();
-			if (lFunctionMap.get(key) != lColFuncMap.get(j)) return false;
-		}
-		return true;
-	}
-
-	/**
-	 * Takes in the LFunction HashMap and M' and returns the L function for columns.
-	 * 
-	 * The L Function for column j returns the largest L(i, j) such that M'(i, j) == 1.
-	 * 
-	 * @param lFunctionMap	The HashMap created by generateLFunctionMap
-	 * @param matrixPrime	M'
-	 * @return				A HashMap of M' columns to respective L(j) value
-	 */
-	private HashMap<Integer, Integer> generateLColFuncMap(
-			HashMap<Pair<Integer>, Integer> lFunctionMap,
-			ArrayList<ArrayList<Integer>> matrixPrime) {
-		int numRows = matrixPrime.size();
-		int numCols = matrixPrime.get(0).size();
-		HashMap<Integer, Integer> colFuncMap = new HashMap<Integer, Integer>();
-		for (int j = 0; j < numCols; j++){
-			int currLValue = 0;
-			for (int i = 0; i < numRows; i++){
-				Pair<Integer> currPair = new Pair<Integer>(i, j);
-				if (lFunctionMap.containsKey(currPair)){
-					Integer lValue = lFunctionMap.get(currPair);
-					if (lValue.intValue() > currLValue) currLValue = lValue.intValue();
+	static boolean isPhyTree(BitMatrix matrixPrime) {
+		int[] colFunc = new int[matrixPrime.getNumCols()];
+		Arrays.fill(colFunc, -1);
+		for (int i = 0; i < matrixPrime.getNumRows(); i++){
+			GATKCode row = matrixPrime.getRow(i);
+			int lValue = 0;
+			for (int w = 0; w < row.numWords(); w++){
+				long word = row.getWord(w);
+				while (word != 0){
+					int j = (w << 6) + Long.numberOfLeadingZeros(word);
+					if (colFunc[j] < 0) colFunc[j] = lValue;
+					else if (colFunc[j] != lValue) return false;
+					lValue = j + 1;
+					word &= ~(Long.MIN_VALUE >>> (j & 63));
 				}
 			}
-			colFuncMap.put(j, currLValue);
 		}
-		return colFuncMap;
-	}
-
-	/**
-	 * Returns a HashMap which simulates the L function in Gusfield's paper
-	 * 
-	 * The L function takes an (i,j) coordinate-pair from M' and maps it to
-	 * the largest index k < j such that M'(i, k) == 1. If there is no such
-	 * index, L(i,j) is set to 0.
-	 * 
-	 * @param matrixPrime	M'
-	 * @return				A HashMap that takes coordinates i and j and returns L(i, j)
-	 */
-	private HashMap<Pair<Integer>, Integer> generateLFunctionMap(
-			ArrayList<ArrayList<Integer>> matrixPrime) {
-		HashMap<Pair<Integer>, Integer> funcMap = new HashMap<Pair<Integer>, Integer>();
-		int numRows = matrixPrime.size();
-		int numCols = matrixPrime.get(0).size();
-		for (int j = 0; j < numCols; j++){
-			for (int i = 0; i < numRows; i++){
-				if (matrixPrime.get(i).get(j) == 1){
-					Pair<Integer> newPair = new Pair<Integer>(i, j);
-					funcMap.put(newPair, getFuncValue(matrixPrime, i, j));
-				} 
-			}
-		}
-		return funcMap;
+		return true;
 	}
 
-	/**
-	 * Function: getFuncValue(ArrayList<ArrayList<Integer>> matrixPrime, int i, int j)
-	 * Usage: int value = getFuncValue(matrixPrime, i, j)
-	 * ----
-	 * Finds the value of the L-Function for this (i,j) coordinate in matrixPrime
-	 * 
-	 * @param matrixPrime
-	 * @param i	The row
-	 * @param j	The col
-	 * @return	L(i,j)
-	 */
-	private int getFuncValue(ArrayList<ArrayList<Integer>> matrixPrime, int i, int j) {
-		if (j == 0) return 0;
-		for (int currCol = j-1; currCol >= 0; currCol--){
-			if (matrixPrime.get(i).get(currCol) == 1) return currCol + 1;
-		}
-		return 0;
-	}
-	
 	/**
 	 * Returns M' from Gusfield 1991 Paper - 
 	 * "Efficient Algorithms for Inferring Evolutionary Trees"
@@ -674,153 +698,138 @@ public class TreeChecker {
 	 * M' (or MatrixPrime) is a transformed matrix from the original input version
 	 * M' has all of its columns sorted in decreasing order by the column's binary 
 	 * code. Repeated columns (which would appear right beside each other) have been
-	 * deleted. If one wishes to see which codes correspond with which column, use
-	 * the code-To-Col HashMap.
+	 * deleted. Each column of a BitMatrix is already its binary code, so the codes
+	 * are radix sorted and deduplicated directly.
 	 * 
-	 * @param binaryCodeList	The list of binary codes corresponding to the column values
-	 * @param codeToColumnHash	The hash of each code to its respective column values
-	 * @param tMat				The transposed matrix
-	 * @return					M' - a 2D ArrayList of Integers
-	 */
-	private ArrayList<ArrayList<Integer>> generateMatrixPrime(
-			ArrayList<Integer> binaryCodeList,
-			HashMap<Integer, ArrayList<Integer>> codeToColumnHash, ArrayList<ArrayList<Integer>> tMat) {
-		Comparator<Integer> decreaseOrderComp = new decreasingOrderComparator();
-		Set<Integer> tempSet = new TreeSet<Integer>(decreaseOrderComp);
-		tempSet.addAll(binaryCodeList);
-		ArrayList<Integer> sortedCodes = new ArrayList<Integer>(tempSet);
-		return generateMatrixFromSortedCodes(sortedCodes, codeToColumnHash, tMat);
-	}
-
-	/**
-	 * Function: generateMatrixFromSortedCodes(ArrayList<Integer> sortedCodes, HashMap<Integer, ArrayList<Integer>> codeToColumnHash, ArrayList<ArrayLIst<Integer>> tMat)
-	 * Usage: ArrayList<ArrayList<Integer>> matrixPrime = generateMatrixFromSortedCodes(sortedCodes, codeToColumnHash, tMat)
-	 * ----
-	 * Given the sorted binary codes, a map of which column they line up to, and the transposed matrix,
-	 * returns matrixPrime.
-	 * @param sortedCodes	The binary codes sorted in a list.
-	 * @param codeToColumnHash	A map of binary codes to their respective columns
-	 * @param tMat	The input matrix transposed
-	 * @return	matrixPrime
-	 */
-	private ArrayList<ArrayList<Integer>> generateMatrixFromSortedCodes(
-			ArrayList<Integer> sortedCodes,
-			HashMap<Integer, ArrayList<Integer>> codeToColumnHash,
-			ArrayList<ArrayList<Integer>> tMat) {
-		ArrayList<ArrayList<Integer>> matP = new ArrayList<ArrayList<Integer>>();
-		for (int i = 0; i < sortedCodes.size(); i++){
-			ArrayList<Integer> cols = codeToColumnHash.get(sortedCodes.get(i));
-			matP.add(tMat.get(cols.get(0)));
+	 * @param matrix	The input matrix, a row per sample
+	 * @return			M'
+	 */
+	static BitMatrix generateMatrixPrime(BitMatrix matrix) {
+		GATKCode[] sorted = radixSortDecreasing(matrix.getColumns().toArray(new GATKCode[matrix.getNumCols()]), matrix.getNumRows());
+		ArrayList<GATKCode> distinct = new ArrayList<GATKCode>(sorted.length);
+		for (int j = 0; j < sorted.length; j++){
+			if (j == 0 || !sorted[j].equals(sorted[j - 1])) distinct.add(sorted[j]);
 		}
-		return transposeMatrix(matP);
+		return BitMatrix.fromColumns(matrix.getNumRows(), distinct);
 	}
-
+	
 	/**
-	 * Returns a hash of binary codes to a list of their respective column numbers.
+	 * Function: radixSortDecreasing(GATKCode[] codes, int length)
+	 * Usage: GATKCode[] sorted = radixSortDecreasing(codes, length)
+	 * ----
+	 * Sorts codes of the same length in decreasing order of their binary
+	 * value. Among codes that agree up to some sample, the one whose
+	 * next 1 comes first is the largest, so the codes are bucketed by
+	 * the position of their first 1, each bucket by the position of the
+	 * next 1 after it, and so on, until a bucket is small enough to
+	 * insertion sort. Runs of 0s are skipped a word at a time, so each
+	 * code costs at most its words plus its 1s: O(nm) in all. Buckets
+	 * can nest as deep as the codes are long, as when each code extends
+	 * the last by one sample, so the buckets still to be sorted are kept
+	 * on a stack of their own rather than the call stack. A pass that
+	 * leaves a bucket with more than 7/8 of its codes has barely split
+	 * it, and after MAX_UNSPLIT_PASSES such passes in a row the bucket
+	 * is sorted by Arrays.sort instead.
 	 * 
-	 * @param tMat	The transposed matrix
-	 * @return		A HashMap of integers to an ArrayList of integers
-	 */
-//Might want to make this a public static method to see column repeats in other classes
-	private HashMap<Integer, ArrayList<Integer>> getHashFromTransMatrix(
-			ArrayList<ArrayList<Integer>> tMat){
-		HashMap<Integer, ArrayList<Integer>> codeToColHash = 
-			new HashMap<Integer, ArrayList<Integer>>();
-		ArrayList<Integer> binaryCodeList = generateBinaryCodeList(tMat);
-		for (int i = 0; i < binaryCodeList.size(); i++){
-			if (codeToColHash.containsKey(binaryCodeList.get(i))){
-				ArrayList<Integer> currCols = codeToColHash.get(binaryCodeList.get(i));
-				currCols.add(i);
-				codeToColHash.put(binaryCodeList.get(i), currCols);
-			} else {
-				ArrayList<Integer> newColsList = new ArrayList<Integer>();
-				newColsList.add(i);
-				codeToColHash.put(binaryCodeList.get(i), newColsList);
+	 * @param codes	The codes, which are left as they are
+	 * @param length	The length of every code
+	 * @return	A new array of the codes, largest first
+	 */
+	private static GATKCode[] radixSortDecreasing(GATKCode[] codes, int length){
+		GATKCode[] sorted = codes.clone();
+		GATKCode[] buffer = new GATKCode[sorted.length];
+		int[] keys = new int[sorted.length];
+		//(from, to, start, unsplit passes) of each bucket still to sort; the buckets are disjoint and hold two or more codes
+		int[] stack = new int[4 * (sorted.length / 2 + 1)];
+		int top = 0;
+		if (sorted.length > 1){
+			stack[top++] = 0;
+			stack[top++] = sorted.length;
+			stack[top++] = 0;
+			stack[top++] = 0;
+		}
+		while (top > 0){
+			int unsplit = stack[--top];
+			int start = stack[--top];
+			int to = stack[--top];
+			int from = stack[--top];
+			if (to - from <= INSERTION_SORT_SIZE){
+				insertionSortDecreasing(sorted, from, to);
+				continue;
+			}
+			if (unsplit > MAX_UNSPLIT_PASSES){
+				Arrays.sort(sorted, from, to, Collections.<GATKCode>reverseOrder());
+				continue;
+			}
+			//A code with no 1 from start on gets the key length and sorts last
+			int minKey = length;
+			int maxKey = 0;
+			for (int i = from; i < to; i++){
+				keys[i] = nextOne(sorted[i], start, length);
+				minKey = Math.min(minKey, keys[i]);
+				maxKey = Math.max(maxKey, keys[i]);
+			}
+			int[] counts = new int[maxKey - minKey + 2];
+			for (int i = from; i < to; i++) counts[keys[i] - minKey + 1]++;
+			for (int b = 1; b < counts.length; b++) counts[b] += counts[b - 1];
+			for (int i = from; i < to; i++) buffer[from + counts[keys[i] - minKey]++] = sorted[i];
+			System.arraycopy(buffer, from, sorted, from, to - from);
+			//counts[b] is now where the bucket of key minKey + b ends
+			int bucketStart = from;
+			for (int b = 0; b < counts.length - 1; b++){
+				int bucketEnd = from + counts[b];
+				if (bucketEnd - bucketStart > 1 && minKey + b < length){
+					stack[top++] = bucketStart;
+					stack[top++] = bucketEnd;
+					stack[top++] = minKey + b + 1;
+					stack[top++] = bucketEnd - bucketStart > (to - from) - (to - from) / 8 ? unsplit + 1 : 0;
+				}
+				bucketStart = bucketEnd;
 			}
 		}
-		return codeToColHash;
+		return sorted;
 	}
 	
-	/**
-	 * Returns an ArrayList of all the transposed matrix rows as binary codes.
-	 * 
-	 * Each "code" is an integer who's binary representation matches
-	 * the corresponding row's values. The codes are aggregated and
-	 * returned.
-	 * 
-	 * @param tMat	The transposed matrix (columns of original are rows of this matrix)
-	 * @return		An ArrayList of integers representing binary codes
-	 */
-	private static ArrayList<Integer> generateBinaryCodeList(ArrayList<ArrayList<Integer>> tMat){
-		ArrayList<Integer> bcList = new ArrayList<Integer>();
-		for (int i = 0; i < tMat.size(); i++){
-			int code = getBinaryCode(tMat, i);
-			bcList.add(code);
+	private static void insertionSortDecreasing(GATKCode[] codes, int from, int to){
+		for (int i = from + 1; i < to; i++){
+			GATKCode code = codes[i];
+			int k = i;
+			for (; k > from && codes[k - 1].compareTo(code) < 0; k--) codes[k] = codes[k - 1];
+			codes[k] = code;
 		}
-		return bcList;
 	}
 	
 	/**
-	 * Takes in a transposed matrix and row number, returning the
-	 * row's values as an integer who has a matching binary representation.
-	 * 
-	 * The function takes the String representation of the ArrayList,
-	 * takes out non-digit characters, and reparses the now fully-formed integer.
-	 * 
-	 * Example: If a row's representation is 4 - then it has a binary code of
-	 * ...100 (with however many leading zeros as needed)
-	 * 
-	 * Note: "row" refers to row of the transposed matrix. 
-	 * This corresponds to a column of the input matrix.
-	 * 
-	 * @param tMat	The transposed matrix
-	 * @param row	The specific row in tMat
-	 * @return		The values of the row encoded in an Integer
+	 * Function: nextOne(GATKCode code, int start, int length)
+	 * Usage: int sample = nextOne(code, start, length)
+	 * ----
+	 * @return	The first sample at or after start that the code holds,
+	 * 			or length if there is none
 	 */
-	private static int getBinaryCode(ArrayList<ArrayList<Integer>> tMat, int row){
-		ArrayList<Integer> currRow = tMat.get(row);
-		String rowStr = currRow.toString().replaceAll("[^0-9]", "");
-		return Integer.parseInt(rowStr, 2);
-	}
-	
-	/**
-	 * Returns the transpose of a matrix.
-	 * 
-	 * Returns a matrix such that every (i, j)
-	 * value in original matrix is replaced by the
-	 * value at (j, i) essentially "flipping" the matrix.
-	 * 
-	 * @param matrix	Input 2D matrix	
-	 * @return			Newly transposed matrix
-	 */
-	private static ArrayList<ArrayList<Integer>> transposeMatrix(ArrayList<ArrayList<Integer>> matrix){
-		int numRows = matrix.size();
-		int numCols = matrix.get(0).size();
-		ArrayList<ArrayList<Integer>> newMat = new ArrayList<ArrayList<Integer>>();
-		//Put this in second for-loop to not have to loop twice?
-		for(int i = 0; i < numCols; i++) newMat.add(new ArrayList<Integer>());
-		for(int i = 0; i < numRows; i++){
-			for (int j = 0; j < numCols; j++){
-				newMat.get(j).add(matrix.get(i).get(j));
-			}
+	private static int nextOne(GATKCode code, int start, int length){
+		if (start >= length) return length;
+		int w = start >>> 6;
+		long word = code.getWord(w) & (-1L >>> (start & 63));
+		int numWords = GATKCode.numWords(length);
+		while (word == 0){
+			if (++w == numWords) return length;
+			word = code.getWord(w);
 		}
-		return newMat;
+		return (w << 6) + Long.numberOfLeadingZeros(word);
 	}
 	
 	/**
 	 * Takes in an inputFile, parses it, and builds the matrix
 	 * 
 	 * Uses a BufferedReader to read each line in one-by-one.
-	 * Each line is processed into its own ArrayList of Integers,
-	 * and then added as a row to the overall 2D ArrayList.
+	 * Each line is processed into the GATKCode it starts with,
+	 * which becomes a column of the matrix.
 	 * 
 	 * @param inputFile	Matrix input file
-	 * @return 			A 2D ArrayList which contains the input matrix
+	 * @return 			A BitMatrix which contains the input matrix
 	 */
-	private ArrayList<ArrayList<Integer>> processMatrixFile(String inputFile){
-		ArrayList<ArrayList<Integer>> matrix = new ArrayList<ArrayList<Integer>>();
-		rowToMutRateMap = new HashMap<Integer, Double>();
-		codeToMutRateMap = new HashMap<String, Double>();
+	private BitMatrix processMatrixFile(String inputFile){
+		ArrayList<GATKCode> columns = new ArrayList<GATKCode>();
 		BufferedReader input = null;
 		try{
 			input = new BufferedReader(new FileReader(inputFile));
@@ -828,7 +837,7 @@ public class TreeChecker {
 			String currLine;
 			int counter = 0;
 			while ((currLine = input.readLine()) != null) {
-				matrix.add(processLine(currLine, counter));
+				columns.add(processLine(currLine, counter));
 				counter++;
 			}
 		} catch (IOException e) {
@@ -840,11 +849,35 @@ public class TreeChecker {
 				System.out.println("Unforeseen IOException when closing file!");
 			}
 		}
-		//Transposed for the new type of input. CHECK FOR DOUBLE TRANSPOSITIONS.
-		matrix = transposeMatrix(matrix);
-		//printMatrix(matrix);
+		//Each line of the new type of input is a column of the matrix
 		//System.out.println(rowToMutRateMap.toString());
-		return matrix;
+		return BitMatrix.fromColumns(numCols, columns);
+	}
+	
+	/**
+	 * Builds the matrix processMatrixFile would read from the file the
+	 * counts are written to by VCFConverter.writeMatrix, without writing it
+	 * 
+	 * The rows are the codes in VCFConverter.matrixRows order, and each
+	 * row's count is recorded as its mutation rate, exactly as if it had
+	 * been parsed from the file.
+	 * 
+	 * @param counts	The number of mutations of each code
+	 * @param numSamples	The length of the codes
+	 * @return 			A BitMatrix which contains the input matrix
+	 */
+	private BitMatrix processCounts(Map<GATKCode, int[]> counts, int numSamples){
+		ArrayList<GATKCode> codes = VCFConverter.matrixRows(counts);
+		numRows = codes.size();
+		numCols = numSamples;
+		for (int counter = 0; counter < codes.size(); counter++){
+			GATKCode code = codes.get(counter);
+			double mutRate = counts.get(code)[0];
+			rowToMutRateMap.put(counter + 1, mutRate);
+			codeToMutRateMap.put(code.toString(), mutRate);
+		}
+		//The codes are the columns, like the lines of the file input.
+		return BitMatrix.fromColumns(numCols, codes);
 	}
 	
 	/**
@@ -887,19 +920,48 @@ public class TreeChecker {
 	 * Usage: processLine(currLine, counter)
 	 * ----
 	 * Parses each line of the matrix text file and returns
-	 * a row of the matrix
+	 * a column of the matrix
 	 */
-	private ArrayList<Integer> processLine(String currLine, int counter){
-		ArrayList<Integer> newRow = new ArrayList<Integer>();
-		for (int i = 0; i < numCols; i++){
-			newRow.add(Character.getNumericValue(currLine.charAt(i))); 
-		}
+	private GATKCode processLine(String currLine, int counter){
+		GATKCode newColumn = new GATKCode(currLine.substring(0, numCols));
 		//System.out.println(currLine);
 		String[] numsAsStr = currLine.split(" ");
 		double mutRate = Double.parseDouble(numsAsStr[1]);
 		//System.out.println(mutRate);
 		rowToMutRateMap.put(counter + 1, mutRate);
 		codeToMutRateMap.put(numsAsStr[0], mutRate);
-		return newRow;
+		return newColumn;
+	}
+	
+	/**
+	 * Class: CheckTask
+	 * Constructor: CheckTask(List<String> matrixFiles, BitMatrix[] results, int from, int to)
+	 * ----
+	 * Checks the files in [from, to), each in its own session, splitting
+	 * the range in half until a single file is left.
+	 */
+	private static class CheckTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final List<String> matrixFiles;
+		private final BitMatrix[] results;
+		private final int from;
+		private final int to;
+
+		CheckTask(List<String> matrixFiles, BitMatrix[] results, int from, int to){
+			this.matrixFiles = matrixFiles;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute(){
+			if (to - from > 1 && getPool() != null){
+				int mid = (from + to) >>> 1;
+				invokeAll(new CheckTask(matrixFiles, results, from, mid), new CheckTask(matrixFiles, results, mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) results[i] = checkIfTree(matrixFiles.get(i));
+		}
 	}
 }
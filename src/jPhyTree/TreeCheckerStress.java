@@ -0,0 +1,259 @@
+/**
+ * Class: TreeCheckerStress
+ * Constructor: None
+ * ----
+ * Checks that TreeChecker gives the same answers however many
+ * matrices are checked at once, and exits with status 1 if it does
+ * not. The matrices are made up and written out here: random perfect
+ * phylogenies of up to the given number of samples, every other one
+ * with a column added that conflicts with another, and one linear
+ * evolution, in which each column extends the one before it by a
+ * sample. So whether each matrix is a tree is known up front.
+ *
+ * Each matrix is first checked alone, and must come out a tree exactly
+ * when it was made as one. Then every matrix is checked copies times,
+ * in a shuffled order, first through TreeChecker.checkIfTrees and then
+ * from a thread pool where half the checks make their own session and
+ * half share one session per matrix, reading M', the conflict-free M',
+ * the conflicting columns and the mutation counts. This is done with
+ * 1 to 16 threads, and any result that differs from the matrix's own
+ * is a mismatch.
+ *
+ * Usage: java jPhyTree.TreeCheckerStress [matrices] [samples] [copies]
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TreeCheckerStress {
+
+	/* Private Constants */
+	private static final int DEFAULT_MATRICES = 32;
+	private static final int DEFAULT_SAMPLES = 256;
+	private static final int DEFAULT_COPIES = 8;
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+	private TreeCheckerStress(){}
+
+	/**
+	 * Function: main(String[] args)
+	 * Usage: (Main Method)
+	 * ----
+	 * Writes the matrices, checks them and prints the mismatches found
+	 * with each number of threads. Exits with status 1 if there were any.
+	 *
+	 * @param args	Optionally, how many matrices to make, the most samples
+	 * 				a matrix may have and how many times to check each one
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int matrices = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MATRICES;
+		int maxSamples = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SAMPLES;
+		int copies = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COPIES;
+		Random random = new Random(42);
+		ArrayList<File> inputs = new ArrayList<File>();
+		ArrayList<Boolean> trees = new ArrayList<Boolean>();
+		int mismatches;
+		try {
+			for (int m = 0; m < matrices; m++){
+				int samples = 3 + random.nextInt(Math.max(1, maxSamples - 2));
+				ArrayList<GATKCode> columns = m == 0 ? linearPhylogeny(samples) : randomPhylogeny(samples, random);
+				boolean tree = m % 2 == 0;
+				if (!tree) columns.add(conflictingColumn(samples, columns));
+				inputs.add(writeMatrix(samples, columns, random));
+				trees.add(tree);
+			}
+			mismatches = check(inputs, trees, copies);
+		} finally {
+			for (File input : inputs) input.delete();
+		}
+		System.out.println(mismatches == 0 ? "No mismatches" : mismatches + " mismatches");
+		if (mismatches > 0) System.exit(1);
+	}
+
+	/**
+	 * Function: check(List<File> inputs, List<Boolean> trees, int copies)
+	 * Usage: int mismatches = check(inputs, trees, copies)
+	 * ----
+	 * Checks the matrices as the class comment describes.
+	 *
+	 * @param inputs	The matrix files
+	 * @param trees	For each file, whether its matrix is a tree
+	 * @param copies	How many times to check each matrix per thread count
+	 * @return	The number of results that were wrong or differed from the matrix's own
+	 */
+	private static int check(List<File> inputs, List<Boolean> trees, int copies) throws InterruptedException {
+		final HashMap<String, TreeChecker> sessions = new HashMap<String, TreeChecker>();
+		HashMap<String, Boolean> isTree = new HashMap<String, Boolean>();
+		HashMap<String, String> expected = new HashMap<String, String>();
+		ArrayList<String> files = new ArrayList<String>();
+		int mismatches = 0;
+		for (int i = 0; i < inputs.size(); i++){
+			String path = inputs.get(i).getPath();
+			TreeChecker checker = new TreeChecker(path);
+			sessions.put(path, checker);
+			isTree.put(path, checker.checkIfTree() != null);
+			expected.put(path, describe(checker));
+			if (isTree.get(path) != trees.get(i).booleanValue()){
+				System.out.println(path + (trees.get(i) ? " is a tree but was not found to be one" : " is not a tree but was found to be one"));
+				mismatches++;
+			}
+			for (int c = 0; c < copies; c++) files.add(path);
+		}
+		Collections.shuffle(files, new Random(42));
+		System.out.println("Inputs: " + inputs.size() + " matrices, " + files.size() + " checks per run");
+		for (int threads : THREAD_COUNTS){
+			ArrayList<BitMatrix> results = TreeChecker.checkIfTrees(files, threads);
+			int found = 0;
+			for (int k = 0; k < files.size(); k++){
+				if ((results.get(k) != null) != isTree.get(files.get(k))) found++;
+			}
+			System.out.println(String.format("%-40s %d mismatches", "checkIfTrees, " + threads + " threads", found));
+			mismatches += found;
+		}
+		for (int threads : THREAD_COUNTS){
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			int found = 0;
+			try {
+				ArrayList<Callable<String>> checks = new ArrayList<Callable<String>>();
+				for (int k = 0; k < files.size(); k++){
+					final String path = files.get(k);
+					final boolean shared = k % 2 == 0;
+					checks.add(new Callable<String>(){
+						public String call(){
+							return describe(shared ? sessions.get(path) : new TreeChecker(path));
+						}
+					});
+				}
+				List<Future<String>> results = pool.invokeAll(checks);
+				for (int k = 0; k < files.size(); k++){
+					try {
+						if (!results.get(k).get().equals(expected.get(files.get(k)))) found++;
+					} catch (ExecutionException e){
+						System.out.println(files.get(k) + ": " + e.getCause());
+						found++;
+					}
+				}
+			} finally {
+				pool.shutdown();
+			}
+			System.out.println(String.format("%-40s %d mismatches", "Full sessions, " + threads + " threads", found));
+			mismatches += found;
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Function: describe(TreeChecker checker)
+	 * Usage: String results = describe(checker)
+	 * ----
+	 * @return	Everything the session works out for its matrix, as text
+	 */
+	private static String describe(TreeChecker checker){
+		BitMatrix matrixPrime = checker.getMatrixPrime();
+		return checker.checkIfTree() + "\n" + matrixPrime + "\n" + checker.getCFMatrixPrime() + "\n"
+				+ checker.findConflicts(matrixPrime) + "\n" + new TreeMap<String, Double>(checker.getMutMap());
+	}
+
+	/**
+	 * Function: writeMatrix(int samples, List<GATKCode> columns, Random random)
+	 * Usage: File input = writeMatrix(samples, columns, random)
+	 * ----
+	 * Writes the columns to a temporary matrix file, as VCFConverter
+	 * does, each with a random number of mutations.
+	 */
+	private static File writeMatrix(int samples, List<GATKCode> columns, Random random) throws IOException {
+		Map<GATKCode, int[]> counts = new HashMap<GATKCode, int[]>();
+		for (GATKCode column : columns) counts.put(column, new int[] {1 + random.nextInt(100)});
+		File output = File.createTempFile("jPhyTree", ".txt");
+		output.deleteOnExit();
+		PrintWriter pw = new PrintWriter(new FileWriter(output));
+		try {
+			VCFConverter.writeMatrix(pw, samples, counts);
+		} finally {
+			pw.close();
+		}
+		return output;
+	}
+
+	/**
+	 * Function: randomPhylogeny(int samples, Random random)
+	 * Usage: ArrayList<GATKCode> columns = TreeCheckerStress.randomPhylogeny(samples, random)
+	 * ----
+	 * Splits the samples in two at a random point, and each part again,
+	 * down to single samples, making every part a column; any two
+	 * columns are then nested or disjoint.
+	 */
+	static ArrayList<GATKCode> randomPhylogeny(int samples, Random random){
+		ArrayList<GATKCode> columns = new ArrayList<GATKCode>();
+		ArrayList<int[]> parts = new ArrayList<int[]>();
+		parts.add(new int[] {0, samples});
+		while (!parts.isEmpty()){
+			int[] part = parts.remove(parts.size() - 1);
+			long[] words = new long[GATKCode.numWords(samples)];
+			for (int s = part[0]; s < part[1]; s++) words[s >>> 6] |= GATKCode.bitMask(s);
+			columns.add(GATKCode.fromWords(samples, words));
+			if (part[1] - part[0] < 2) continue;
+			int split = part[0] + 1 + random.nextInt(part[1] - part[0] - 1);
+			parts.add(new int[] {part[0], split});
+			parts.add(new int[] {split, part[1]});
+		}
+		return columns;
+	}
+
+	/**
+	 * Function: linearPhylogeny(int samples)
+	 * Usage: ArrayList<GATKCode> columns = TreeCheckerStress.linearPhylogeny(samples)
+	 * ----
+	 * Makes column k hold samples 0 to k, so that every column extends
+	 * the one before it by one sample.
+	 */
+	static ArrayList<GATKCode> linearPhylogeny(int samples){
+		ArrayList<GATKCode> columns = new ArrayList<GATKCode>();
+		long[] words = new long[GATKCode.numWords(samples)];
+		for (int s = 0; s < samples; s++){
+			words[s >>> 6] |= GATKCode.bitMask(s);
+			columns.add(GATKCode.fromWords(samples, words.clone()));
+		}
+		return columns;
+	}
+
+	/**
+	 * Function: conflictingColumn(int samples, List<GATKCode> columns)
+	 * Usage: columns.add(TreeCheckerStress.conflictingColumn(samples, columns))
+	 * ----
+	 * Makes a column of two samples, one inside the last of the columns
+	 * with more than one sample and fewer than all, and one outside it,
+	 * so that the two columns overlap without either holding the other.
+	 *
+	 * @param samples	How many samples the columns have; at least 3
+	 * @param columns	Columns of a perfect phylogeny, at least one with
+	 * 			more than one sample and fewer than all
+	 * @return	The conflicting column
+	 */
+	static GATKCode conflictingColumn(int samples, List<GATKCode> columns){
+		GATKCode parent = columns.get(0);
+		for (GATKCode column : columns){
+			if (column.bitCount() > 1 && column.bitCount() < samples) parent = column;
+		}
+		int inside = 0;
+		while (!parent.get(inside)) inside++;
+		int outside = 0;
+		while (parent.get(outside)) outside++;
+		long[] words = new long[GATKCode.numWords(samples)];
+		words[inside >>> 6] |= GATKCode.bitMask(inside);
+		words[outside >>> 6] |= GATKCode.bitMask(outside);
+		return GATKCode.fromWords(samples, words);
+	}
+}
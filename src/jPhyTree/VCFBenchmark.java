@@ -0,0 +1,1227 @@
+/**
+ * Class: VCFBenchmark
+ * Constructor: None
+ * ----
+ * Command-line throughput benchmarks for the VCF ingestion code.
+ * Each mode is run a number of times after a warm-up pass and the
+ * best time is reported.
+ *
+ * Usage: java jPhyTree.VCFBenchmark parse [vcfFile] [iterations]
+ *        java jPhyTree.VCFBenchmark threads [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark gzip [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark snapshot [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark pushdown [vcfFile] [iterations]
+ *        java jPhyTree.VCFBenchmark footprint [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark mapped [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark sumprob [vcfFile or directory] [iterations]
+ *        java jPhyTree.VCFBenchmark sorted [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark bulk [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark samples [vcfFile] [iterations] [copies]
+ *        java jPhyTree.VCFBenchmark matrix [matrixFile or SAMPLESxCODES] [iterations]
+ *        java jPhyTree.VCFBenchmark phylogeny [samples] [iterations]
+ *
+ * TreeCheckerStress checks that matrices checked at once get the
+ * answers they get alone.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class VCFBenchmark {
+
+	private static final String DEFAULT_FILE = "testCases/patients_vcf/patient6.txt";
+	private static final int DEFAULT_ITERATIONS = 20;
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+	/* Keeps the JIT from discarding the work being timed */
+	private static long sink;
+
+	/**
+	 * Function: main(String[] args)
+	 * Usage: (Main Method)
+	 * ----
+	 * Runs the benchmark named by the first argument.
+	 *
+	 * @param args	The mode, then an optional VCF file, iteration count and,
+	 * 				for the threads, gzip, snapshot, footprint, mapped, sorted, bulk and samples modes, how many copies of the file's records to load
+	 */
+	public static void main(String[] args) throws IOException {
+		String mode = args.length > 0 ? args[0] : "parse";
+		String file = args.length > 1 ? args[1] : DEFAULT_FILE;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+		if (mode.equals("parse")) benchmarkParse(file, iterations);
+		else if (mode.equals("threads")) benchmarkThreads(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("gzip")) benchmarkGzip(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("pushdown")) benchmarkPushdown(file, iterations);
+		else if (mode.equals("footprint")) benchmarkFootprint(file, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("snapshot")) benchmarkSnapshot(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("mapped")) benchmarkMapped(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("sumprob")) benchmarkSumProb(file, iterations);
+		else if (mode.equals("sorted")) benchmarkSorted(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("bulk")) benchmarkBulk(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("samples")) benchmarkSamples(file, iterations, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+		else if (mode.equals("matrix")) benchmarkMatrix(file, iterations);
+		else if (mode.equals("phylogeny")) benchmarkPhylogeny(Integer.parseInt(args.length > 1 ? args[1] : "2048"), iterations);
+		else System.out.println("Unknown mode: " + mode);
+		if (sink == 42) System.out.println();
+	}
+
+	/**
+	 * Function: benchmarkParse(String file, int iterations)
+	 * Usage: benchmarkParse(file, iterations)
+	 * ----
+	 * Compares three ways of turning the file into VCFEntry-like records:
+	 * the old String.split constructor, reading lines and calling the
+	 * VCFEntry(String) constructor, and tokenizing the memory-mapped file.
+	 *
+	 * @param file	The VCF file to parse
+	 * @param iterations	How many timed passes to make
+	 */
+	private static void benchmarkParse(String file, int iterations) throws IOException {
+		long bytes = new File(file).length();
+		System.out.println("File: " + file + " (" + bytes + " bytes)");
+		String[] names = {"String.split (old constructor)", "BufferedReader + VCFEntry(String)", "Mapped VCFTokenizer + VCFEntry"};
+		for (int mode = 0; mode < names.length; mode++){
+			long lines = parseOnce(file, mode);
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < iterations; i++){
+				long start = System.nanoTime();
+				parseOnce(file, mode);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			report(names[mode], bytes, lines, best);
+		}
+	}
+
+	/**
+	 * Function: parseOnce(String file, int mode)
+	 * Usage: long lines = parseOnce(file, mode)
+	 * ----
+	 * Parses the whole file once with the given method. Each method
+	 * reports the ALT allele and sample count so none of it is dead code.
+	 *
+	 * @param file	The VCF file to parse
+	 * @param mode	0 for split, 1 for VCFEntry(String), 2 for the tokenizer
+	 * @return	The number of records parsed
+	 */
+	private static long parseOnce(String file, int mode) throws IOException {
+		long lines = 0;
+		if (mode == 2){
+			for (ByteBuffer window : VCFTokenizer.mapFile(file)){
+				VCFTokenizer tokenizer = new VCFTokenizer(window);
+				while (tokenizer.nextRecord()){
+					VCFEntry entry = new VCFEntry(tokenizer);
+					sink += entry.getNumSamples() + entry.getAltChar();
+					lines++;
+				}
+			}
+			return lines;
+		}
+		BufferedReader rd = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = rd.readLine()) != null){
+				if (line.length() == 0 || line.charAt(0) == '#') continue;
+				if (mode == 0) sink += legacySplit(line);
+				else {
+					VCFEntry entry = new VCFEntry(line);
+					sink += entry.getNumSamples() + entry.getAltChar();
+				}
+				lines++;
+			}
+		} finally {
+			rd.close();
+		}
+		return lines;
+	}
+
+	/**
+	 * Function: benchmarkThreads(String file, int iterations, int copies)
+	 * Usage: benchmarkThreads(file, iterations, copies)
+	 * ----
+	 * Builds a VCFDatabase with 1, 2, 4, 8 and 16 parsing threads and
+	 * reports the throughput and speedup of each over a single thread.
+	 * The test files are small, so the records can be repeated into a
+	 * larger temporary file first. Every run is checked to keep the same
+	 * number of entries as the single-threaded one.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per thread count
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkThreads(String file, int iterations, int copies) throws IOException {
+		File input = new File(file);
+		File temp = null;
+		if (copies > 1){
+			temp = File.createTempFile("vcfbench", ".vcf");
+			temp.deleteOnExit();
+			replicate(input, temp, copies);
+			input = temp;
+		}
+		long bytes = input.length();
+		System.out.println("File: " + file + " x" + copies + " (" + bytes + " bytes), "
+				+ Runtime.getRuntime().availableProcessors() + " processors");
+		int expected = -1;
+		long single = 0;
+		for (int threads : THREAD_COUNTS){
+			VCFDatabase db = new VCFDatabase(input.getPath(), threads);
+			if (expected == -1) expected = db.size();
+			else if (db.size() != expected)
+				System.out.println("Entry count differs with " + threads + " threads!");
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < iterations; i++){
+				long start = System.nanoTime();
+				db = new VCFDatabase(input.getPath(), threads);
+				best = Math.min(best, System.nanoTime() - start);
+				sink += db.size();
+			}
+			if (threads == 1) single = best;
+			report(threads + " thread(s), x" + String.format("%.2f", (double) single / best), bytes, expected, best);
+		}
+		if (temp != null) temp.delete();
+	}
+
+	/**
+	 * Function: benchmarkGzip(String file, int iterations, int copies)
+	 * Usage: benchmarkGzip(file, iterations, copies)
+	 * ----
+	 * Writes gzip and BGZF copies of the (optionally replicated) file and
+	 * compares building a VCFDatabase from each against the plain text.
+	 * Throughput is reported in uncompressed megabytes.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per format
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkGzip(String file, int iterations, int copies) throws IOException {
+		File plain = File.createTempFile("vcfbench", ".vcf");
+		File gzip = File.createTempFile("vcfbench", ".vcf.gz");
+		File bgzf = File.createTempFile("vcfbench", ".bgz.vcf.gz");
+		plain.deleteOnExit();
+		gzip.deleteOnExit();
+		bgzf.deleteOnExit();
+		replicate(new File(file), plain, copies);
+		writeGzip(plain, gzip);
+		writeBGZF(plain, bgzf);
+		long bytes = plain.length();
+		System.out.println("File: " + file + " x" + copies + " (" + bytes + " bytes; gzip " + gzip.length()
+				+ ", BGZF " + bgzf.length() + "), " + Runtime.getRuntime().availableProcessors() + " processors");
+		File[] inputs = {plain, gzip, bgzf};
+		String[] names = {"Plain text (mapped)", "gzip (single stream)", "BGZF (parallel blocks)"};
+		int expected = -1;
+		for (int i = 0; i < inputs.length; i++){
+			VCFDatabase db = new VCFDatabase(inputs[i].getPath());
+			if (expected == -1) expected = db.size();
+			else if (db.size() != expected) System.out.println("Entry count differs for " + names[i] + "!");
+			long best = Long.MAX_VALUE;
+			for (int j = 0; j < iterations; j++){
+				long start = System.nanoTime();
+				db = new VCFDatabase(inputs[i].getPath());
+				best = Math.min(best, System.nanoTime() - start);
+				sink += db.size();
+			}
+			report(names[i], bytes, expected, best);
+		}
+		plain.delete();
+		gzip.delete();
+		bgzf.delete();
+	}
+
+	/**
+	 * Function: benchmarkSnapshot(String file, int iterations, int copies)
+	 * Usage: benchmarkSnapshot(file, iterations, copies)
+	 * ----
+	 * Compares a cold parse of the (optionally replicated) file with
+	 * reloading the same database from its snapshot. Hashing the input,
+	 * which every reload does, is also timed on its own.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per method
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkSnapshot(String file, int iterations, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		File snapshot = new File(input.getPath() + ".snapshot");
+		input.deleteOnExit();
+		snapshot.deleteOnExit();
+		replicate(new File(file), input, copies);
+		long bytes = input.length();
+		VCFDatabase cold = new VCFDatabase(input.getPath());
+		VCFDatabase.loadCached(input.getPath(), snapshot.getPath());
+		System.out.println("File: " + file + " x" + copies + " (" + bytes + " bytes; snapshot "
+				+ snapshot.length() + " bytes, " + cold.size() + " entries)");
+		String[] names = {"Cold parse", "Content hash only", "Snapshot reload", "Snapshot reload, input touched"};
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				if (mode == 0) sink += new VCFDatabase(input.getPath()).size();
+				else if (mode == 1) sink += VCFSnapshot.contentHash(input.getPath());
+				else {
+					//A new modification time must not stop the reload
+					if (mode == 3) input.setLastModified(input.lastModified() - 1000);
+					VCFDatabase db = VCFDatabase.loadCached(input.getPath(), snapshot.getPath());
+					if (db.size() != cold.size()) System.out.println("Snapshot entry count differs!");
+					sink += db.size();
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			report(names[mode], bytes, cold.size(), best);
+		}
+		input.delete();
+		snapshot.delete();
+	}
+
+	/**
+	 * Function: writeGzip(File input, File output)
+	 * Usage: writeGzip(input, output)
+	 * ----
+	 * Compresses a file as a single gzip stream.
+	 */
+	private static void writeGzip(File input, File output) throws IOException {
+		InputStream in = new FileInputStream(input);
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(output));
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Function: writeBGZF(File input, File output)
+	 * Usage: writeBGZF(input, output)
+	 * ----
+	 * Compresses a file the way bgzip does: independent gzip blocks of
+	 * at most 0xff00 input bytes, each with a "BC" extra field holding
+	 * the block size, followed by the empty end-of-file block.
+	 */
+	private static void writeBGZF(File input, File output) throws IOException {
+		InputStream in = new FileInputStream(input);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			byte[] block = new byte[0xff00];
+			byte[] compressed = new byte[1 << 16];
+			int n;
+			while ((n = readFully(in, block)) > 0) writeBGZFBlock(out, deflater, block, n, compressed);
+			writeBGZFBlock(out, deflater, block, 0, compressed);
+		} finally {
+			deflater.end();
+			in.close();
+			out.close();
+		}
+	}
+
+	private static int readFully(InputStream in, byte[] buffer) throws IOException {
+		int total = 0;
+		int n;
+		while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0) total += n;
+		return total;
+	}
+
+	private static void writeBGZFBlock(OutputStream out, Deflater deflater, byte[] data, int length, byte[] compressed) throws IOException {
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		int size = 0;
+		while (!deflater.finished()) size += deflater.deflate(compressed, size, compressed.length - size);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		int blockSize = size + 26;
+		byte[] header = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+				(byte) (blockSize - 1), (byte) ((blockSize - 1) >>> 8)};
+		out.write(header);
+		out.write(compressed, 0, size);
+		writeIntLE(out, (int) crc.getValue());
+		writeIntLE(out, length);
+	}
+
+	private static void writeIntLE(OutputStream out, int value) throws IOException {
+		for (int i = 0; i < 4; i++) out.write(value >>> (8 * i));
+	}
+
+	/**
+	 * Function: replicate(File input, File output, int copies)
+	 * Usage: replicate(input, output, copies)
+	 * ----
+	 * Writes the header of the input once, followed by its data lines
+	 * repeated the given number of times.
+	 */
+	private static void replicate(File input, File output, int copies) throws IOException {
+		List<String> header = new ArrayList<String>();
+		List<String> data = new ArrayList<String>();
+		BufferedReader rd = new BufferedReader(new FileReader(input));
+		try {
+			String line;
+			while ((line = rd.readLine()) != null){
+				if (line.startsWith("#")) header.add(line);
+				else data.add(line);
+			}
+		} finally {
+			rd.close();
+		}
+		BufferedWriter out = new BufferedWriter(new FileWriter(output));
+		try {
+			for (String line : header){
+				out.write(line);
+				out.newLine();
+			}
+			for (int i = 0; i < copies; i++){
+				for (String line : data){
+					out.write(line);
+					out.newLine();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Function: benchmarkPushdown(String file, int iterations)
+	 * Usage: benchmarkPushdown(file, iterations)
+	 * ----
+	 * Compares decoding every record and then filtering it with
+	 * filtering the raw record first and decoding only the survivors,
+	 * both on a single thread. Also prints how many records each filter
+	 * rejected.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per method
+	 */
+	private static void benchmarkPushdown(String file, int iterations) throws IOException {
+		long bytes = new File(file).length();
+		FilterCounts counts = new VCFDatabase(file, 1).getFilterCounts();
+		System.out.println("File: " + file + " (" + bytes + " bytes)");
+		System.out.println(counts);
+		String[] names = {"Decode all, then filter", "Filter raw bytes, decode survivors"};
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				for (ByteBuffer window : VCFTokenizer.mapFile(file)){
+					if (mode == 1){
+						sink += VCFLoader.parseChunk(window, new FilterCounts(), RecordLayout.FULL).size();
+						continue;
+					}
+					VCFTokenizer tokenizer = new VCFTokenizer(window);
+					while (tokenizer.nextRecord()){
+						VCFEntry entry = new VCFEntry(tokenizer);
+						if (VCFLoader.classify(tokenizer) == VCFLoader.PASSED) sink += entry.getNumSamples();
+					}
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			report(names[mode], bytes, counts.getRecords(), best);
+		}
+	}
+
+	/**
+	 * Function: benchmarkFootprint(String file, int copies)
+	 * Usage: benchmarkFootprint(file, copies)
+	 * ----
+	 * Reports the heap used per stored variant by the original VCFEntry,
+	 * which kept the line and a String for every field, and by each
+	 * RecordLayout. The heap is measured after garbage collection with
+	 * all the entries still reachable. FULL and COMPACT also keep the
+	 * file mapped, which costs address space and page cache but no heap.
+	 *
+	 * @param file	The VCF file to load
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkFootprint(String file, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		input.deleteOnExit();
+		replicate(new File(file), input, copies);
+		long bytes = input.length();
+		System.out.println("File: " + file + " x" + copies + " (" + bytes + " bytes)");
+		long before = usedHeap();
+		List<LegacyEntry> legacy = loadLegacy(input);
+		long legacyBytes = usedHeap() - before;
+		System.out.println(String.format("%-40s %8.1f bytes/variant", "Original VCFEntry (Strings)", (double) legacyBytes / legacy.size()));
+		legacy = null;
+		for (RecordLayout layout : RecordLayout.values()){
+			before = usedHeap();
+			VCFDatabase db = new VCFDatabase(input.getPath(), 1, layout);
+			long used = usedHeap() - before;
+			System.out.println(String.format("%-40s %8.1f bytes/variant", layout, (double) used / db.size())
+					+ (layout == RecordLayout.COMPACT_NO_RAW ? "" : String.format(" + %.1f mapped", (double) bytes / db.size())));
+			sink += db.size();
+		}
+		input.delete();
+	}
+
+	/**
+	 * Function: benchmarkMapped(String file, int iterations, int copies)
+	 * Usage: benchmarkMapped(file, iterations, copies)
+	 * ----
+	 * Loads the replicated file with VCFDatabase.loadMapped and reports
+	 * the load time, the heap still in use with the database reachable
+	 * and the time to read back every entry and write the matrix.
+	 * Meant to be run with a small -Xmx, to show that the heap does not
+	 * grow with the number of variants.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed query passes to make
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkMapped(String file, int iterations, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		input.deleteOnExit();
+		replicate(new File(file), input, copies);
+		File matrix = File.createTempFile("vcfbench", ".matrix");
+		matrix.deleteOnExit();
+		long bytes = input.length();
+		System.out.println("File: " + file + " x" + copies + " (" + bytes + " bytes), max heap "
+				+ Runtime.getRuntime().maxMemory() / (1 << 20) + " MB");
+		long before = usedHeap();
+		long start = System.nanoTime();
+		VCFDatabase db = VCFDatabase.loadMapped(input.getPath(), Runtime.getRuntime().availableProcessors());
+		report("loadMapped", bytes, db.getFilterCounts().getRecords(), System.nanoTime() - start);
+		long used = usedHeap() - before;
+		System.out.println(String.format("%d variants, %.1f MB heap (%.2f bytes/variant)", db.size(),
+				used / (double) (1 << 20), (double) used / db.size()));
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i <= iterations; i++){
+			start = System.nanoTime();
+			for (int e = 0; e < db.size(); e++) sink += db.getEntry(e).getPositionValue();
+			db.generateMatrix(matrix.getPath());
+			if (i > 0) best = Math.min(best, System.nanoTime() - start);
+		}
+		report("Read every entry + generateMatrix", bytes, db.size(), best);
+		matrix.delete();
+		input.delete();
+	}
+
+	/**
+	 * Function: benchmarkSumProb(String file, int iterations)
+	 * Usage: benchmarkSumProb(file, iterations)
+	 * ----
+	 * Checks VCFEntry.getSumProb against the original summation loop on
+	 * every sample of every entry of the file, or of every file in the
+	 * directory, and on all alt counts for depths up to 2000. Reports
+	 * the largest relative difference, how many THRESHOLD decisions
+	 * differ and where the original loop stops giving finite results,
+	 * then times both over all the samples of the inputs.
+	 *
+	 * @param file	A VCF file, or a directory of them
+	 * @param iterations	How many timed passes to make per method
+	 */
+	private static void benchmarkSumProb(String file, int iterations) throws IOException {
+		File[] inputs = new File(file).isDirectory() ? new File(file).listFiles() : new File[] {new File(file)};
+		IntList alts = new IntList();
+		IntList depths = new IntList();
+		ArrayList<VCFEntry> entries = new ArrayList<VCFEntry>();
+		IntList samples = new IntList();
+		for (File input : inputs){
+			VCFDatabase db = new VCFDatabase(input.getPath());
+			for (int i = 0; i < db.size(); i++){
+				VCFEntry entry = db.getEntry(i);
+				for (int s = 0; s < entry.getNumSamples(); s++){
+					alts.add(entry.getAlleleCount(s, 1));
+					depths.add(entry.getReadDepth(s));
+					entries.add(entry);
+					samples.add(s);
+				}
+			}
+		}
+		System.out.println("Inputs: " + inputs.length + " files, " + entries.size() + " samples");
+		double maxError = 0.0;
+		int flipped = 0;
+		int nonFinite = 0;
+		for (int i = 0; i < entries.size(); i++){
+			double expected = legacySumProb(alts.get(i), depths.get(i), VCFConstants.BASE_ERROR);
+			double actual = entries.get(i).getSumProb(samples.get(i));
+			if ((expected >= VCFConstants.THRESHOLD) != (actual >= VCFConstants.THRESHOLD)) flipped++;
+			if (Double.isNaN(expected) || Double.isInfinite(expected)){
+				nonFinite++;
+				System.out.println("  Original overflows at alt " + alts.get(i) + ", depth " + depths.get(i) + "; now " + actual);
+				continue;
+			}
+			maxError = Math.max(maxError, relativeError(expected, actual));
+		}
+		System.out.println(String.format("Bundled inputs: max relative difference %.3g where the original is finite,"
+				+ " %d samples where it is not, %d THRESHOLD decisions differ", maxError, nonFinite, flipped));
+		BinomialTail tail = BinomialTail.forErrorRate(VCFConstants.BASE_ERROR);
+		double gridError = 0.0;
+		int firstNonFinite = -1;
+		for (int d = 0; d <= 2000; d++){
+			//The original loop's running totals, i.e. its result for every alt count at this depth
+			double[] legacy = new double[d + 2];
+			for (int k = d; k >= 0; k--) legacy[k] = legacy[k + 1] + legacyTerm(d, k, VCFConstants.BASE_ERROR);
+			for (int a = 0; a <= d; a++){
+				double expected = legacy[a];
+				if (Double.isNaN(expected) || Double.isInfinite(expected)){
+					if (firstNonFinite < 0) firstNonFinite = d;
+					continue;
+				}
+				if (expected > 1e-300) gridError = Math.max(gridError, relativeError(expected, tail.upperTail(a, d)));
+			}
+		}
+		System.out.println(String.format("Depths 0..2000: max relative difference %.3g where the original is finite;"
+				+ " the original first fails at depth %d", gridError, firstNonFinite));
+		String[] names = {"Original loop (nCr + Math.pow)", "Memoized log-space tail"};
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				double total = 0.0;
+				for (int j = 0; j < entries.size(); j++){
+					if (mode == 0) total += legacySumProb(alts.get(j), depths.get(j), VCFConstants.BASE_ERROR);
+					else total += entries.get(j).getSumProb(samples.get(j));
+				}
+				sink += (long) total;
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %8.2f ms %10.1f ns/call", names[mode], best / 1e6, (double) best / entries.size()));
+		}
+	}
+
+	/**
+	 * Function: legacySumProb(int a, int d, double baseError)
+	 * Usage: double sumProb = legacySumProb(a, d, baseError)
+	 * ----
+	 * The summation VCFEntry.getSumProb originally ran: nCr by a
+	 * multiplicative loop and two Math.pow calls for every term.
+	 */
+	private static double legacySumProb(int a, int d, double baseError){
+		double total = 0.0;
+		for (int k = d; k >= a; k--){
+			total += legacyTerm(d, k, baseError);
+		}
+		return total;
+	}
+
+	private static double legacyTerm(int d, int k, double baseError){
+		if (k < 0 || k > d) return 0;
+		int r = k > d / 2 ? d - k : k;
+		double denominator = 1.0, numerator = 1.0;
+		for (int i = 1; i <= r; i++){
+			denominator *= i;
+			numerator *= (d + 1 - i);
+		}
+		return numerator / denominator * Math.pow(baseError / 4.0, k) * Math.pow((1 - baseError), d - k);
+	}
+
+	/**
+	 * Function: benchmarkSorted(String file, int iterations, int copies)
+	 * Usage: benchmarkSorted(file, iterations, copies)
+	 * ----
+	 * Times getSortedEntriesByGATK on the code with the most entries,
+	 * towards every code within EDIT_DISTANCE of it, against the
+	 * list-backed map it replaced. The first call for a pair sorts and
+	 * later calls reuse the order, so both are timed, as is picking the
+	 * top 10 with getTopEntriesByGATK.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per method
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkSorted(String file, int iterations, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		input.deleteOnExit();
+		replicate(new File(file), input, copies);
+		VCFDatabase db = new VCFDatabase(input.getPath());
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		String code = null;
+		for (int i = 0; i < db.size(); i++){
+			String current = db.getEntry(i).getGATK();
+			Integer count = counts.get(current);
+			counts.put(current, count == null ? 1 : count + 1);
+			if (code == null || counts.get(current) > counts.get(code)) code = current;
+		}
+		ArrayList<String> dests = new ArrayList<String>();
+		for (String dest : counts.keySet()){
+			int distance = new GATKCode(code).hammingDistance(new GATKCode(dest));
+			if (distance > 0 && distance <= VCFConstants.EDIT_DISTANCE) dests.add(dest);
+		}
+		System.out.println("File: " + file + " x" + copies + ", code " + code + " with " + counts.get(code)
+				+ " entries, " + dests.size() + " destination codes");
+		String[] names = {"List-backed map (linear scans)", "Sorted index, first call", "Sorted index, cached", "Top 10 by heap"};
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				if (mode != 2) db = new VCFDatabase(input.getPath());
+				long start = System.nanoTime();
+				for (String dest : dests){
+					if (mode == 0) sink += legacySorted(db, code, dest).size();
+					else if (mode == 3) sink += db.getTopEntriesByGATK(code, dest, 10).size();
+					else sink += db.getSortedEntriesByGATK(code, dest, null).size();
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %8.3f ms/call", names[mode], best / 1e6 / Math.max(1, dests.size())));
+		}
+		input.delete();
+	}
+
+	/**
+	 * Function: benchmarkBulk(String file, int iterations, int copies)
+	 * Usage: benchmarkBulk(file, iterations, copies)
+	 * ----
+	 * Times testing every code of the file against every code within
+	 * EDIT_DISTANCE of it, as editSNV does for each conflict: once with
+	 * a getValidEntries call per pair, and once with a getValidEntrySets
+	 * call per code.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make per method
+	 * @param copies	How many times to repeat the file's records
+	 */
+	private static void benchmarkBulk(String file, int iterations, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		input.deleteOnExit();
+		replicate(new File(file), input, copies);
+		VCFDatabase db = new VCFDatabase(input.getPath());
+		HashSet<String> codeSet = new HashSet<String>();
+		for (int i = 0; i < db.size(); i++) codeSet.add(db.getEntry(i).getGATK());
+		ArrayList<String> codes = new ArrayList<String>(codeSet);
+		Collections.sort(codes);
+		Map<String, ArrayList<String>> dests = new HashMap<String, ArrayList<String>>();
+		int pairs = 0;
+		for (String code : codes){
+			ArrayList<String> codeDests = new ArrayList<String>();
+			for (String dest : codes){
+				int distance = new GATKCode(code).hammingDistance(new GATKCode(dest));
+				if (distance > 0 && distance <= VCFConstants.EDIT_DISTANCE) codeDests.add(dest);
+			}
+			dests.put(code, codeDests);
+			pairs += codeDests.size();
+		}
+		System.out.println("File: " + file + " x" + copies + ", " + db.size() + " entries, "
+				+ codes.size() + " codes, " + pairs + " (code, destination) pairs");
+		String[] names = {"getValidEntries per pair", "getValidEntrySets per code"};
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				for (String code : codes){
+					if (mode == 1){
+						ValidEntrySets sets = db.getValidEntrySets(code, dests.get(code));
+						for (String dest : dests.get(code)) sink += sets.getValid(dest).cardinality();
+						continue;
+					}
+					for (String dest : dests.get(code)){
+						ArrayList<VCFEntry> valid = new ArrayList<VCFEntry>();
+						sink += db.getValidEntries(code, dest, VCFConstants.EDIT_DISTANCE, valid, new ArrayList<VCFEntry>(), null);
+					}
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %8.3f ms per pass", names[mode], best / 1e6));
+		}
+		input.delete();
+	}
+
+	/**
+	 * Function: benchmarkSamples(String file, int iterations, int copies)
+	 * Usage: benchmarkSamples(file, iterations, copies)
+	 * ----
+	 * Times a presence query for every pair of distinct samples, "present
+	 * in the first, absent from the second", answered by scanning the
+	 * entries' genotypes and by getEntriesWithSamples, and checks that
+	 * both give the same entries. Building the bitmaps is timed apart.
+	 *
+	 * @param file	The VCF file to load
+	 * @param iterations	How many timed passes to make
+	 * @param copies	How many copies of the file's records to load
+	 */
+	private static void benchmarkSamples(String file, int iterations, int copies) throws IOException {
+		File input = File.createTempFile("vcfbench", ".vcf");
+		input.deleteOnExit();
+		replicate(new File(file), input, copies);
+		VCFDatabase db = new VCFDatabase(input.getPath());
+		int numSamples = db.size() == 0 ? 0 : db.getEntry(0).getNumSamples();
+		long start = System.nanoTime();
+		db.getEntriesWithSamples(new int[0], new int[0]);
+		long build = System.nanoTime() - start;
+		System.out.println("File: " + file + " x" + copies + ", " + db.size() + " entries, " + numSamples + " samples");
+		System.out.println(String.format("%-40s %8.3f ms", "Building the sample bitmaps", build / 1e6));
+		String[] names = {"Genotype scan per query", "getEntriesWithSamples per query"};
+		int queries = numSamples * (numSamples - 1);
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				start = System.nanoTime();
+				for (int in = 0; in < numSamples; in++){
+					for (int out = 0; out < numSamples; out++){
+						if (in == out) continue;
+						if (mode == 1){
+							sink += db.getEntriesWithSamples(new int[] {in}, new int[] {out}).cardinality();
+							continue;
+						}
+						BitSet scanned = new BitSet(db.size());
+						for (int e = 0; e < db.size(); e++){
+							VCFEntry entry = db.getEntry(e);
+							if (!entry.getGenotype(in).equals("0/0") && entry.getGenotype(out).equals("0/0")) scanned.set(e);
+						}
+						if (i == 0 && !scanned.equals(db.getEntriesWithSamples(new int[] {in}, new int[] {out})))
+							System.out.println("Mismatch for samples " + in + " and " + out);
+						sink += scanned.cardinality();
+					}
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %8.3f us", names[mode], best / 1e3 / Math.max(queries, 1)));
+		}
+		input.delete();
+	}
+
+	/**
+	 * Function: benchmarkMatrix(String file, int iterations)
+	 * Usage: benchmarkMatrix(file, iterations)
+	 * ----
+	 * Compares the ArrayList<ArrayList<Integer>> matrices TreeChecker
+	 * and SPBuilder used to work on with BitMatrix: building M' from a
+	 * matrix file, computing the L function of every column as
+	 * TreeBuilder.getLColFuncMap does, and reading every column's code
+	 * as SPBuilder does, then the heap each M' takes. Given a size such
+	 * as "64x4096" instead of a file, a matrix of that many samples and
+	 * distinct random codes is written and used.
+	 *
+	 * @param file	A matrix file as TreeChecker reads it, or SAMPLESxCODES
+	 * @param iterations	How many timed passes to make per method
+	 */
+	private static void benchmarkMatrix(String file, int iterations) throws IOException {
+		File input = new File(file);
+		if (file.matches("\\d+x\\d+")){
+			String[] size = file.split("x");
+			input = File.createTempFile("vcfbench", ".txt");
+			input.deleteOnExit();
+			writeRandomMatrix(input, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+		}
+		BitMatrix packed = TreeChecker.getMatrixPrime(input.getPath());
+		System.out.println("Matrix: " + file + ", M' of " + packed.getNumRows() + " samples x " + packed.getNumCols() + " codes");
+		String[] names = {"Boxed M'", "BitMatrix M'", "Boxed L function", "BitMatrix L function",
+				"Boxed column codes", "BitMatrix column codes"};
+		ArrayList<ArrayList<Integer>> boxed = legacyMatrixPrime(input.getPath());
+		for (int mode = 0; mode < names.length; mode++){
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				if (mode == 0) sink += legacyMatrixPrime(input.getPath()).size();
+				else if (mode == 1) sink += TreeChecker.getMatrixPrime(input.getPath()).getNumCols();
+				else if (mode == 2) sink += legacyLColFuncMap(boxed).size();
+				else if (mode == 3) sink += new TreeBuilder().getLColFuncMap(packed).size();
+				else {
+					for (int j = 0; j < packed.getNumCols(); j++){
+						GATKCode code = mode == 4 ? GATKCode.fromList(legacyColumn(boxed, j)) : packed.getColumn(j);
+						sink += code.bitCount();
+					}
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %10.3f ms", names[mode], best / 1e6));
+		}
+		if (!legacyLColFuncMap(boxed).equals(new TreeBuilder().getLColFuncMap(packed))) System.out.println("Mismatch in the L function");
+		boxed = null;
+		packed = null;
+		long before = usedHeap();
+		boxed = legacyMatrixPrime(input.getPath());
+		long boxedBytes = usedHeap() - before;
+		sink += boxed.size();
+		boxed = null;
+		before = usedHeap();
+		packed = TreeChecker.getMatrixPrime(input.getPath());
+		//Count the rows too, as the L function builds them
+		packed.getRow(0);
+		long packedBytes = usedHeap() - before;
+		sink += packed.getNumCols();
+		System.out.println(String.format("%-40s %10.1f KB", "Boxed M' heap", boxedBytes / 1024.0));
+		System.out.println(String.format("%-40s %10.1f KB", "BitMatrix M' heap", packedBytes / 1024.0));
+	}
+
+	private static void writeRandomMatrix(File output, int samples, int codes) throws IOException {
+		Random random = new Random(42);
+		Map<GATKCode, int[]> counts = new HashMap<GATKCode, int[]>();
+		while (counts.size() < codes){
+			long[] words = new long[GATKCode.numWords(samples)];
+			for (int s = 0; s < samples; s++){
+				if (random.nextInt(4) == 0) words[s >>> 6] |= GATKCode.bitMask(s);
+			}
+			counts.put(GATKCode.fromWords(samples, words), new int[] {1 + random.nextInt(100)});
+		}
+		PrintWriter pw = new PrintWriter(new FileWriter(output));
+		try {
+			VCFConverter.writeMatrix(pw, samples, counts);
+		} finally {
+			pw.close();
+		}
+	}
+
+	/**
+	 * Function: benchmarkPhylogeny(int samples, int iterations)
+	 * Usage: benchmarkPhylogeny(samples, iterations)
+	 * ----
+	 * Compares the old TreeSet sort and L function maps of
+	 * TreeChecker.checkIfTree with the radix sort and single pass that
+	 * replaced them, on two perfect phylogenies of the given number of
+	 * samples. The first is random, with about twice as many distinct
+	 * columns as samples, shuffled and with some columns repeated. The
+	 * second is a linear evolution, in which each column extends the
+	 * one before it by a sample, so the radix sort buckets nest as deep
+	 * as there are samples; its L function maps are not timed, as they
+	 * hold an entry for each of its samples^2 / 2 1s.
+	 *
+	 * @param samples	How many samples the matrices have
+	 * @param iterations	How many timed passes to make per method
+	 */
+	private static void benchmarkPhylogeny(int samples, int iterations){
+		Random random = new Random(42);
+		ArrayList<GATKCode> columns = TreeCheckerStress.randomPhylogeny(samples, random);
+		for (int i = columns.size() / 8; i > 0; i--) columns.add(columns.get(random.nextInt(columns.size())));
+		Collections.shuffle(columns, random);
+		timePhylogeny("random", samples, columns, iterations, true);
+		ArrayList<GATKCode> nested = TreeCheckerStress.linearPhylogeny(samples);
+		Collections.shuffle(nested, random);
+		timePhylogeny("nested", samples, nested, iterations, false);
+	}
+
+	/**
+	 * Function: timePhylogeny(String name, int samples, ArrayList<GATKCode> columns, int iterations, boolean legacyMaps)
+	 * Usage: timePhylogeny("random", samples, columns, iterations, true)
+	 * ----
+	 * Times each method of benchmarkPhylogeny on a matrix that is a
+	 * perfect phylogeny as it is, and with one column added that
+	 * conflicts with another.
+	 *
+	 * @param name	What to call the matrix
+	 * @param samples	How many samples the matrix has
+	 * @param columns	The columns of the matrix
+	 * @param iterations	How many timed passes to make per method
+	 * @param legacyMaps	Whether to time the L function maps too
+	 */
+	private static void timePhylogeny(String name, int samples, ArrayList<GATKCode> columns, int iterations, boolean legacyMaps){
+		BitMatrix tree = BitMatrix.fromColumns(samples, columns);
+		ArrayList<GATKCode> conflicting = new ArrayList<GATKCode>(columns);
+		conflicting.add(TreeCheckerStress.conflictingColumn(samples, conflicting));
+		BitMatrix notTree = BitMatrix.fromColumns(samples, conflicting);
+		System.out.println("Phylogeny (" + name + "): " + samples + " samples x " + columns.size() + " columns, "
+				+ TreeChecker.generateMatrixPrime(tree).getNumCols() + " distinct");
+		String[] names = {"TreeSet M'", "Radix sort M'", "L function maps (tree)", "Single pass (tree)",
+				"L function maps (conflict)", "Single pass (conflict)"};
+		BitMatrix treePrime = TreeChecker.generateMatrixPrime(tree);
+		BitMatrix notTreePrime = TreeChecker.generateMatrixPrime(notTree);
+		for (int mode = 0; mode < names.length; mode++){
+			if (!legacyMaps && (mode == 2 || mode == 4)) continue;
+			BitMatrix matrixPrime = mode < 4 ? treePrime : notTreePrime;
+			boolean isTree = false;
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i <= iterations; i++){
+				long start = System.nanoTime();
+				if (mode == 0) sink += legacySortColumns(tree).getNumCols();
+				else if (mode == 1) sink += TreeChecker.generateMatrixPrime(tree).getNumCols();
+				else {
+					//A fresh matrix, so the single pass pays for building the rows
+					BitMatrix copy = BitMatrix.fromColumns(samples, matrixPrime.getColumns());
+					isTree = mode % 2 == 0 ? legacyIsPhyTree(copy) : TreeChecker.isPhyTree(copy);
+				}
+				if (i > 0) best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%-40s %10.3f ms", names[mode], best / 1e6) + (mode < 2 ? "" : "  " + isTree));
+		}
+		if (!legacySortColumns(tree).equals(treePrime)) System.out.println("Mismatch in M'");
+	}
+
+	/**
+	 * Function: legacySortColumns(BitMatrix matrix)
+	 * Usage: BitMatrix matrixPrime = legacySortColumns(matrix)
+	 * ----
+	 * How TreeChecker.generateMatrixPrime sorted and deduplicated the
+	 * columns before the radix sort: through a TreeSet in reverse order.
+	 */
+	private static BitMatrix legacySortColumns(BitMatrix matrix){
+		Set<GATKCode> sorted = new TreeSet<GATKCode>(Collections.<GATKCode>reverseOrder());
+		sorted.addAll(matrix.getColumns());
+		return BitMatrix.fromColumns(matrix.getNumRows(), new ArrayList<GATKCode>(sorted));
+	}
+
+	/**
+	 * Function: legacyIsPhyTree(BitMatrix matrixPrime)
+	 * Usage: boolean isTree = legacyIsPhyTree(matrixPrime)
+	 * ----
+	 * TreeChecker's check as it was: L(i, j) for every 1 of M' in a map
+	 * keyed by Pair, each found by scanning the row leftwards, then the
+	 * largest L(i, j) of each column in a second map by probing every
+	 * cell, then every cell compared with its column. The old code
+	 * compared the boxed values with !=, which fails for values over
+	 * 127; they are compared by value here so both checks agree.
+	 */
+	private static boolean legacyIsPhyTree(BitMatrix matrixPrime){
+		int numRows = matrixPrime.getNumRows();
+		int numCols = matrixPrime.getNumCols();
+		HashMap<Pair<Integer>, Integer> funcMap = new HashMap<Pair<Integer>, Integer>();
+		for (int j = 0; j < numCols; j++){
+			for (int i = 0; i < numRows; i++){
+				if (!matrixPrime.get(i, j)) continue;
+				int k = j - 1;
+				while (k >= 0 && !matrixPrime.get(i, k)) k--;
+				funcMap.put(new Pair<Integer>(i, j), k + 1);
+			}
+		}
+		HashMap<Integer, Integer> colFuncMap = new HashMap<Integer, Integer>();
+		for (int j = 0; j < numCols; j++){
+			int currLValue = 0;
+			for (int i = 0; i < numRows; i++){
+				Integer lValue = funcMap.get(new Pair<Integer>(i, j));
+				if (lValue != null && lValue.intValue() > currLValue) currLValue = lValue.intValue();
+			}
+			colFuncMap.put(j, currLValue);
+		}
+		for (Pair<Integer> key : funcMap.keySet()){
+			if (!funcMap.get(key).equals(colFuncMap.get(key.getSecond()))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function: legacyMatrixPrime(String matrixFile)
+	 * Usage: ArrayList<ArrayList<Integer>> matrixPrime = legacyMatrixPrime(matrixFile)
+	 * ----
+	 * How TreeChecker.getMatrixPrime built M' before BitMatrix: the file
+	 * is read into boxed rows and transposed, each column is packed into
+	 * a code, the distinct codes are sorted and M' is put back together
+	 * from the transposed matrix and transposed again.
+	 */
+	private static ArrayList<ArrayList<Integer>> legacyMatrixPrime(String matrixFile) throws IOException {
+		ArrayList<ArrayList<Integer>> matrix = new ArrayList<ArrayList<Integer>>();
+		BufferedReader rd = new BufferedReader(new FileReader(matrixFile));
+		try {
+			int numCols = Integer.parseInt(rd.readLine().split(" ")[1]);
+			String line;
+			while ((line = rd.readLine()) != null){
+				ArrayList<Integer> row = new ArrayList<Integer>();
+				for (int i = 0; i < numCols; i++) row.add(Character.getNumericValue(line.charAt(i)));
+				matrix.add(row);
+			}
+		} finally {
+			rd.close();
+		}
+		ArrayList<ArrayList<Integer>> transMatrix = legacyTranspose(legacyTranspose(matrix));
+		HashMap<GATKCode, Integer> codeToColumn = new HashMap<GATKCode, Integer>();
+		ArrayList<GATKCode> codes = new ArrayList<GATKCode>();
+		for (int i = 0; i < transMatrix.size(); i++){
+			GATKCode code = GATKCode.fromList(transMatrix.get(i));
+			codes.add(code);
+			if (!codeToColumn.containsKey(code)) codeToColumn.put(code, i);
+		}
+		Set<GATKCode> sorted = new TreeSet<GATKCode>(Collections.<GATKCode>reverseOrder());
+		sorted.addAll(codes);
+		ArrayList<ArrayList<Integer>> matP = new ArrayList<ArrayList<Integer>>();
+		for (GATKCode code : sorted) matP.add(transMatrix.get(codeToColumn.get(code)));
+		return legacyTranspose(matP);
+	}
+
+	private static ArrayList<ArrayList<Integer>> legacyTranspose(ArrayList<ArrayList<Integer>> matrix){
+		int numCols = matrix.get(0).size();
+		ArrayList<ArrayList<Integer>> newMat = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < numCols; i++) newMat.add(new ArrayList<Integer>());
+		for (int i = 0; i < matrix.size(); i++){
+			for (int j = 0; j < numCols; j++) newMat.get(j).add(matrix.get(i).get(j));
+		}
+		return newMat;
+	}
+
+	/**
+	 * Function: legacyLColFuncMap(ArrayList<ArrayList<Integer>> matrixPrime)
+	 * Usage: HashMap<Integer, Integer> lColFuncMap = legacyLColFuncMap(matrixPrime)
+	 * ----
+	 * TreeBuilder.getLColFuncMap as it was, through a boxed copy of M'
+	 * holding L(i, j) in every cell.
+	 */
+	private static HashMap<Integer, Integer> legacyLColFuncMap(ArrayList<ArrayList<Integer>> matrixPrime){
+		HashMap<Integer, Integer> colFuncMap = new HashMap<Integer, Integer>();
+		ArrayList<ArrayList<Integer>> matCopy = new ArrayList<ArrayList<Integer>>();
+		int numRows = matrixPrime.size();
+		int numCols = matrixPrime.get(0).size();
+		for (int i = 0; i < numRows; i++){
+			int counter = 0;
+			matCopy.add(new ArrayList<Integer>());
+			for (int j = 0; j < numCols; j++){
+				if (matrixPrime.get(i).get(j) != 0){
+					matCopy.get(i).add(counter);
+					counter = j + 1;
+				} else matCopy.get(i).add(0);
+			}
+		}
+		for (int j = 0; j < numCols; j++){
+			int colValue = 0;
+			for (int i = 0; i < numRows && colValue == 0; i++) colValue = matCopy.get(i).get(j);
+			colFuncMap.put(j + 1, colValue);
+		}
+		return colFuncMap;
+	}
+
+	private static ArrayList<Integer> legacyColumn(ArrayList<ArrayList<Integer>> matrixPrime, int col){
+		ArrayList<Integer> colCode = new ArrayList<Integer>();
+		for (int i = 0; i < matrixPrime.size(); i++) colCode.add(matrixPrime.get(i).get(col));
+		return colCode;
+	}
+
+	/**
+	 * Function: legacySorted(VCFDatabase db, String inputCode, String destCode)
+	 * Usage: ArrayList<VCFEntry> sorted = legacySorted(db, inputCode, destCode)
+	 * ----
+	 * The bucketing getSortedEntriesByGATK used to do, with a list of
+	 * (probability, entries) pairs searched linearly on every lookup.
+	 * Unlike the original, a repeated probability reuses its bucket
+	 * rather than appending a copy of it; with copies of the same
+	 * records the original's lists grow exponentially.
+	 */
+	private static ArrayList<VCFEntry> legacySorted(VCFDatabase db, String inputCode, String destCode){
+		ArrayList<Double> keys = new ArrayList<Double>();
+		ArrayList<ArrayList<VCFEntry>> buckets = new ArrayList<ArrayList<VCFEntry>>();
+		for (VCFEntry entry : db.getEntriesByGATK(inputCode)){
+			double total = -1.0;
+			for (int index = 0; index < inputCode.length(); index++){
+				if (inputCode.charAt(index) == destCode.charAt(index)) continue;
+				double currProb = entry.getSumProb(index);
+				total = (total < 0.0 ? currProb : total * currProb);
+			}
+			if (total < 0.0) total = 0.0;
+			int bucket = -1;
+			for (int i = 0; i < keys.size() && bucket < 0; i++) if (keys.get(i).equals(total)) bucket = i;
+			if (bucket < 0){
+				keys.add(total);
+				buckets.add(new ArrayList<VCFEntry>());
+				bucket = keys.size() - 1;
+			}
+			buckets.get(bucket).add(entry);
+		}
+		ArrayList<Double> probs = new ArrayList<Double>(new HashSet<Double>(keys));
+		Collections.sort(probs);
+		ArrayList<VCFEntry> sortedList = new ArrayList<VCFEntry>();
+		for (Double prob : probs){
+			for (int i = 0; i < keys.size(); i++) if (keys.get(i).equals(prob)) sortedList.addAll(buckets.get(i));
+		}
+		return sortedList;
+	}
+
+	private static double relativeError(double expected, double actual){
+		if (expected == actual) return 0.0;
+		return Math.abs(actual - expected) / Math.max(Math.abs(expected), Double.MIN_NORMAL);
+	}
+
+	private static long usedHeap(){
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++){
+			System.gc();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Function: loadLegacy(File input)
+	 * Usage: List<LegacyEntry> entries = loadLegacy(input)
+	 * ----
+	 * Reads the file the way the original VCFDatabase did, keeping a
+	 * LegacyEntry for each record that passes the filters.
+	 */
+	private static List<LegacyEntry> loadLegacy(File input) throws IOException {
+		List<LegacyEntry> entries = new ArrayList<LegacyEntry>();
+		BufferedReader rd = new BufferedReader(new FileReader(input));
+		try {
+			String line;
+			while ((line = rd.readLine()) != null){
+				if (line.length() == 0 || line.charAt(0) == '#') continue;
+				VCFTokenizer tokenizer = new VCFTokenizer(ByteBuffer.wrap(line.getBytes(VCFTokenizer.CHARSET)));
+				tokenizer.nextRecord();
+				if (VCFLoader.classify(tokenizer) == VCFLoader.PASSED) entries.add(new LegacyEntry(line));
+			}
+		} finally {
+			rd.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Class: LegacyEntry
+	 * Constructor: LegacyEntry(String entry)
+	 * ----
+	 * Holds the same fields the original VCFEntry did.
+	 */
+	@SuppressWarnings("unused")
+	private static class LegacyEntry {
+		private String raw;
+		private String chrom;
+		private String pos;
+		private String id;
+		private char ref;
+		private char alt;
+		private Double qual;
+		private String filter;
+		private String info;
+		private String format;
+		private ArrayList<String> alleleFreqList = new ArrayList<String>();
+
+		LegacyEntry(String entry){
+			raw = entry;
+			String[] parts = entry.split("\t");
+			chrom = parts[0];
+			pos = parts[1];
+			id = parts[2];
+			ref = parts[3].charAt(0);
+			alt = parts[4].charAt(0);
+			qual = Double.valueOf(parts[5]);
+			filter = parts[6];
+			info = parts[7];
+			format = parts[8];
+			for (int i = 9; i < parts.length; i++) alleleFreqList.add(parts[i]);
+		}
+	}
+
+	/**
+	 * Function: legacySplit(String line)
+	 * Usage: sink += legacySplit(line)
+	 * ----
+	 * Does the work the original VCFEntry(String) constructor did: split
+	 * the line on tabs, parse the quality and collect the sample columns.
+	 *
+	 * @param line	A VCF data line
+	 * @return	The number of samples found
+	 */
+	private static int legacySplit(String line){
+		ArrayList<String> samples = new ArrayList<String>();
+		String[] parts = line.split("\t");
+		double qual = Double.valueOf(parts[5]);
+		for (int i = 9; i < parts.length; i++) samples.add(parts[i]);
+		return samples.size() + parts[4].charAt(0) + (int) qual;
+	}
+
+	/**
+	 * Function: report(String name, long bytes, long lines, long nanos)
+	 * Usage: report(name, bytes, lines, nanos)
+	 * ----
+	 * Prints throughput in MB/s and lines/s.
+	 */
+	private static void report(String name, long bytes, long lines, long nanos){
+		double seconds = nanos / 1e9;
+		System.out.println(String.format("%-40s %8.2f ms %10.1f MB/s %12.0f lines/s",
+				name, nanos / 1e6, bytes / seconds / (1 << 20), lines / seconds));
+	}
+}
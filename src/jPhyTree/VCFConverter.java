@@ -0,0 +1,170 @@
+/**
+ * Class: VCFConverter
+ * Constructor: None
+ * ----
+ * Writes the files VCFDatabase.generateMatrix and generateGATKFile
+ * produce straight from a VCF, without building a database. The
+ * file is read once through a fixed-size buffer: each record that
+ * passes the VCFLoader filters is written to the GATK table as soon
+ * as it is parsed and counted against its GATK code, and the matrix
+ * is written from the counts at the end. The heap needed is
+ * therefore proportional to the number of distinct codes, not to
+ * the number of records.
+ *
+ * Usage: java jPhyTree.VCFConverter [vcfFile] [matrixFile] [gatkFile]
+ *        (a vcfFile of "-" reads standard input)
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class VCFConverter {
+
+	/* Private Constants */
+	private static final int BUFFER_SIZE = 1 << 22;
+	private static final String GATK_HEADER = "Chromosome\tLocation\tGATK\n";
+
+	private VCFConverter(){}
+
+	/**
+	 * Function: main(String[] args)
+	 * Usage: (Main Method)
+	 * ----
+	 * Converts a VCF into a matrix and a GATK table.
+	 *
+	 * @param args	The VCF file, the matrix file and, optionally, the GATK table to write
+	 */
+	public static void main(String[] args){
+		if (args.length < 2){
+			System.out.println("Usage: java jPhyTree.VCFConverter [vcfFile] [matrixFile] [gatkFile]");
+			System.exit(1);
+		}
+		try {
+			System.out.println(convert(args[0], args[1], args.length > 2 ? args[2] : null));
+		} catch (IOException e){
+			System.out.println("File Reading Error!");
+		}
+	}
+
+	/**
+	 * Function: convert(String vcfFile, String matrixFile, String gatkFile)
+	 * Usage: FilterCounts counts = VCFConverter.convert(vcfFile, matrixFile, gatkFile)
+	 * ----
+	 * Reads the VCF once and writes the matrix and the GATK table that a
+	 * VCFDatabase built from the same file would write. Either output
+	 * may be left out. The VCF may be gzip or BGZF compressed, and may
+	 * be "-" for standard input or a named pipe.
+	 *
+	 * @param vcfFile	The VCF file path, or "-"
+	 * @param matrixFile	Where to write the matrix, or null
+	 * @param gatkFile	Where to write the GATK table, or null
+	 * @return	How many records were read, and rejected by each filter
+	 * @throws IOException	If a file cannot be read or written
+	 */
+	public static FilterCounts convert(String vcfFile, String matrixFile, String gatkFile) throws IOException {
+		InputStream in = VCFStreamReader.open(vcfFile);
+		PrintWriter gatk = gatkFile == null ? null : new PrintWriter(new BufferedWriter(new FileWriter(gatkFile)));
+		FilterCounts filterCounts = new FilterCounts();
+		Map<GATKCode, int[]> counts = new HashMap<GATKCode, int[]>();
+		int cols = -1;
+		try {
+			if (gatk != null) gatk.print(GATK_HEADER);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int filled = 0;
+			boolean done = false;
+			while (!done){
+				int read = in.read(buffer, filled, buffer.length - filled);
+				if (read < 0) done = true;
+				else filled += read;
+				//Only whole lines are parsed until the end of the file
+				int end = done ? filled : lastLineEnd(buffer, filled);
+				if (end == 0 && filled == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				if (end == 0) continue;
+				VCFTokenizer tokenizer = new VCFTokenizer(ByteBuffer.wrap(buffer, 0, end));
+				while (tokenizer.nextRecord()){
+					int verdict = VCFLoader.classify(tokenizer);
+					filterCounts.count(verdict, tokenizer.getLineEnd() - tokenizer.getLineStart() + 1);
+					if (verdict != VCFLoader.PASSED) continue;
+					VCFEntry entry = new VCFEntry(tokenizer);
+					GATKCode code = entry.getGATKCode();
+					if (cols < 0) cols = code.length();
+					int[] count = counts.get(code);
+					if (count == null) counts.put(code, new int[] {1});
+					else count[0]++;
+					if (gatk != null) gatk.print(entry.getChromosome() + "\t" + entry.getPosition() + "\t" + code + "\n");
+				}
+				System.arraycopy(buffer, end, buffer, 0, filled - end);
+				filled -= end;
+			}
+		} finally {
+			if (!vcfFile.equals(VCFStreamReader.STDIN)) in.close();
+			if (gatk != null) gatk.close();
+		}
+		if (matrixFile != null){
+			PrintWriter pw = new PrintWriter(new FileWriter(matrixFile));
+			try {
+				writeMatrix(pw, Math.max(cols, 0), counts);
+			} finally {
+				pw.close();
+			}
+		}
+		return filterCounts;
+	}
+
+	/**
+	 * Function: writeMatrix(PrintWriter pw, int cols, Map<GATKCode, int[]> counts)
+	 * Usage: VCFConverter.writeMatrix(pw, cols, counts)
+	 * ----
+	 * Writes the matrix TreeChecker reads: a "rows cols" header, then
+	 * one "code count" row per code of matrixRows.
+	 *
+	 * @param pw	Where to write the matrix
+	 * @param cols	The number of samples
+	 * @param counts	The number of entries of each code, in the first cell of its array
+	 */
+	static void writeMatrix(PrintWriter pw, int cols, Map<GATKCode, int[]> counts){
+		ArrayList<GATKCode> codes = matrixRows(counts);
+		pw.write(codes.size() + " " + cols + "\n");
+		for (int i = 0; i < codes.size(); i++){
+			GATKCode code = codes.get(i);
+			pw.write(code + " " + counts.get(code)[0]);
+			if (i < codes.size() - 1) pw.write("\n");
+		}
+	}
+
+	/**
+	 * Function: matrixRows(Map<GATKCode, int[]> counts)
+	 * Usage: ArrayList<GATKCode> rows = VCFConverter.matrixRows(counts)
+	 * ----
+	 * Puts the codes in the order of the matrix rows, largest code
+	 * first, with a single sort. The code of all 1's is left out.
+	 *
+	 * @param counts	The number of entries of each code
+	 * @return	The codes of the matrix rows, in order
+	 */
+	static ArrayList<GATKCode> matrixRows(Map<GATKCode, int[]> counts){
+		ArrayList<GATKCode> codes = new ArrayList<GATKCode>(counts.size());
+		for (GATKCode code : counts.keySet()){
+			//Quick-fix to remove the entry for all 1's
+			if (code.bitCount() != code.length()) codes.add(code);
+		}
+		Collections.sort(codes, Collections.reverseOrder());
+		return codes;
+	}
+
+	/**
+	 * Function: lastLineEnd(byte[] buffer, int filled)
+	 * Usage: int end = lastLineEnd(buffer, filled)
+	 * ----
+	 * @return	The offset just past the last newline in the first filled
+	 * 			bytes of the buffer, or 0 if there is none
+	 */
+	private static int lastLineEnd(byte[] buffer, int filled){
+		for (int i = filled - 1; i >= 0; i--){
+			if (buffer[i] == '\n') return i + 1;
+		}
+		return 0;
+	}
+}
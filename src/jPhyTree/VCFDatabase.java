@@ -1,119 +1,570 @@
 /**
  * Class: VCFDatabase
  * Constructor: VCFDatabase(String TESTFILE)
+ *              VCFDatabase(String TESTFILE, int numThreads)
+ *              VCFDatabase(String TESTFILE, int numThreads, RecordLayout layout)
+ *              VCFDatabase(InputStream in, int numThreads)
+ *              VCFDatabase.loadCached(String TESTFILE, String snapshotFile)
+ *              VCFDatabase.loadMapped(String TESTFILE, int numThreads)
  * Last Edited: September 13, 2012
  * ----
  * This class is a container for VCFEntries.
  * The constructor takes the path name of the VCF file,
  * constructs a VCFEntry for each record, and stores it
  * internally. One can get back VCFEntries using their
- * GATK codes.
+ * GATK codes; an index from each code to the positions of
+ * its entries in the database makes those lookups constant
+ * time plus the size of the result.
+ * 
+ * Entries and the index are kept by an EntryStore: normally on the
+ * heap, or, for inputs too large for it, in a memory-mapped file
+ * (see loadMapped). A mapped database should be closed once it is
+ * no longer used, which deletes its file.
+ * 
+ * The probability tests of getValidEntries, getValidEntrySets and
+ * getSortedEntriesByGATK read from a matrix holding getSumProb of
+ * every sample of every entry. It is filled in parallel when the
+ * database is built from a file, and extended the next time it is
+ * read if entries were added since; mapped databases do without it
+ * to keep the heap small.
+ * 
+ * getEntriesWithSamples answers presence queries over samples, such
+ * as "present in samples 2 and 5 but not in 0", from one bitmap per
+ * sample over the entries (see SampleBitmaps) instead of a scan.
+ * getEntriesInRegion and getEntriesInRegions answer chromosome and
+ * position range queries from a positional index (see RegionIndex),
+ * and restrictTo makes a database of only the entries in a set of
+ * regions, without reading the file again.
  */
 package jPhyTree;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class VCFDatabase {
 	
 	/* Private Instance Variables */
 	private static final double THRESHOLD = VCFConstants.THRESHOLD;
 	private static final double COVERAGE = VCFConstants.COVERAGE;
-	private ArrayList<VCFEntry> database;
+	private static final int SUM_PROB_ROWS_PER_TASK = 1 << 12;
+	private EntryStore store;
+	/* getSumProb of each sample, a row of sumProbWidth per entry; NaN where the entry must be asked */
+	private double[] sumProbs;
+	private int sumProbRows;
+	private int sumProbWidth = -1;
+	private boolean keepSumProbs = true;
+	/* getSortedEntriesByGATK orders, keyed by "inputCode destCode"; cleared by addEntry */
+	private Map<String, int[]> sortedIndex = new HashMap<String, int[]>();
+	/* The sample bitmaps of getEntriesWithSamples; built on first use, dropped by addEntry */
+	private SampleBitmaps sampleBitmaps;
+	/* The positional index of the region queries; built on first use, dropped by addEntry */
+	private RegionIndex regionIndex;
+	private FilterCounts filterCounts;
 	private int germlineCounter; 
 	
 	/**
 	 * Function: VCFDatabase(String TESTFILE)
 	 * Usage: (Constructor)
 	 * ----
-	 * This is the constructor for the VCFDatabase.
+	 * This is the constructor for the VCFDatabase. The file is
+	 * memory-mapped and its records are tokenized in place by a
+	 * VCFTokenizer, so lines are never copied into Strings. Parsing
+	 * uses one thread per available processor.
 	 * @param TESTFILE	The VCF file path with which to build the database
 	 */
 	public VCFDatabase(String TESTFILE){
-		BufferedReader rd;
-		database = new ArrayList<VCFEntry>();
+		this(TESTFILE, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Function: VCFDatabase(String TESTFILE, int numThreads)
+	 * Usage: (Constructor)
+	 * ----
+	 * Builds the database parsing the file with the given number of
+	 * threads. The file is cut into chunks on line boundaries and the
+	 * chunks are parsed in parallel by a VCFLoader; entries are still
+	 * stored in file order, so the result does not depend on numThreads.
+	 * The file may also be gzip or BGZF compressed, and may be "-" for
+	 * standard input or a named pipe, which are parsed as they are
+	 * written (see VCFDatabase(InputStream, int)). Records are filtered
+	 * on their raw bytes before they are decoded; getFilterCounts()
+	 * reports how many records each filter rejected.
+	 * @param TESTFILE	The VCF file path with which to build the database
+	 * @param numThreads	The number of threads to parse with; 1 parses sequentially
+	 */
+	public VCFDatabase(String TESTFILE, int numThreads){
+		this(TESTFILE, numThreads, RecordLayout.FULL);
+	}
+	
+	/**
+	 * Function: VCFDatabase(String TESTFILE, int numThreads, RecordLayout layout)
+	 * Usage: (Constructor)
+	 * ----
+	 * Builds the database as above, choosing how much of each line the
+	 * entries keep. The compact layouts trade slower String getters
+	 * for a smaller heap footprint; see RecordLayout.
+	 * @param TESTFILE	The VCF file path with which to build the database
+	 * @param numThreads	The number of threads to parse with; 1 parses sequentially
+	 * @param layout	How much of each line the entries keep
+	 */
+	public VCFDatabase(String TESTFILE, int numThreads, RecordLayout layout){
+		this(new FilterCounts());
 		try{
-			rd = new BufferedReader(new FileReader(TESTFILE));
-			String currLine = rd.readLine();
-			while (currLine.substring(0, 1).equals("#")) currLine = rd.readLine();
-			int allCounter = 0;
-			int validCounter = 0;
 			//germlineCounter = 0;
-			while (currLine != null){
-				VCFEntry entry = new VCFEntry(currLine);
-				currLine = rd.readLine();
-				allCounter++;
-				//Makes sure entries are legitimate.
-				boolean isLegitimate = true;
-				int numSamples = entry.getNumSamples();
-				for (int i = 0; i < numSamples; i++){
-					if (entry.getAlleleFreq(i).equals("./.")){
-						isLegitimate = false;
-						break;
-					}
-				}
-				if (!isLegitimate) continue;
-				/* TO FILTER OUT ALL SHARED SAMPLES */
-				boolean isGermline = true;
-				for (int i = 0; i < numSamples; i++){
-					if(!entry.getGenotype(i).equals("0/1") && !entry.getGenotype(i).equals("1/1")){
-						isGermline = false;
-						break;
-					}
-				}
-				if (isGermline) {
-					//germlineCounter++;
-					continue;
-				}
-				/* TO FILTER OUT SNVs with low coverage in all SAMPLES*/
-				int totalCoverage = 0;
-				for (int i = 0; i < numSamples; i++){
-					totalCoverage += entry.getReadDepth(i);
-				}
-				if ((2.0*totalCoverage)/numSamples <= COVERAGE){
-					isLegitimate = false;
-				}
-				if (!isLegitimate) continue;
-				database.add(entry);
-				validCounter++;
-			}
+			VCFLoader.load(TESTFILE, numThreads, layout, this);
+			computeSumProbs(numThreads);
 			/**
 			 * Taken out for time testing
 			 */
-//			System.out.println("There were " + allCounter + " entries in the file.");
-//			System.out.println("Of those, " + validCounter + " were valid, and " + (allCounter - validCounter) + " were not.");
-			rd.close();
+//			System.out.println(filterCounts);
+		} catch (IOException e){
+			System.out.println("File Reading Error!");
+		}
+	}
+	
+	/**
+	 * Function: VCFDatabase(InputStream in, int numThreads)
+	 * Usage: (Constructor)
+	 * ----
+	 * Builds the database from a VCF read from a stream, so that it can
+	 * be fed straight from a variant caller through standard input or a
+	 * pipe without an intermediate file. The stream is read on its own
+	 * thread a few chunks ahead of the parser, which parses each chunk
+	 * as soon as it arrives; read-ahead is bounded, so a producer faster
+	 * than the parser is made to wait rather than filling the heap.
+	 * The stream may be gzip or BGZF compressed. It is read to the end
+	 * but not closed.
+	 * @param in	The VCF to build the database from
+	 * @param numThreads	The number of threads to parse with; 1 parses sequentially
+	 */
+	public VCFDatabase(InputStream in, int numThreads){
+		this(new FilterCounts());
+		try{
+			VCFLoader.loadStream(VCFStreamReader.decompress(in), numThreads, RecordLayout.FULL, this);
+			computeSumProbs(numThreads);
+		} catch (IOException e){
+			System.out.println("File Reading Error!");
+		}
+	}
+	
+	/**
+	 * Function: VCFDatabase(FilterCounts filterCounts)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty database to be filled with addEntry.
+	 * @param filterCounts	The filter counts the database reports
+	 */
+	VCFDatabase(FilterCounts filterCounts){
+		this(new HeapEntryStore(), filterCounts);
+	}
+	
+	/**
+	 * Function: VCFDatabase(EntryStore store, FilterCounts filterCounts)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates an empty database that keeps its entries in the given store.
+	 * @param store	An empty store
+	 * @param filterCounts	The filter counts the database reports
+	 */
+	VCFDatabase(EntryStore store, FilterCounts filterCounts){
+		this.store = store;
+		this.filterCounts = filterCounts;
+	}
+	
+	/**
+	 * Function: loadCached(String TESTFILE, String snapshotFile)
+	 * Usage: VCFDatabase db = VCFDatabase.loadCached(TESTFILE, snapshotFile)
+	 * ----
+	 * Builds the database from a binary snapshot of an earlier run if
+	 * there is one for the same file contents and filter settings;
+	 * otherwise parses the file and saves a snapshot for next time.
+	 * Loading a snapshot maps it and skips parsing and filtering, but
+	 * the input is still hashed every time to check that the snapshot
+	 * matches it, so a reload costs a read of the whole input and grows
+	 * with its size.
+	 * 
+	 * @param TESTFILE	The VCF file path with which to build the database
+	 * @param snapshotFile	Where the snapshot is kept
+	 * @return	The database of the file's valid entries
+	 */
+	public static VCFDatabase loadCached(String TESTFILE, String snapshotFile){
+		//A stream cannot be recognized from one run to the next
+		if (VCFStreamReader.isStream(TESTFILE)) return new VCFDatabase(TESTFILE);
+		try{
+			VCFDatabase cached = VCFSnapshot.read(snapshotFile, TESTFILE);
+			if (cached != null) return cached;
+		} catch (IOException e){
+			System.out.println("Snapshot Reading Error! Rebuilding " + snapshotFile);
+		}
+		VCFDatabase db = new VCFDatabase(TESTFILE);
+		try{
+			VCFSnapshot.write(db, snapshotFile, TESTFILE);
+		} catch (IOException e){
+			System.out.println("Snapshot Writing Error!");
+		}
+		return db;
+	}
+	
+	/**
+	 * Function: loadMapped(String TESTFILE, int numThreads)
+	 * Usage: VCFDatabase db = VCFDatabase.loadMapped(TESTFILE, numThreads)
+	 * ----
+	 * Builds the database with its entries kept off the heap, in the
+	 * fixed-width slots of a memory-mapped temporary file, so that
+	 * inputs with tens of millions of variants can be loaded under a
+	 * small heap. Only the per-code index stays on the heap. Entries
+	 * are rebuilt from their slot each time they are read and keep
+	 * nothing of their line, as with RecordLayout.COMPACT_NO_RAW.
+	 * A compressed input is inflated a wave of blocks at a time, so
+	 * it needs no more heap than an uncompressed one.
+	 * 
+	 * If the temporary file cannot be created, the entries are kept on
+	 * the heap instead. Call close() once the database is no longer
+	 * used; the temporary file is deleted then.
+	 * 
+	 * @param TESTFILE	The VCF file path with which to build the database
+	 * @param numThreads	The number of threads to parse with; 1 parses sequentially
+	 * @return	The database of the file's valid entries
+	 */
+	public static VCFDatabase loadMapped(String TESTFILE, int numThreads){
+		EntryStore store;
+		try{
+			store = new MappedEntryStore();
+		} catch (IOException e){
+			System.out.println("Entry Store Error! Loading " + TESTFILE + " on the heap");
+			return new VCFDatabase(TESTFILE, numThreads, RecordLayout.COMPACT_NO_RAW);
+		}
+		VCFDatabase db = new VCFDatabase(store, new FilterCounts());
+		db.keepSumProbs = false;
+		try{
+			VCFLoader.load(TESTFILE, numThreads, RecordLayout.COMPACT_NO_RAW, db);
 		} catch (IOException e){
 			System.out.println("File Reading Error!");
 		}
+		return db;
+	}
+	
+	/**
+	 * Function: close()
+	 * Usage: db.close()
+	 * ----
+	 * Releases the file of a database built by loadMapped and deletes
+	 * it; the database must not be read afterwards. Databases kept on
+	 * the heap are left as they are.
+	 */
+	public void close(){
+		try{
+			store.close();
+		} catch (IOException e){
+			System.out.println("Entry Store Error!");
+		}
+	}
+	
+	/**
+	 * Function: addEntry(VCFEntry entry)
+	 * Usage: db.addEntry(entry)
+	 * ----
+	 * Appends an entry to the database and records it under its
+	 * GATK code. The entry is stored as given; no filters are applied.
+	 * 
+	 * @param entry	The VCFEntry to add
+	 */
+	public void addEntry(VCFEntry entry){
+		store.add(entry);
+		if (!sortedIndex.isEmpty() || sampleBitmaps != null || regionIndex != null) clearIndexes();
+	}
+	
+	private synchronized void clearIndexes(){
+		sortedIndex.clear();
+		sampleBitmaps = null;
+		regionIndex = null;
+	}
+	
+	/**
+	 * Function: size()
+	 * Usage: int numEntries = db.size()
+	 * ----
+	 * @return	The number of entries stored in the database
+	 */
+	public int size(){
+		return store.size();
+	}
+	
+	/**
+	 * Function: getFilterCounts()
+	 * Usage: FilterCounts counts = db.getFilterCounts()
+	 * ----
+	 * @return	How many records were read from the file, how many
+	 * 			each filter rejected and how long each stage of parsing
+	 * 			took; a database reloaded from a snapshot keeps the
+	 * 			counts but not the times or skipped bytes
+	 */
+	public FilterCounts getFilterCounts(){
+		return filterCounts;
+	}
+	
+	/**
+	 * Function: getEntry(int ordinal)
+	 * Usage: VCFEntry entry = db.getEntry(ordinal)
+	 * ----
+	 * @param ordinal	The position of the entry, in the order entries were added
+	 * @return	The entry at that position
+	 */
+	VCFEntry getEntry(int ordinal){
+		return store.get(ordinal);
+	}
+	
+	/**
+	 * Function: getSumProb(int ordinal, int sample)
+	 * Usage: double prob = db.getSumProb(ordinal, sample)
+	 * ----
+	 * Returns getSumProb(sample) of the entry at ordinal, from the
+	 * probability matrix when it holds the value. Callers must call
+	 * computeSumProbs first for the matrix to cover recent entries.
+	 * 
+	 * @param ordinal	The position of the entry, in the order entries were added
+	 * @param sample	The sample of the entry
+	 * @return	The entry's summed probability for that sample
+	 */
+	double getSumProb(int ordinal, int sample){
+		if (ordinal < sumProbRows && sample < sumProbWidth){
+			double prob = sumProbs[ordinal * sumProbWidth + sample];
+			if (!Double.isNaN(prob)) return prob;
+		}
+		return store.get(ordinal).getSumProb(sample);
+	}
+	
+	/**
+	 * Function: computeSumProbs(int numThreads)
+	 * Usage: computeSumProbs(numThreads)
+	 * ----
+	 * Fills the probability matrix for the entries added since it was
+	 * last filled. Rows are split between numThreads threads. The width
+	 * of the matrix is the sample count of the first entry; a sample
+	 * whose probability cannot be computed, because its AD or DP value
+	 * is missing or because its entry has another sample count, is
+	 * stored as NaN, so that getSumProb asks the entry and fails the way
+	 * the entry does.
+	 * 
+	 * @param numThreads	The number of threads to compute with; 1 computes sequentially
+	 */
+	synchronized void computeSumProbs(int numThreads){
+		int size = store.size();
+		if (!keepSumProbs || size == sumProbRows) return;
+		if (sumProbWidth < 0) sumProbWidth = store.get(0).getNumSamples();
+		long cells = (long) size * sumProbWidth;
+		if (cells > Integer.MAX_VALUE){
+			//Too large for one array; every lookup asks the entry instead
+			keepSumProbs = false;
+			sumProbs = null;
+			sumProbRows = 0;
+			return;
+		}
+		if (sumProbs == null || sumProbs.length < cells){
+			double[] grown = new double[(int) Math.min(Integer.MAX_VALUE, Math.max(cells, sumProbs == null ? 0 : 2L * sumProbs.length))];
+			if (sumProbs != null) System.arraycopy(sumProbs, 0, grown, 0, sumProbRows * sumProbWidth);
+			sumProbs = grown;
+		}
+		SumProbTask task = new SumProbTask(store, sumProbs, sumProbWidth, sumProbRows, size);
+		if (numThreads <= 1 || size - sumProbRows <= SUM_PROB_ROWS_PER_TASK){
+			task.fill();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		sumProbRows = size;
 	}
 	
 	/**
 	 * Function: getEntriesByGATK(String inputCode)
 	 * Usage: ArrayList<VCFEntry> entries = db.getEntriesByGATK(inputCode)
 	 * ----
-	 * Searches the database for all VCFEntries with matching GATK codes
-	 * and returns an ArrayList of such entries
+	 * Looks up all VCFEntries with matching GATK codes
+	 * and returns an ArrayList of such entries, in the order
+	 * they were added to the database
 	 * 
 	 * @param inputCode	The GATK code with which to filter the entries
 	 * @return	An ArrayList of VCFEntries with a GATK equivalent to inputCode
 	 */
 	public ArrayList<VCFEntry> getEntriesByGATK(String inputCode){
-		ArrayList<VCFEntry> list = new ArrayList<VCFEntry>();
-		for (VCFEntry entry: database){
-			if (entry.getGATK().equals(inputCode)) list.add(entry);
+		return getEntriesByGATK(new GATKCode(inputCode));
+	}
+	
+	/**
+	 * Function: getEntriesByGATK(GATKCode code)
+	 * Usage: ArrayList<VCFEntry> entries = db.getEntriesByGATK(code)
+	 * ----
+	 * Same as getEntriesByGATK(String), for a code that is already packed.
+	 * 
+	 * @param code	The GATK code with which to filter the entries
+	 * @return	An ArrayList of VCFEntries with a GATK equivalent to code
+	 */
+	public ArrayList<VCFEntry> getEntriesByGATK(GATKCode code){
+		int[] ordinals = store.getOrdinals(code);
+		ArrayList<VCFEntry> list = new ArrayList<VCFEntry>(ordinals.length);
+		for (int i = 0; i < ordinals.length; i++){
+			list.add(store.get(ordinals[i]));
+		}
+		return list;
+	}
+	
+	/**
+	 * Function: countEntriesByGATK(String inputCode)
+	 * Usage: int numEntries = db.countEntriesByGATK(inputCode)
+	 * ----
+	 * Returns how many entries getEntriesByGATK(inputCode) would return,
+	 * without building the list.
+	 * 
+	 * @param inputCode	The GATK code to count
+	 * @return	The number of entries with a GATK equivalent to inputCode
+	 */
+	public int countEntriesByGATK(String inputCode){
+		return store.count(new GATKCode(inputCode));
+	}
+	
+	/**
+	 * Function: getEntriesWithSamples(GATKCode include, GATKCode exclude)
+	 * Usage: BitSet ordinals = db.getEntriesWithSamples(include, exclude)
+	 * ----
+	 * Finds the entries present in every sample set in include and
+	 * absent from every sample set in exclude, where an entry is present
+	 * in a sample when the sample is a 1 in its GATK code. The first
+	 * call builds a bitmap per sample; later calls only combine them,
+	 * a word of 64 entries at a time.
+	 * 
+	 * @param include	The samples the entries must be present in
+	 * @param exclude	The samples the entries must be absent from
+	 * @return	The ordinals of the matching entries, in a BitSet the caller owns
+	 * @throws IllegalArgumentException	If a mask is not as long as the entries' codes
+	 */
+	public BitSet getEntriesWithSamples(GATKCode include, GATKCode exclude){
+		return getSampleBitmaps().query(include, exclude);
+	}
+	
+	/**
+	 * Function: getEntriesWithSamples(int[] include, int[] exclude)
+	 * Usage: BitSet ordinals = db.getEntriesWithSamples(new int[] {2, 5}, new int[] {0})
+	 * ----
+	 * Same as getEntriesWithSamples(GATKCode, GATKCode), with the
+	 * samples given by their 0-indexed positions.
+	 * 
+	 * @param include	The samples the entries must be present in
+	 * @param exclude	The samples the entries must be absent from
+	 * @return	The ordinals of the matching entries, in a BitSet the caller owns
+	 * @throws IndexOutOfBoundsException	If a sample is not one of the entries' samples
+	 */
+	public BitSet getEntriesWithSamples(int[] include, int[] exclude){
+		SampleBitmaps bitmaps = getSampleBitmaps();
+		return bitmaps.query(sampleMask(include, bitmaps.getNumSamples()), sampleMask(exclude, bitmaps.getNumSamples()));
+	}
+	
+	private synchronized SampleBitmaps getSampleBitmaps(){
+		if (sampleBitmaps == null || sampleBitmaps.size() != store.size()) sampleBitmaps = SampleBitmaps.build(store);
+		return sampleBitmaps;
+	}
+	
+	private static GATKCode sampleMask(int[] samples, int numSamples){
+		long[] words = new long[GATKCode.numWords(numSamples)];
+		for (int i = 0; i < samples.length; i++){
+			if (samples[i] < 0 || samples[i] >= numSamples) throw new IndexOutOfBoundsException("Sample: " + samples[i]);
+			words[samples[i] >>> 6] |= GATKCode.bitMask(samples[i]);
+		}
+		return GATKCode.fromWords(numSamples, words);
+	}
+	
+	/**
+	 * Function: getEntriesInRegion(Region region)
+	 * Usage: ArrayList<VCFEntry> entries = db.getEntriesInRegion(Region.parse("chr1:1000-2000"))
+	 * ----
+	 * Looks up the entries on the region's chromosome whose position is
+	 * within the region. The first region query builds a positional
+	 * index of the database; later ones only search it.
+	 * 
+	 * @param region	A chromosome and range of positions
+	 * @return	The entries in the region, sorted by position
+	 */
+	public ArrayList<VCFEntry> getEntriesInRegion(Region region){
+		int[] ordinals = getRegionIndex().find(region);
+		ArrayList<VCFEntry> list = new ArrayList<VCFEntry>(ordinals.length);
+		for (int i = 0; i < ordinals.length; i++){
+			list.add(store.get(ordinals[i]));
 		}
 		return list;
 	}
 	
+	/**
+	 * Function: getEntriesInRegions(Collection<Region> regions)
+	 * Usage: BitSet ordinals = db.getEntriesInRegions(regions)
+	 * ----
+	 * Finds the entries in any of the regions. The result can be
+	 * combined with that of getEntriesWithSamples.
+	 * 
+	 * @param regions	Chromosomes and ranges of positions; they may overlap
+	 * @return	The ordinals of the entries in the regions, in a BitSet the caller owns
+	 */
+	public BitSet getEntriesInRegions(Collection<Region> regions){
+		RegionIndex index = getRegionIndex();
+		BitSet result = new BitSet(index.size());
+		for (Region region : regions) index.mark(region, result);
+		return result;
+	}
+	
+	/**
+	 * Function: restrictTo(Collection<Region> regions)
+	 * Usage: VCFDatabase chr1 = db.restrictTo(Region.parseAll("chr1"))
+	 * ----
+	 * Makes a database of the entries in any of the regions, for
+	 * instance to build the tree of one chromosome or of a panel. The
+	 * entries are shared with this database, not copied or re-read,
+	 * and keep the order they were added in. The new database reports
+	 * this one's filter counts.
+	 * 
+	 * @param regions	Chromosomes and ranges of positions; they may overlap
+	 * @return	A new database holding the entries in the regions
+	 */
+	public VCFDatabase restrictTo(Collection<Region> regions){
+		BitSet ordinals = getEntriesInRegions(regions);
+		VCFDatabase db = new VCFDatabase(filterCounts);
+		for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) db.addEntry(store.get(i));
+		db.computeSumProbs(Runtime.getRuntime().availableProcessors());
+		return db;
+	}
+	
+	private synchronized RegionIndex getRegionIndex(){
+		if (regionIndex == null || regionIndex.size() != store.size()) regionIndex = RegionIndex.build(store);
+		return regionIndex;
+	}
+	
+	/**
+	 * Function: getEntries(BitSet ordinals)
+	 * Usage: ArrayList<VCFEntry> entries = db.getEntries(ordinals)
+	 * ----
+	 * @param ordinals	A set of entry ordinals, such as getEntriesWithSamples returns
+	 * @return	The entries whose ordinals are set, in the order they were added
+	 */
+	public ArrayList<VCFEntry> getEntries(BitSet ordinals){
+		ArrayList<VCFEntry> result = new ArrayList<VCFEntry>(ordinals.cardinality());
+		for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) result.add(store.get(i));
+		return result;
+	}
+	
 	/**
 	 * Function: getSortedEntriesByGATK(String inputCode, String destCode)
 	 * Usage: ArrayList<VCFEntry> entries = db.getSortedEntriesByGATK(inputCode, destCode)
 	 * ----
 	 * Returns all VCFEntries with matching GATK codes to inputCode in an ArrayList. 
 	 * The entries are sorted by how likely they are to be converted to destCode in 
-	 * ascending order.
+	 * ascending order: by the product of getSumProb over the samples where the codes
+	 * differ. Entries with the same probability stay in database order. The order
+	 * is computed once per pair of codes and kept until an entry is added.
 	 * 
 	 * @param inputCode	The GATK code that should match valid entries
 	 * @param destCode	The GATK code to convert inputCode into
@@ -121,106 +572,80 @@ public class VCFDatabase {
 	 * @return	A sorted ArrayList of VCFEntries
 	 */
 	public ArrayList<VCFEntry> getSortedEntriesByGATK(String inputCode, String destCode, PrintWriter pw){
-		ArrayList<VCFEntry> entryList = getEntriesByGATK(inputCode);
+		return toEntries(getSortedOrdinals(inputCode, destCode), Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Function: getTopEntriesByGATK(String inputCode, String destCode, int k)
+	 * Usage: ArrayList<VCFEntry> entries = db.getTopEntriesByGATK(inputCode, destCode, k)
+	 * ----
+	 * Returns the first k entries getSortedEntriesByGATK would return.
+	 * If that order has not been computed, only the best k are picked
+	 * out, with a heap, rather than sorting every entry of the code.
+	 * 
+	 * @param inputCode	The GATK code that should match valid entries
+	 * @param destCode	The GATK code to convert inputCode into
+	 * @param k	The number of entries wanted
+	 * @return	Up to k entries, the most likely to be converted first
+	 */
+	public ArrayList<VCFEntry> getTopEntriesByGATK(String inputCode, String destCode, int k){
+		int[] sorted;
+		synchronized (this){
+			sorted = sortedIndex.get(inputCode + " " + destCode);
+		}
+		if (sorted != null) return toEntries(sorted, k);
+		int[] ordinals = store.getOrdinals(new GATKCode(inputCode));
+		return toEntries(ProbabilityOrder.smallest(conversionKeys(ordinals, inputCode, destCode), ordinals, k), k);
+	}
+	
+	/**
+	 * Function: getSortedOrdinals(String inputCode, String destCode)
+	 * Usage: int[] sorted = getSortedOrdinals(inputCode, destCode)
+	 * ----
+	 * Returns the ordinals of inputCode's entries in getSortedEntriesByGATK
+	 * order, sorting them the first time the pair is asked for.
+	 */
+	private synchronized int[] getSortedOrdinals(String inputCode, String destCode){
+		String key = inputCode + " " + destCode;
+		int[] sorted = sortedIndex.get(key);
+		if (sorted == null){
+			int[] ordinals = store.getOrdinals(new GATKCode(inputCode));
+			sorted = ProbabilityOrder.sort(conversionKeys(ordinals, inputCode, destCode), ordinals);
+			sortedIndex.put(key, sorted);
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Function: conversionKeys(int[] ordinals, String inputCode, String destCode)
+	 * Usage: double[] keys = conversionKeys(ordinals, inputCode, destCode)
+	 * ----
+	 * Computes the sort key of each entry: the product of getSumProb over
+	 * the samples where the codes differ, or 0 if they do not differ.
+	 */
+	private double[] conversionKeys(int[] ordinals, String inputCode, String destCode){
+		computeSumProbs(1);
 		//index -> if 0 to 1
 		Map<Integer, Boolean> codeDifferenceMap = initCodeDiffMap(inputCode, destCode);
 		Set<Integer> mismatchIndices = new HashSet<Integer>(codeDifferenceMap.keySet());
-		ArrayList<MyEntry<Double, ArrayList<VCFEntry>>> probsToEntryMap = new ArrayList<MyEntry<Double, ArrayList<VCFEntry>>>();
-		for (VCFEntry entry: entryList){
+		double[] keys = new double[ordinals.length];
+		for (int i = 0; i < ordinals.length; i++){
 			double total = -1.0;
 			for (Integer index: mismatchIndices){
-				//boolean is0to1 = codeDifferenceMap.get(index);
-				double currProb = entry.getSumProb(index);
-				//if (codeDifferenceMap.get(index)) currProb = 1.0 - currProb;
+				double currProb = getSumProb(ordinals[i], index);
 				total = (total < 0.0 ? currProb : total * currProb);
 			}
 			if (total < 0.0) total = 0.0;
-			
-			if (entryListContainsKey(probsToEntryMap, total)) {
-				ArrayList<VCFEntry> currEntries = entryListGet(probsToEntryMap, total);
-				currEntries.add(entry);
-				entryListPut(probsToEntryMap, total, currEntries);
-				//probsToEntryMap.put(total, entry);
-			} else {
-				ArrayList<VCFEntry> newEntries = new ArrayList<VCFEntry>();
-				newEntries.add(entry);
-				entryListPut(probsToEntryMap, total, newEntries);
-			}
-		}
-		ArrayList<Double> probs = new ArrayList<Double>(new HashSet<Double>(entryListKeySet(probsToEntryMap)));
-		Collections.sort(probs);
-		//String divider = "-----\n";
-		//String outputStr = "Input: " + inputCode + " Dest: " + destCode + "\n";
-		//System.out.println(outputStr);
-		//pw.write(divider);
-		//pw.write(outputStr);
-		//pw.write(divider);
-		ArrayList<VCFEntry> sortedList = new ArrayList<VCFEntry>();
-		for (int i = 0; i < probs.size(); i++){
-			//sortedList.add(probsToEntryMap.get(probs.get(i)));
-			ArrayList<VCFEntry> newEntryList = entryListGet(probsToEntryMap, probs.get(i));
-			if (newEntryList.size() > 1){
-				newEntryList.size();
-			}
-			for(int j = 0; j < newEntryList.size(); j++){
-				sortedList.add(newEntryList.get(j));
-				//System.out.println(newEntryList.get(j).toString());
-			}
-//			if (i >= 25){
-//				System.out.println("Entries: " + i);
-//			}
-			//sortedList.addAll();
-			//String probLine = i+1 + ". " + "Prob: " + probs.get(i) + "\n";
-			//pw.write(probLine);
-			//System.out.println(probLine);
-			//VCFEntry entry = probsToEntryMap.get(probs.get(i));
-			//String entryLine = entry.getChromosome() + "\t" + entry.getPosition() + "\t" + "\n";
-			//pw.write(entryLine);
-			//System.out.println(entryLine);
-		}
-		//pw.close();
-		//System.out.println(sortedList.toString());
-		return sortedList;
-	}
-	
-	private ArrayList<Double> entryListKeySet(
-			ArrayList<MyEntry<Double, ArrayList<VCFEntry>>> probsToEntryMap) {
-		// TODO Auto-generated method stub
-		ArrayList<Double> newKeyList = new ArrayList<Double>();
-		for (MyEntry<Double, ArrayList<VCFEntry>> entry: probsToEntryMap){
-			newKeyList.add(entry.getKey());
+			keys[i] = total;
 		}
-		return newKeyList;
+		return keys;
 	}
-
-	private void entryListPut(
-			ArrayList<MyEntry<Double, ArrayList<VCFEntry>>> probsToEntryMap,
-			double total, ArrayList<VCFEntry> currEntries) {
-		MyEntry<Double, ArrayList<VCFEntry>> newEntry = new MyEntry<Double, ArrayList<VCFEntry>>(total, currEntries);
-		probsToEntryMap.add(newEntry);
-		// TODO Auto-generated method stub
-		
-	}
-
-	private ArrayList<VCFEntry> entryListGet(
-			ArrayList<MyEntry<Double, ArrayList<VCFEntry>>> probsToEntryMap,
-			double total) {
-		// TODO Auto-generated method stub
-		ArrayList<VCFEntry> returnList = new ArrayList<VCFEntry>();
-		for (MyEntry<Double, ArrayList<VCFEntry>> currEntry : probsToEntryMap){
-			//ArrayList<VCFEntry> currVCFEntries = currEntry.getValue();
-			if (currEntry.getKey().doubleValue() == (total)) returnList.addAll(currEntry.getValue());
-		}
-		return returnList;
-	}
-
-	private boolean entryListContainsKey(
-			ArrayList<MyEntry<Double, ArrayList<VCFEntry>>> probsToEntryMap,
-			double total) {
-		for (MyEntry<Double, ArrayList<VCFEntry>> currEntry: probsToEntryMap){
-			if (currEntry.getKey().equals(total)) return true;
-		}
-		return false;
+	
+	private ArrayList<VCFEntry> toEntries(int[] ordinals, int limit){
+		int count = Math.min(limit, ordinals.length);
+		ArrayList<VCFEntry> entries = new ArrayList<VCFEntry>(count);
+		for (int i = 0; i < count; i++) entries.add(store.get(ordinals[i]));
+		return entries;
 	}
 
 	/**
@@ -242,10 +667,11 @@ public class VCFDatabase {
 	 */
 	public int getValidEntries(String inputCode, String destCode, double editDistance, ArrayList<VCFEntry> validEntries, ArrayList<VCFEntry> failCodes, Integer totalMut){
 		//ArrayList<VCFEntry> entries = getSortedEntriesByGATK(inputCode, destCode, pw);
-		ArrayList<VCFEntry> entries = getEntriesByGATK(inputCode);
+		computeSumProbs(1);
+		int[] ordinals = store.getOrdinals(new GATKCode(inputCode));
 		//System.out.println("For code " + inputCode + " and dest " + destCode + " we found " + entries.size() + " entries.");
 		//System.out.println("For code " + inputCode + " we found " + entries.size() + " entries.");
-		if (totalMut != null) totalMut = entries.size();
+		if (totalMut != null) totalMut = ordinals.length;
 		//For each mismatch in an entry 
 		//boolean is0to1 = checkIf0to1(inputCode, destCode);
 		Map<Integer, Boolean> mismatchMap = new HashMap<Integer, Boolean>();
@@ -258,7 +684,7 @@ public class VCFDatabase {
 		boolean isAll0to1 = true;
 		for (Boolean is0to1 : mismatchMap.values()) if (!is0to1) isAll0to1 = false;
 		int counter = 0;
-		for (int i = 0; i < entries.size(); i++){
+		for (int i = 0; i < ordinals.length; i++){
 			//Note this currently only works for edit distance == 1
 			//WELL NOT ANYMORE!
 			//int sampleIndex = mismatchIndex(inputCode, destCode);
@@ -266,20 +692,20 @@ public class VCFDatabase {
 				//check each probability. If all pass, entries are valid
 				boolean canConvertAll = true;
 				for (Integer indexKey : mismatchMap.keySet()){
-					double indexProb = entries.get(i).getSumProb(indexKey);
+					double indexProb = getSumProb(ordinals[i], indexKey);
 					if (indexProb >= THRESHOLD){
 						canConvertAll = false;
-						failCodes.add(entries.get(i));
+						failCodes.add(store.get(ordinals[i]));
 						break;
 					}
 				}
 				if (canConvertAll){
 					counter++;
-					validEntries.add(entries.get(i));
+					validEntries.add(store.get(ordinals[i]));
 				}
 			} else {
 				//for (int j = entries.size() - 1; j >= 0; j--){
-				VCFEntry entry = entries.get(i);
+				VCFEntry entry = store.get(ordinals[i]);
 				failCodes.add(entry);
 				//}
 			}
@@ -348,6 +774,84 @@ public class VCFDatabase {
 		return counter;
 	}
 	
+	/**
+	 * Function: getValidEntrySets(String inputCode, Collection<String> destCodes)
+	 * Usage: ValidEntrySets sets = db.getValidEntrySets(inputCode, destCodes)
+	 * ----
+	 * Runs getValidEntries for inputCode and every code in destCodes in a
+	 * single pass over inputCode's entries. An entry's getSumProb for a
+	 * sample is looked up and compared to the threshold at most once,
+	 * however many destinations ask about that sample, and the results
+	 * come back as a valid and a failed BitSet per destination rather
+	 * than as lists of entries.
+	 * 
+	 * @param inputCode	The GATK code to convert
+	 * @param destCodes	The GATK codes to convert to
+	 * @return	The valid and failed entries for each destination code
+	 */
+	public ValidEntrySets getValidEntrySets(String inputCode, Collection<String> destCodes){
+		computeSumProbs(1);
+		int[] ordinals = store.getOrdinals(new GATKCode(inputCode));
+		Map<String, BitSet> validSets = new HashMap<String, BitSet>();
+		Map<String, BitSet> failedSets = new HashMap<String, BitSet>();
+		//The destinations reached by turning only 0s into 1s, and the samples each turns
+		ArrayList<BitSet> valid = new ArrayList<BitSet>();
+		ArrayList<BitSet> failed = new ArrayList<BitSet>();
+		ArrayList<int[]> mismatches = new ArrayList<int[]>();
+		for (String destCode : destCodes){
+			BitSet destValid = new BitSet(ordinals.length);
+			BitSet destFailed = new BitSet(ordinals.length);
+			validSets.put(destCode, destValid);
+			failedSets.put(destCode, destFailed);
+			int[] indices = getAll0to1Indices(inputCode, destCode);
+			if (indices == null){
+				//Any 1 -> 0 fails every entry
+				destFailed.set(0, ordinals.length);
+			} else {
+				valid.add(destValid);
+				failed.add(destFailed);
+				mismatches.add(indices);
+			}
+		}
+		//Per sample of the current entry: 0 if not yet tested, 1 if it passes, -1 if it fails
+		byte[] passes = new byte[inputCode.length()];
+		for (int i = 0; i < ordinals.length && !mismatches.isEmpty(); i++){
+			Arrays.fill(passes, (byte) 0);
+			for (int d = 0; d < mismatches.size(); d++){
+				boolean canConvertAll = true;
+				for (int index : mismatches.get(d)){
+					if (passes[index] == 0) passes[index] = (byte) (getSumProb(ordinals[i], index) >= THRESHOLD ? -1 : 1);
+					if (passes[index] < 0){
+						canConvertAll = false;
+						break;
+					}
+				}
+				if (canConvertAll) valid.get(d).set(i);
+				else failed.get(d).set(i);
+			}
+		}
+		return new ValidEntrySets(this, inputCode, ordinals, validSets, failedSets);
+	}
+	
+	/**
+	 * Function: getAll0to1Indices(String inputCode, String destCode)
+	 * Usage: int[] indices = getAll0to1Indices(inputCode, destCode)
+	 * ----
+	 * @return	The indices at which the codes differ, in ascending order, or
+	 * 			null if inputCode has a 1 at any of them
+	 */
+	private static int[] getAll0to1Indices(String inputCode, String destCode){
+		int[] indices = new int[inputCode.length()];
+		int count = 0;
+		for (int j = 0; j < inputCode.length(); j++){
+			if (inputCode.charAt(j) != destCode.charAt(j)){
+				if (inputCode.charAt(j) != '0') return null;
+				indices[count++] = j;
+			}
+		}
+		return Arrays.copyOf(indices, count);
+	}
+	
 	/**
 	 * Function: mismatchIndex(String inputCode, String destCode)
 	 * Usage: int index = mismatchIndex(inputCode, destCode)
@@ -422,42 +926,15 @@ public class VCFDatabase {
 	 * ----
 	 * Generates the matrix of GATK codes and mutation numbers needed
 	 * to build a phylogenetic tree. The matrix is written to 
-	 * the file specified by the path outputFile.
+	 * the file specified by the path outputFile. VCFConverter writes
+	 * the same matrix without building a database, and
+	 * new TreeChecker(db) reads it without writing it.
 	 * @param outputFile	The file which to write the matrix
 	 */
 	public void generateMatrix(String outputFile){
-		Map<String, Integer> GATKCounter = new HashMap<String, Integer>();
-		int codeLength = -1;
-		for (VCFEntry entry: database){
-			String code = entry.getGATK();
-			if (codeLength == -1) codeLength = code.length();
-			if (GATKCounter.containsKey(code)){
-				GATKCounter.put(code, GATKCounter.get(code) + 1);
-			} else {
-				GATKCounter.put(code, 1);
-			}
-		}
-		//Quick-fix to remove the entry for all 1's
-		String imposCode = "";
-		for (int i = 0; i < codeLength; i++){
-			imposCode += "1";
-		}
-		if (GATKCounter.containsKey(imposCode)) GATKCounter.remove(imposCode);
 		try {
 			PrintWriter pw = new PrintWriter(new FileWriter(outputFile));
-			int rows = GATKCounter.size();
-			int cols = database.get(0).getGATK().length();
-			pw.write(rows + " " + cols + "\n");
-			ArrayList<String> keySet = new ArrayList<String>(GATKCounter.keySet());
-			for (int i = 0; i < rows; i++){
-				String key = largestKey(keySet, GATKCounter);
-				if (i < rows - 1){
-					pw.write(key + " " + GATKCounter.get(key) + "\n");
-				} else {
-					pw.write(key + " " + GATKCounter.get(key));
-				}
-				keySet.remove(key);
-			}
+			VCFConverter.writeMatrix(pw, getCodeLength(), countCodes());
 			pw.close();
 		} catch (IOException e) {
 			//e.printStackTrace();
@@ -466,28 +943,31 @@ public class VCFDatabase {
 	}
 
 	/**
-	 * Function: largestKey(ArrayList<String> keySet, Map<String, Integer> GATKCounter)
-	 * Usage: String key = largestKey(keySet, GATKCounter)
+	 * Function: countCodes()
+	 * Usage: Map<GATKCode, int[]> counts = db.countCodes()
 	 * ----
-	 * Finds the largest key in the map. The keySet may only be a subset of the keys in
-	 * GATKCounter. This function is generally used to sort the map.
-	 * @param keySet	The remaining keys to sort
-	 * @param GATKCounter	The map of GATK codes to mutation numbers
-	 * @return	The largest key that is in keySet
+	 * Counts the entries of each GATK code, the counts the matrix of
+	 * generateMatrix is made of.
+	 * 
+	 * @return	The number of entries of each code, in the first cell of its array
 	 */
-	private String largestKey(ArrayList<String> keySet,
-			Map<String, Integer> GATKCounter) {
-		// TODO Auto-generated method stub
-		int maxCount = 0;
-		String topKey = "";
-		for (String key: keySet){
-			int currCount = Integer.parseInt(key, 2);
-			if (currCount > maxCount){
-				topKey = key;
-				maxCount = currCount;
-			}
+	public Map<GATKCode, int[]> countCodes(){
+		//The store already counts its entries by code
+		Map<GATKCode, int[]> GATKCounter = new HashMap<GATKCode, int[]>();
+		for (GATKCode code: store.getCodes()){
+			GATKCounter.put(code, new int[] {store.count(code)});
 		}
-		return topKey;
+		return GATKCounter;
+	}
+	
+	/**
+	 * Function: getCodeLength()
+	 * Usage: int cols = db.getCodeLength()
+	 * ----
+	 * @return	The length of the entries' GATK codes, or 0 if there are no entries
+	 */
+	public int getCodeLength(){
+		return store.size() == 0 ? 0 : store.get(0).getGATK().length();
 	}
 
 	public void generateGATKFile(String outputFile) {
@@ -499,8 +979,8 @@ public class VCFDatabase {
 		}
 		String header = "Chromosome\tLocation\tGATK\n";
 		pw.print(header);
-		for (int i = 0; i < database.size(); i++){
-			VCFEntry entry = database.get(i);
+		for (int i = 0; i < store.size(); i++){
+			VCFEntry entry = store.get(i);
 			String outputStr = entry.getChromosome() + "\t" + entry.getPosition() + "\t" + entry.getGATK() + "\n";
 			pw.print(outputStr);
 		}
@@ -508,33 +988,56 @@ public class VCFDatabase {
 		// TODO Auto-generated method stub
 	}
 	
-	//Taken from StackOverflow
-	//http://stackoverflow.com/questions/3110547/java-how-to-create-new-entry-key-value
-	final class MyEntry<K, V> implements Map.Entry<K, V> {
-	    private final K key;
-	    private V value;
-
-	    public MyEntry(K key, V value) {
-	        this.key = key;
-	        this.value = value;
-	    }
-
-	    @Override
-	    public K getKey() {
-	        return key;
-	    }
-
-	    @Override
-	    public V getValue() {
-	        return value;
-	    }
-
-	    @Override
-	    public V setValue(V value) {
-	        V old = this.value;
-	        this.value = value;
-	        return old;
-	    }
+	/**
+	 * Class: SumProbTask
+	 * Constructor: SumProbTask(EntryStore store, double[] sumProbs, int width, int from, int to)
+	 * ----
+	 * Fills the probability matrix rows of the entries in [from, to),
+	 * splitting the range in half until SUM_PROB_ROWS_PER_TASK rows are left.
+	 */
+	private static class SumProbTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		private final EntryStore store;
+		private final double[] sumProbs;
+		private final int width;
+		private final int from;
+		private final int to;
+		
+		SumProbTask(EntryStore store, double[] sumProbs, int width, int from, int to){
+			this.store = store;
+			this.sumProbs = sumProbs;
+			this.width = width;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected void compute(){
+			if (to - from <= SUM_PROB_ROWS_PER_TASK){
+				fill();
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SumProbTask(store, sumProbs, width, from, mid), new SumProbTask(store, sumProbs, width, mid, to));
+		}
+		
+		void fill(){
+			for (int ordinal = from; ordinal < to; ordinal++){
+				VCFEntry entry = store.get(ordinal);
+				int row = ordinal * width;
+				for (int sample = 0; sample < width; sample++){
+					if (entry.getNumSamples() != width){
+						sumProbs[row + sample] = Double.NaN;
+						continue;
+					}
+					try {
+						sumProbs[row + sample] = entry.getSumProb(sample);
+					} catch (NumberFormatException e){
+						sumProbs[row + sample] = Double.NaN;
+					}
+				}
+			}
+		}
 	}
 
 }
@@ -1,31 +1,63 @@
 /**
  * Class: VCFEntry
- * Constructor: VCFEntry(String entry)
+ * Constructor: VCFEntry(String entry), VCFEntry(VCFTokenizer tokenizer),
+ *              VCFEntry(VCFTokenizer tokenizer, RecordLayout layout)
  * ----
  * This class represents a particular VCF entry from a 
  * VCF file. Note that all samples are 0-indexed.
+ * 
+ * An entry does not split its line into Strings. It keeps the
+ * bytes of the line (usually a region of a memory-mapped file) and
+ * the offsets of each tab-delimited field, and only decodes a field
+ * when it is asked for. The GT, AD and DP values of every sample
+ * are the exception: they are decoded once, when the entry is
+ * built, into primitive arrays so that the per-sample getters are
+ * plain array reads. They are found wherever the record's FORMAT
+ * column puts them (see FormatLayout), not only in GATK's GT:AD:DP
+ * order. The entry's GATK code is packed into a
+ * GATKCode at the same time, the chromosome is replaced by its
+ * Chromosomes id and the position is parsed into an int.
+ * 
+ * How much of the line itself is kept depends on the entry's
+ * RecordLayout.
  */
 package jPhyTree;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class VCFEntry {
 	
 	
 	/* Private Instance Variables */
 	private static final double BASE_ERROR = VCFConstants.BASE_ERROR;
+	private static final BinomialTail SUM_PROB = BinomialTail.forErrorRate(BASE_ERROR);
 	private static final double THRESHOLD = VCFConstants.THRESHOLD;
-	private String raw;
-	private String chrom;
-	private String pos;
-	private String id;
+	private static final int FIRST_SAMPLE = 9;
+	private static final int MISSING = -1;
+	
+	/* Genotype codes returned by getGenotypeCode */
+	public static final byte GT_HOM_REF = 0;
+	public static final byte GT_HET = 1;
+	public static final byte GT_HOM_ALT = 2;
+	public static final byte GT_MISSING = 3;
+	public static final byte GT_OTHER = 4;
+	
+	private ByteBuffer source;
+	private int[] fieldStarts;
+	private int lineStart;
+	private int lineEnd;
+	private int chromosome;
+	private int position;
 	private char ref;
 	private char alt;
 	private Double qual;
-	private String filter;
-	private String info;
-	private String format;
-	private ArrayList<String> alleleFreqList;
+	private byte[] genotypes;
+	/* The AD reference depths of all samples, then the AD alternate depths, then DP */
+	private int[] depths;
+	private GATKCode code;
+	/* Where GT, AD and DP sit in the sample columns; found from the line when first needed */
+	private FormatLayout format;
 	
 	/**
 	 * Function: VCFEntry(String entry)
@@ -37,45 +69,302 @@ public class VCFEntry {
 	 * 
 	 */
 	public VCFEntry(String entry){
-		raw = entry;
-		alleleFreqList = new ArrayList<String>();
-		String[] entryParts = entry.split("\t");
-		for (int i = 0; i < entryParts.length; i++){
-			switch(i){
-			case 0:
-				chrom = entryParts[i];
-				break;
-			case 1:
-				pos = entryParts[i];
-				break;
-			case 2:
-				id = entryParts[i];
-				break;
-			case 3:
-				ref = entryParts[i].charAt(0);
-				break;
-			case 4:
-				alt = entryParts[i].charAt(0);
-				break;
-			case 5:
-				qual = Double.valueOf(entryParts[i]);
-				break;
-			case 6:
-				filter = entryParts[i];
-				break;
-			case 7:
-				info = entryParts[i];
-				break;
-			case 8:
-				format = entryParts[i];
-				break;
-			default:
-				alleleFreqList.add(entryParts[i]);
-				break;
+		this(lineTokenizer(entry));
+	}
+	
+	/**
+	 * Function: VCFEntry(VCFTokenizer tokenizer)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a new VCFEntry from the record the tokenizer is currently
+	 * positioned on. The entry refers to the tokenizer's buffer instead
+	 * of copying the line.
+	 * 
+	 * @param tokenizer	A tokenizer whose last call to nextRecord() returned true
+	 */
+	public VCFEntry(VCFTokenizer tokenizer){
+		this(tokenizer, RecordLayout.FULL);
+	}
+	
+	/**
+	 * Function: VCFEntry(VCFTokenizer tokenizer, RecordLayout layout)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a new VCFEntry from the record the tokenizer is currently
+	 * positioned on, keeping as much of the line as the layout asks for.
+	 * 
+	 * @param tokenizer	A tokenizer whose last call to nextRecord() returned true
+	 * @param layout	How much of the line to keep
+	 * @throws NumberFormatException	If a compact layout is asked for and the POS field is not a number
+	 */
+	public VCFEntry(VCFTokenizer tokenizer, RecordLayout layout){
+		source = tokenizer.getBuffer();
+		fieldStarts = tokenizer.copyFieldStarts();
+		lineStart = tokenizer.getLineStart();
+		lineEnd = tokenizer.getLineEnd();
+		format = tokenizer.getFormatLayout();
+		decodeFields(tokenizer.chromosomeHint, layout != RecordLayout.FULL);
+		tokenizer.chromosomeHint = chromosome;
+		if (layout != RecordLayout.FULL) fieldStarts = null;
+		if (layout == RecordLayout.COMPACT_NO_RAW) source = null;
+	}
+	
+	/**
+	 * Function: VCFEntry(ByteBuffer source, int[] fieldStarts, int lineEnd, byte[] genotypes,
+	 * 			int[] depths, GATKCode code)
+	 * Usage: (Constructor)
+	 * ----
+	 * Recreates a FULL entry whose samples were decoded earlier, as when
+	 * a VCFSnapshot is reloaded. The arrays are taken over by the entry.
+	 * 
+	 * @param source	The buffer holding the line
+	 * @param fieldStarts	The field offsets of the line, including the trailing sentinel
+	 * @param lineEnd	The offset just past the line's last byte
+	 * @param genotypes	The GT_ code of each sample
+	 * @param depths	The AD reference depths of all samples, then the AD
+	 * 					alternate depths, then the read depths
+	 * @param code	The entry's GATK code
+	 */
+	VCFEntry(ByteBuffer source, int[] fieldStarts, int lineEnd, byte[] genotypes, int[] depths, GATKCode code){
+		this.source = source;
+		this.fieldStarts = fieldStarts;
+		this.lineStart = fieldStarts[0];
+		this.lineEnd = lineEnd;
+		this.genotypes = genotypes;
+		this.depths = depths;
+		this.code = code;
+		readSiteFields(-1, false);
+	}
+	
+	/**
+	 * Function: VCFEntry(int chromosome, int position, char ref, char alt, byte[] genotypes,
+	 * 			int[] depths, GATKCode code)
+	 * Usage: (Constructor)
+	 * ----
+	 * Recreates a COMPACT_NO_RAW entry from its decoded fields, as when
+	 * a MappedEntryStore reads one back from its slot. The arrays are
+	 * taken over by the entry.
+	 * 
+	 * @param chromosome	The Chromosomes id of the entry's chromosome
+	 * @param position	The position
+	 * @param ref	The reference allele
+	 * @param alt	The alternate allele
+	 * @param genotypes	The GT_ code of each sample
+	 * @param depths	The AD reference depths of all samples, then the AD
+	 * 					alternate depths, then the read depths
+	 * @param code	The entry's GATK code
+	 */
+	VCFEntry(int chromosome, int position, char ref, char alt, byte[] genotypes, int[] depths, GATKCode code){
+		this.chromosome = chromosome;
+		this.position = position;
+		this.ref = ref;
+		this.alt = alt;
+		this.genotypes = genotypes;
+		this.depths = depths;
+		this.code = code;
+	}
+	
+	/**
+	 * Function: decodeFields(int chromosomeHint, boolean strictPosition)
+	 * Usage: decodeFields(chromosomeHint, strictPosition)
+	 * ----
+	 * Decodes everything the entry keeps from its line: the site
+	 * fields and the GT, AD and DP values of every sample.
+	 */
+	private void decodeFields(int chromosomeHint, boolean strictPosition){
+		readSiteFields(chromosomeHint, strictPosition);
+		decodeSamples();
+	}
+	
+	/**
+	 * Function: readSiteFields(int chromosomeHint, boolean strictPosition)
+	 * Usage: readSiteFields(chromosomeHint, strictPosition)
+	 * ----
+	 * Reads the chromosome id, position and alleles from the line.
+	 * 
+	 * @param chromosomeHint	The chromosome id of the previous record, or -1
+	 * @param strictPosition	true to fail if POS is not a number, as the
+	 * 							compact layouts cannot fall back to the line
+	 */
+	private void readSiteFields(int chromosomeHint, boolean strictPosition){
+		chromosome = Chromosomes.intern(source, fieldStarts[0], fieldStarts[1] - 1, chromosomeHint);
+		if (strictPosition) position = VCFTokenizer.parseInt(source, fieldStarts[1], fieldStarts[2] - 1);
+		else position = parseNumber(fieldStarts[1], fieldStarts[2] - 1);
+		ref = (char) (source.get(fieldStarts[3]) & 0xff);
+		alt = (char) (source.get(fieldStarts[4]) & 0xff);
+	}
+	
+	/**
+	 * Function: decodeSamples()
+	 * Usage: decodeSamples()
+	 * ----
+	 * Decodes the GT, AD and DP values of every sample column into the
+	 * genotype, allele depth and read depth arrays, walking each column
+	 * once up to the last of the three in the entry's FORMAT layout.
+	 * Values that are absent or not numbers are stored as MISSING; a
+	 * sample without a GT value is GT_OTHER.
+	 */
+	private void decodeSamples(){
+		int numSamples = Math.max(0, fieldStarts.length - 1 - FIRST_SAMPLE);
+		int gt = format.getGenotypeIndex();
+		int ad = format.getAlleleDepthIndex();
+		int dp = format.getReadDepthIndex();
+		int last = Math.max(gt, Math.max(ad, dp));
+		genotypes = new byte[numSamples];
+		depths = new int[3 * numSamples];
+		Arrays.fill(depths, MISSING);
+		long[] codeWords = new long[GATKCode.numWords(numSamples)];
+		for (int i = 0; i < numSamples; i++){
+			int start = fieldStarts[FIRST_SAMPLE + i];
+			int end = fieldStarts[FIRST_SAMPLE + i + 1] - 1;
+			genotypes[i] = GT_OTHER;
+			int valueStart = start;
+			for (int key = 0; key <= last && valueStart <= end; key++){
+				int valueEnd = FormatLayout.valueEnd(source, valueStart, end);
+				if (key == gt){
+					genotypes[i] = genotypeCode(start, valueStart, valueEnd, end);
+				} else if (key == ad){
+					int comma = VCFTokenizer.indexOf(source, valueStart, valueEnd, (byte) ',');
+					depths[i] = parseNumber(valueStart, comma);
+					if (comma < valueEnd) depths[numSamples + i] = parseNumber(comma + 1, VCFTokenizer.indexOf(source, comma + 1, valueEnd, (byte) ','));
+				} else if (key == dp){
+					depths[2 * numSamples + i] = parseNumber(valueStart, valueEnd);
+				}
+				valueStart = valueEnd + 1;
 			}
+			if (genotypes[i] != GT_HOM_REF) codeWords[i >>> 6] |= GATKCode.bitMask(i);
+		}
+		code = GATKCode.fromWords(numSamples, codeWords);
+	}
+	
+	/**
+	 * Function: genotypeCode(int start, int gtStart, int gtEnd, int end)
+	 * Usage: byte code = genotypeCode(start, gtStart, gtEnd, end)
+	 * ----
+	 * Classifies the GT value of a sample column. GT_MISSING is only
+	 * used when the whole column is "./.", which is how GATK writes
+	 * a sample it could not call.
+	 * 
+	 * @param start	Offset of the sample column
+	 * @param gtStart	Offset of the GT value
+	 * @param gtEnd	Offset just past the GT value
+	 * @param end	Offset just past the sample column
+	 * @return	One of the GT_ codes
+	 */
+	private byte genotypeCode(int start, int gtStart, int gtEnd, int end){
+		if (gtEnd - gtStart != 3 || source.get(gtStart + 1) != '/') return GT_OTHER;
+		byte first = source.get(gtStart);
+		byte second = source.get(gtStart + 2);
+		if (first == '0' && second == '0') return GT_HOM_REF;
+		if (first == '0' && second == '1') return GT_HET;
+		if (first == '1' && second == '1') return GT_HOM_ALT;
+		if (first == '.' && second == '.' && gtStart == start && gtEnd == end) return GT_MISSING;
+		return GT_OTHER;
+	}
+	
+	/**
+	 * Function: parseNumber(int start, int end)
+	 * Usage: int depth = parseNumber(start, end)
+	 * ----
+	 * @param start	Offset of the first digit
+	 * @param end	Offset just past the last digit
+	 * @return	The value, or MISSING if the range is not a number
+	 */
+	private int parseNumber(int start, int end){
+		try {
+			return VCFTokenizer.parseInt(source, start, end);
+		} catch (NumberFormatException e){
+			return MISSING;
 		}
 	}
 	
+	/**
+	 * Function: checkDepth(int depth, int sample, String name)
+	 * Usage: return checkDepth(getRawReadDepth(sample), sample, "DP")
+	 * ----
+	 * Returns a decoded depth, failing the same way parsing the
+	 * column would have if the value was absent.
+	 */
+	private static int checkDepth(int depth, int sample, String name){
+		if (depth == MISSING) throw new NumberFormatException("No " + name + " value for sample " + sample);
+		return depth;
+	}
+	
+	/**
+	 * Function: lineTokenizer(String entry)
+	 * Usage: VCFTokenizer tokenizer = lineTokenizer(entry)
+	 * ----
+	 * Wraps a single VCF line in a tokenizer positioned on that line.
+	 * 
+	 * @param entry	The VCF entry line as a string
+	 * @return	A tokenizer whose current record is the line
+	 */
+	private static VCFTokenizer lineTokenizer(String entry){
+		VCFTokenizer tokenizer = new VCFTokenizer(ByteBuffer.wrap(entry.getBytes(VCFTokenizer.CHARSET)));
+		if (!tokenizer.nextRecord()) throw new IllegalArgumentException("Not a VCF record: " + entry);
+		return tokenizer;
+	}
+	
+	/* Raw state, read by VCFSnapshot and MappedEntryStore. None of the arrays may be changed. */
+	ByteBuffer getSource(){
+		return source;
+	}
+	
+	int getLineStart(){
+		return lineStart;
+	}
+	
+	int getLineEnd(){
+		return lineEnd;
+	}
+	
+	int getRefDepth(int sample){
+		return depths[sample];
+	}
+	
+	int getAltDepth(int sample){
+		return depths[genotypes.length + sample];
+	}
+	
+	int getRawReadDepth(int sample){
+		return depths[2 * genotypes.length + sample];
+	}
+	
+	/**
+	 * Function: getFieldStarts()
+	 * Usage: int[] starts = getFieldStarts()
+	 * ----
+	 * Returns the field offsets of the line, finding them again if the
+	 * entry's layout does not keep them.
+	 * 
+	 * @return	The absolute offsets of every field, plus the trailing sentinel
+	 * @throws IllegalStateException	If the entry does not keep its line
+	 */
+	int[] getFieldStarts(){
+		if (fieldStarts != null) return fieldStarts;
+		if (source == null) throw new IllegalStateException("The line of this entry was not kept");
+		ByteBuffer line = source.duplicate();
+		line.limit(lineEnd);
+		line.position(lineStart);
+		VCFTokenizer tokenizer = new VCFTokenizer(line);
+		tokenizer.nextRecord();
+		return tokenizer.copyFieldStarts();
+	}
+	
+	/**
+	 * Function: getField(int field)
+	 * Usage: String value = getField(field)
+	 * ----
+	 * Decodes one tab-delimited field of the line.
+	 * 
+	 * @param field	The 0-indexed column of the line
+	 * @return	The column as a String
+	 */
+	private String getField(int field){
+		int[] starts = getFieldStarts();
+		return VCFTokenizer.decode(source, starts[field], starts[field + 1] - 1);
+	}
+	
 	/**
 	 * Function: getChromosome()
 	 * Usage: String chrom = entry.getChromosome()
@@ -85,18 +374,44 @@ public class VCFEntry {
 	 * @return	The chrom as a string
 	 */
 	public String getChromosome(){
-		return chrom;
+		return Chromosomes.name(chromosome);
+	}
+	
+	/**
+	 * Function: getChromosomeId()
+	 * Usage: int chromId = entry.getChromosomeId()
+	 * ----
+	 * Returns the chromosome of the entry as its Chromosomes id
+	 * 
+	 * @return	The chrom's id
+	 */
+	public int getChromosomeId(){
+		return chromosome;
 	}
 	
 	/**
 	 * Function: getPosition()
 	 * Usage: String pos = entry.getPos()
 	 * ----
-	 * Returns the position of the entry as a string
-	 * @return
+	 * Returns the position of the entry as a string. Entries that
+	 * keep their field offsets return the POS field exactly as it was
+	 * written; the compact layouts format the parsed number.
+	 * @return	The position as a string
 	 */
 	public String getPosition(){
-		return pos;
+		if (fieldStarts == null) return Integer.toString(position);
+		return getField(1);
+	}
+	
+	/**
+	 * Function: getPositionValue()
+	 * Usage: int pos = entry.getPositionValue()
+	 * ----
+	 * Returns the position of the entry as a number
+	 * @return	The position, or -1 if the POS field was not a number
+	 */
+	public int getPositionValue(){
+		return position;
 	}
 	
 	/**
@@ -132,6 +447,7 @@ public class VCFEntry {
 	 * @return the quality as a double
 	 */
 	public double getQuality(){
+		if (qual == null) qual = Double.valueOf(getField(5));
 		return qual;
 	}
 	
@@ -144,7 +460,7 @@ public class VCFEntry {
 	 * @return the filter as a String
 	 */
 	public String getFilter(){
-		return filter;
+		return getField(6);
 	}
 	
 	/**
@@ -156,7 +472,7 @@ public class VCFEntry {
 	 * @return the info column as a String
 	 */
 	public String getInfo(){
-		return info;
+		return getField(7);
 	}
 	
 	/**
@@ -168,7 +484,7 @@ public class VCFEntry {
 	 * @return the format column as a String
 	 */
 	public String getFormat(){
-		return format;
+		return getField(8);
 	}
 	
 	/**
@@ -180,7 +496,7 @@ public class VCFEntry {
 	 * @return	number of samples in the entry
 	 */
 	public int getNumSamples(){
-		return alleleFreqList.size();
+		return genotypes.length;
 	}
 	
 	/**
@@ -194,22 +510,46 @@ public class VCFEntry {
 	 * @return	the raw allele frequency of the sample of the entry as a String
 	 */
 	public String getAlleleFreq(int sample){
-		return alleleFreqList.get(sample);
+		if (sample < 0 || sample >= getNumSamples()) throw new IndexOutOfBoundsException("Sample: " + sample);
+		return getField(FIRST_SAMPLE + sample);
 	}
 	
 	/**
-	 * Function: getFreqParts(int sample)
-	 * Usage: String[] freqArray = entry.getFreqParts(sample)
+	 * Function: getValue(int sample, int key)
+	 * Usage: String ad = getValue(sample, getFormatLayout().getAlleleDepthIndex())
 	 * ----
-	 * Returns an array of Strings which represent components
-	 * from the frequency parts of the allele frequency. This is the same
-	 * as the getAlleleFreq function, only splitting the string by ":"
-	 * as a delimiter.
+	 * Returns one value of a sample column, as its FORMAT layout places it.
 	 * @param sample	the particular sample wanted from the entry
-	 * @return	the raw allele frequency of the sample of the entry as a String
+	 * @param key	the position of the value's key among the FORMAT keys
+	 * @return	the value as a String, or null if the sample has none
+	 */
+	private String getValue(int sample, int key){
+		return FormatLayout.value(getAlleleFreq(sample), key);
+	}
+	
+	/**
+	 * Function: getFormatLayout()
+	 * Usage: FormatLayout layout = getFormatLayout()
+	 * ----
+	 * @return	the layout of the entry's FORMAT column
+	 */
+	private FormatLayout getFormatLayout(){
+		if (format == null) format = FormatLayout.forFormat(getFormat());
+		return format;
+	}
+	
+	/**
+	 * Function: getAlleleDepths(int sample)
+	 * Usage: String counts = getAlleleDepths(sample)
+	 * ----
+	 * @param sample	the particular sample from the entry
+	 * @return	the AD value of the sample
+	 * @throws NumberFormatException	If the sample has no AD value
 	 */
-	private String[] getFreqParts(int sample){
-		return alleleFreqList.get(sample).split(":");
+	private String getAlleleDepths(int sample){
+		String counts = getValue(sample, getFormatLayout().getAlleleDepthIndex());
+		if (counts == null) throw new NumberFormatException("No AD value for sample " + sample);
+		return counts;
 	}
 	
 	/**
@@ -222,8 +562,7 @@ public class VCFEntry {
 	 * @return 	the major and minor allele of the sample of the entry as a String
 	 */
 	public String getAlleleCount(int sample){
-		String[] freqParts = getFreqParts(sample);
-		return freqParts[1];
+		return getAlleleDepths(sample);
 	}
 	
 	/**
@@ -238,8 +577,9 @@ public class VCFEntry {
 	 * @return	the major or minor allele count as an int
 	 */
 	public int getAlleleCount(int sample, int index){
-		String[] freqParts = getFreqParts(sample);
-		String[] alleleDepths = freqParts[1].split(",");
+		if (index == 0) return checkDepth(getRefDepth(sample), sample, "AD");
+		if (index == 1) return checkDepth(getAltDepth(sample), sample, "AD");
+		String[] alleleDepths = getAlleleDepths(sample).split(",");
 		return Integer.parseInt(alleleDepths[index]);
 	}
 	
@@ -252,8 +592,7 @@ public class VCFEntry {
 	 * @return	the depth of a sample of the entry as an int
 	 */
 	public int getReadDepth(int sample){
-		String[] freqParts = getFreqParts(sample);
-		return Integer.parseInt(freqParts[2]);
+		return checkDepth(getRawReadDepth(sample), sample, "DP");
 	}
 	
 	/**
@@ -266,13 +605,37 @@ public class VCFEntry {
 	 * @return	the genotype of the sample of the entry as a string
 	 */
 	public String getGenotype(int sample){
-		String[] freqParts = getFreqParts(sample);
-		return freqParts[0];
+		switch (genotypes[sample]){
+		case GT_HOM_REF:
+			return "0/0";
+		case GT_HET:
+			return "0/1";
+		case GT_HOM_ALT:
+			return "1/1";
+		case GT_MISSING:
+			return "./.";
+		default:
+			String genotype = getValue(sample, getFormatLayout().getGenotypeIndex());
+			return genotype == null ? "." : genotype;
+		}
 	}
 	
 	/**
-	 * Function: getGATK(int sample)
-	 * Usage: String gatk = entry.getGATK(sample)
+	 * Function: getGenotypeCode(int sample)
+	 * Usage: byte code = entry.getGenotypeCode(sample)
+	 * ----
+	 * Returns the genotype of a sample as one of the GT_ constants.
+	 * GT_MISSING means the whole sample column was "./.".
+	 * @param sample	the particular sample from the entry
+	 * @return	the genotype code of the sample
+	 */
+	public byte getGenotypeCode(int sample){
+		return genotypes[sample];
+	}
+	
+	/**
+	 * Function: getGATK()
+	 * Usage: String gatk = entry.getGATK()
 	 * ----
 	 * Returns the GATK code for a sample. The GATK code is
 	 * found by checking whether the genotype is equivalent to "0/0"
@@ -283,12 +646,19 @@ public class VCFEntry {
 	 * @return	The GATK code for an entry as a string
 	 */
 	public String getGATK(){
-		String result = "";
-		for (int i = 0; i < alleleFreqList.size(); i++){
-			if (getGenotype(i).equals("0/0")) result += "0";
-			else result += "1";
-		}
-		return result;
+		return code.toString();
+	}
+	
+	/**
+	 * Function: getGATKCode()
+	 * Usage: GATKCode code = entry.getGATKCode()
+	 * ----
+	 * Returns the packed form of getGATK(). The code is computed
+	 * once, when the entry is built.
+	 * @return	The GATK code for an entry as a GATKCode
+	 */
+	public GATKCode getGATKCode(){
+		return code;
 	}
 
 // -------Old Probability Formula-------
@@ -307,7 +677,8 @@ public class VCFEntry {
 	 * was called correctly by GATK. This part of the function
 	 * handles the sigma and adding up all the individual
 	 * probabilities from the read depth to the minor allele
-	 * count.
+	 * count. The sums are computed in log space and memoized by
+	 * a BinomialTail, so entries with the same counts share them.
 	 * 
 	 * @param sample	The particular sample of the entry
 	 * @return	The summed probability of a read being correct as a double
@@ -315,63 +686,22 @@ public class VCFEntry {
 	public double getSumProb(int sample){
 		int a = getAlleleCount(sample, 1);
 		int d = getReadDepth(sample);
-		double total = 0.0;
-		for (int i = d; i >= a; i--){
-			total += getProb(sample, d, i);
-		}
-		return total;
-	}
-	
-	/**
-	 * Function: getProb(int sample, int d, int k)
-	 * Usage: double prob = entry.getProb(sample, d, k)
-	 * ----
-	 * This function calculates the probability of a sample
-	 * being called incorrectly. Is used by getSumProb (which
-	 * acts as a wrapper).
-	 * 
-	 * @param sample	The particular sample of the entry
-	 * @param d			The allele depth of the sample
-	 * @param k			The minor allele count
-	 * @return	The probability as a double
-	 */
-	private double getProb(int sample, int d, int k){
-		return nCr(d, k) * Math.pow(BASE_ERROR / 4.0, k) * Math.pow((1 - BASE_ERROR), d - k);
+		return SUM_PROB.upperTail(a, d);
 	}
 	
-	/**
-	 * Function: nCr(int n, int k)
-	 * Usage: double result = entry.nCr(n, k)
-	 * ----
-	 * This calculates the result of "n choose k". In other words, 
-	 * it returns the number of combinations to choose k from 
-	 * n objects.
-	 * @param n	The number of total objects
-	 * @param k	How many objects chosen
-	 * @return	n choose k as a double
-	 */
-	private double nCr(int n, int k) {
-	    if (k < 0 || k > n) return 0;
-	    if (k > n/2) k = n - k;
-	    double denominator = 1.0, numerator = 1.0;
-	    for (int i = 1; i <= k; i++) {
-	        denominator *= i;
-	        numerator *= (n + 1 - i);
-	    }
-	    return numerator / denominator;
-	}
-
 	/**
 	 * Function: toString()
 	 * Usage: String rawEntry = entry.toString()
 	 * ----
 	 * Returns the VCF entry in string form.
-	 * This is the same argument that was input
-	 * into the constructor of the class.
+	 * This is the same line that was input
+	 * into the constructor of the class, without
+	 * its line terminator.
 	 * 
 	 * @return	The raw VCF entry as a string
 	 */
 	public String toString(){
-		return raw;
+		if (source == null) throw new IllegalStateException("The line of this entry was not kept");
+		return VCFTokenizer.decode(source, lineStart, lineEnd);
 	}
 }
@@ -0,0 +1,347 @@
+/**
+ * Class: VCFLoader
+ * Constructor: None
+ * ----
+ * Parses and filters the records of a VCF in parallel. The input is
+ * cut into chunks on line boundaries, the chunks are parsed by a
+ * ForkJoinPool, and the surviving entries of each chunk are added to
+ * the database in file order so that the result is the same as a
+ * single-threaded pass would produce. Chunks are parsed a few per
+ * thread at a time, and each wave's entries are handed to the
+ * database before the next wave starts, so an off-heap database
+ * never holds more than one wave of entries on the heap. Compressed
+ * and streamed input is read a wave at a time as well, so neither
+ * is ever held on the heap whole.
+ *
+ * Records are filtered before they are decoded. The checks run on
+ * the raw bytes of the sample columns, cheapest first, and only the
+ * records that pass all of them are turned into VCFEntries.
+ */
+package jPhyTree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+class VCFLoader {
+
+	/* Verdicts returned by classify */
+	static final int PASSED = 0;
+	static final int MISSING = 1;
+	static final int GERMLINE = 2;
+	static final int LOW_COVERAGE = 3;
+
+	/* Private Constants */
+	private static final double COVERAGE = VCFConstants.COVERAGE;
+	private static final int FIRST_SAMPLE = 9;
+	private static final int MIN_CHUNK_SIZE = 1 << 18;
+	private static final int MAX_CHUNK_SIZE = 1 << 22;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private VCFLoader(){}
+
+	/**
+	 * Function: load(String fileName, int numThreads, RecordLayout layout, VCFDatabase db)
+	 * Usage: VCFLoader.load(fileName, numThreads, layout, db)
+	 * ----
+	 * Loads a VCF given by its path. Plain text files are memory-mapped.
+	 * gzip and BGZF files are inflated a wave of blocks at a time by a
+	 * BGZFReader, and "-", for standard input, and named pipes are read
+	 * as they are written; both are parsed by loadStream.
+	 *
+	 * @param fileName	The path of the VCF, compressed or not, or "-"
+	 * @param numThreads	The number of threads to parse with
+	 * @param layout	How much of each line the entries keep
+	 * @param db	The database to fill
+	 * @throws IOException	If the file cannot be read
+	 */
+	static void load(String fileName, int numThreads, RecordLayout layout, VCFDatabase db) throws IOException {
+		boolean stream = VCFStreamReader.isStream(fileName);
+		if (!stream && !BGZFReader.isGzip(fileName)){
+			load(VCFTokenizer.mapFile(fileName), numThreads, layout, db);
+			return;
+		}
+		InputStream in = stream ? VCFStreamReader.open(fileName) : new BGZFReader(fileName, numThreads);
+		try {
+			loadStream(in, numThreads, layout, db);
+		} finally {
+			if (!fileName.equals(VCFStreamReader.STDIN)) in.close();
+		}
+	}
+
+	/**
+	 * Function: load(List<ByteBuffer> windows, int numThreads, RecordLayout layout, VCFDatabase db)
+	 * Usage: VCFLoader.load(windows, numThreads, layout, db)
+	 * ----
+	 * Parses every record in the windows and adds the entries that pass
+	 * the filters to the database, in file order. The number of records
+	 * read and rejected by each filter is added to the database's
+	 * FilterCounts.
+	 *
+	 * @param windows	Buffers holding whole lines, in file order
+	 * @param numThreads	The number of threads to parse with
+	 * @param layout	How much of each line the entries keep
+	 * @param db	The database to fill
+	 */
+	static void load(List<ByteBuffer> windows, int numThreads, RecordLayout layout, VCFDatabase db){
+		int waveSize = Math.max(1, numThreads) * CHUNKS_PER_THREAD;
+		ArrayList<ByteBuffer> chunks = splitChunks(windows, waveSize);
+		FilterCounts[] chunkCounts = new FilterCounts[chunks.size()];
+		for (int i = 0; i < chunkCounts.length; i++) chunkCounts[i] = new FilterCounts();
+		ForkJoinPool pool = numThreads > 1 && chunks.size() > 1 ? new ForkJoinPool(numThreads) : null;
+		try {
+			for (int from = 0; from < chunks.size(); from += waveSize){
+				int to = Math.min(chunks.size(), from + waveSize);
+				ArrayList<ArrayList<VCFEntry>> parsed;
+				if (pool == null){
+					parsed = new ArrayList<ArrayList<VCFEntry>>();
+					for (int i = from; i < to; i++) parsed.add(parseChunk(chunks.get(i), chunkCounts[i], layout));
+				} else {
+					parsed = pool.invoke(new ParseTask(chunks, chunkCounts, layout, from, to));
+				}
+				for (ArrayList<VCFEntry> entries : parsed){
+					for (VCFEntry entry : entries) db.addEntry(entry);
+				}
+			}
+		} finally {
+			if (pool != null) pool.shutdown();
+		}
+		for (FilterCounts chunkCount : chunkCounts) db.getFilterCounts().add(chunkCount);
+	}
+
+	/**
+	 * Function: loadStream(InputStream in, int numThreads, RecordLayout layout, VCFDatabase db)
+	 * Usage: VCFLoader.loadStream(VCFStreamReader.open("-"), numThreads, layout, db)
+	 * ----
+	 * Does what load does for a VCF that can only be read once from
+	 * start to end, such as standard input, a named pipe or a
+	 * compressed file. A
+	 * VCFStreamReader reads the stream on its own thread, at most a wave
+	 * of chunks ahead, while the chunks already read are parsed, so
+	 * parsing keeps up with whatever is writing the VCF instead of
+	 * waiting for it to finish. Each wave holds the chunks that are ready
+	 * when the last wave is done, up to CHUNKS_PER_THREAD per thread.
+	 *
+	 * @param in	The uncompressed VCF; it is read to the end but not closed
+	 * @param numThreads	The number of threads to parse with
+	 * @param layout	How much of each line the entries keep
+	 * @param db	The database to fill
+	 * @throws IOException	If the stream cannot be read
+	 */
+	static void loadStream(InputStream in, int numThreads, RecordLayout layout, VCFDatabase db) throws IOException {
+		int waveSize = Math.max(1, numThreads) * CHUNKS_PER_THREAD;
+		VCFStreamReader reader = new VCFStreamReader(in, waveSize);
+		ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+		try {
+			ArrayList<ByteBuffer> chunks = reader.nextChunks(waveSize);
+			while (!chunks.isEmpty()){
+				FilterCounts[] chunkCounts = new FilterCounts[chunks.size()];
+				for (int i = 0; i < chunkCounts.length; i++) chunkCounts[i] = new FilterCounts();
+				ArrayList<ArrayList<VCFEntry>> parsed;
+				if (pool == null || chunks.size() == 1){
+					parsed = new ArrayList<ArrayList<VCFEntry>>();
+					for (int i = 0; i < chunks.size(); i++) parsed.add(parseChunk(chunks.get(i), chunkCounts[i], layout));
+				} else {
+					parsed = pool.invoke(new ParseTask(chunks, chunkCounts, layout, 0, chunks.size()));
+				}
+				for (ArrayList<VCFEntry> entries : parsed){
+					for (VCFEntry entry : entries) db.addEntry(entry);
+				}
+				for (FilterCounts chunkCount : chunkCounts) db.getFilterCounts().add(chunkCount);
+				chunks = reader.nextChunks(waveSize);
+			}
+		} finally {
+			reader.close();
+			if (pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * Function: splitChunks(List<ByteBuffer> windows, int targetChunks)
+	 * Usage: ArrayList<ByteBuffer> chunks = splitChunks(windows, targetChunks)
+	 * ----
+	 * Cuts the windows into roughly equal chunks that each end right
+	 * after a newline. Chunks are views sharing the window's memory, so
+	 * entries parsed from them refer to the original mapping. No chunk
+	 * is made smaller than MIN_CHUNK_SIZE or, unless a single line is
+	 * longer, larger than MAX_CHUNK_SIZE.
+	 *
+	 * @param windows	Buffers holding whole lines, in file order
+	 * @param targetChunks	About how many chunks to make in total
+	 * @return	The chunks in file order
+	 */
+	static ArrayList<ByteBuffer> splitChunks(List<ByteBuffer> windows, int targetChunks){
+		long totalSize = 0;
+		for (ByteBuffer window : windows) totalSize += window.remaining();
+		long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, totalSize / Math.max(1, targetChunks) + 1));
+		ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+		for (ByteBuffer window : windows){
+			int start = window.position();
+			int limit = window.limit();
+			while (start < limit){
+				int end = (int) Math.min(limit, start + chunkSize);
+				while (end < limit && window.get(end - 1) != '\n') end++;
+				ByteBuffer chunk = window.duplicate();
+				chunk.limit(end);
+				chunk.position(start);
+				chunks.add(chunk);
+				start = end;
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Function: parseChunk(ByteBuffer chunk, FilterCounts counts, RecordLayout layout)
+	 * Usage: ArrayList<VCFEntry> entries = parseChunk(chunk, counts, layout)
+	 * ----
+	 * Tokenizes one chunk, filters its records and decodes the survivors,
+	 * timing each of the three stages.
+	 *
+	 * @param chunk	A buffer holding whole lines
+	 * @param counts	Receives the chunk's record and rejection counts and stage times
+	 * @param layout	How much of each line the entries keep
+	 * @return	The chunk's surviving entries in order
+	 */
+	static ArrayList<VCFEntry> parseChunk(ByteBuffer chunk, FilterCounts counts, RecordLayout layout){
+		ArrayList<VCFEntry> entries = new ArrayList<VCFEntry>();
+		VCFTokenizer tokenizer = new VCFTokenizer(chunk);
+		long tokenizeNanos = 0;
+		long classifyNanos = 0;
+		long decodeNanos = 0;
+		long time = System.nanoTime();
+		while (tokenizer.nextRecord()){
+			long tokenized = System.nanoTime();
+			int verdict = classify(tokenizer);
+			long classified = System.nanoTime();
+			counts.count(verdict, tokenizer.getLineEnd() - tokenizer.getLineStart() + 1);
+			tokenizeNanos += tokenized - time;
+			classifyNanos += classified - tokenized;
+			time = classified;
+			if (verdict != PASSED) continue;
+			entries.add(new VCFEntry(tokenizer, layout));
+			time = System.nanoTime();
+			decodeNanos += time - classified;
+		}
+		//Whatever follows the last record, such as trailing header lines
+		tokenizeNanos += System.nanoTime() - time;
+		counts.addNanos(tokenizeNanos, classifyNanos, decodeNanos);
+		return entries;
+	}
+
+	/**
+	 * Function: classify(VCFTokenizer tokenizer)
+	 * Usage: if (classify(tokenizer) == PASSED) ...
+	 * ----
+	 * Applies the filters every entry must pass to be stored, reading
+	 * only the sample columns of the tokenizer's current record: no
+	 * sample may be uncalled ("./."), the entry must not be a
+	 * germline variant shared by all samples, and the average
+	 * coverage over the samples must be above COVERAGE. The first two
+	 * only look at the GT value of each sample; DP is only parsed for
+	 * records that get as far as the coverage check. GT and DP are
+	 * found where the record's FORMAT column puts them.
+	 *
+	 * @param tokenizer	A tokenizer whose last call to nextRecord() returned true
+	 * @return	PASSED, or the verdict of the first filter the record fails
+	 * @throws NumberFormatException	If a record reaching the coverage check lacks a DP value
+	 */
+	static int classify(VCFTokenizer tokenizer){
+		ByteBuffer buffer = tokenizer.getBuffer();
+		int numFields = tokenizer.getNumFields();
+		FormatLayout format = numFields > FIRST_SAMPLE ? tokenizer.getFormatLayout() : FormatLayout.GATK;
+		//Makes sure entries are legitimate, and checks for shared samples on the way.
+		boolean isGermline = true;
+		for (int field = FIRST_SAMPLE; field < numFields; field++){
+			int start = tokenizer.getFieldStart(field);
+			int end = tokenizer.getFieldEnd(field);
+			if (end - start == 3 && buffer.get(start) == '.' && buffer.get(start + 1) == '/' && buffer.get(start + 2) == '.')
+				return MISSING;
+			if (isGermline && !isAltGenotype(buffer, start, end, format.getGenotypeIndex())) isGermline = false;
+		}
+		/* TO FILTER OUT ALL SHARED SAMPLES */
+		if (isGermline) return GERMLINE;
+		/* TO FILTER OUT SNVs with low coverage in all SAMPLES*/
+		int totalCoverage = 0;
+		for (int field = FIRST_SAMPLE; field < numFields; field++){
+			totalCoverage += readDepth(buffer, tokenizer.getFieldStart(field), tokenizer.getFieldEnd(field), format.getReadDepthIndex(), field - FIRST_SAMPLE);
+		}
+		return (2.0*totalCoverage)/(numFields - FIRST_SAMPLE) > COVERAGE ? PASSED : LOW_COVERAGE;
+	}
+
+	/**
+	 * Function: isAltGenotype(ByteBuffer buffer, int start, int end, int gt)
+	 * Usage: if (isAltGenotype(buffer, start, end, gt)) ...
+	 * ----
+	 * @param gt	The position of GT among the record's FORMAT keys
+	 * @return	true if the GT value of the sample column in [start, end)
+	 * 			is "0/1" or "1/1"
+	 */
+	private static boolean isAltGenotype(ByteBuffer buffer, int start, int end, int gt){
+		int gtStart = FormatLayout.valueStart(buffer, start, end, gt);
+		if (gtStart < 0 || FormatLayout.valueEnd(buffer, gtStart, end) - gtStart != 3) return false;
+		byte first = buffer.get(gtStart);
+		return (first == '0' || first == '1') && buffer.get(gtStart + 1) == '/' && buffer.get(gtStart + 2) == '1';
+	}
+
+	/**
+	 * Function: readDepth(ByteBuffer buffer, int start, int end, int dp, int sample)
+	 * Usage: totalCoverage += readDepth(buffer, start, end, dp, sample)
+	 * ----
+	 * Parses the DP value of a sample column.
+	 *
+	 * @param dp	The position of DP among the record's FORMAT keys
+	 * @return	The sample's read depth
+	 * @throws NumberFormatException	If the column has no DP value
+	 */
+	private static int readDepth(ByteBuffer buffer, int start, int end, int dp, int sample){
+		int dpStart = FormatLayout.valueStart(buffer, start, end, dp);
+		if (dpStart < 0) throw new NumberFormatException("No DP value for sample " + sample);
+		return VCFTokenizer.parseInt(buffer, dpStart, FormatLayout.valueEnd(buffer, dpStart, end));
+	}
+
+	/**
+	 * Class: ParseTask
+	 * Constructor: ParseTask(List<ByteBuffer> chunks, FilterCounts[] counts, RecordLayout layout, int from, int to)
+	 * ----
+	 * Parses the chunks in [from, to), splitting the range in half until
+	 * a single chunk is left. Results are joined left before right, so
+	 * the returned lists stay in chunk order.
+	 */
+	private static class ParseTask extends RecursiveTask<ArrayList<ArrayList<VCFEntry>>> {
+
+		private static final long serialVersionUID = 1L;
+		private final List<ByteBuffer> chunks;
+		private final FilterCounts[] counts;
+		private final RecordLayout layout;
+		private final int from;
+		private final int to;
+
+		ParseTask(List<ByteBuffer> chunks, FilterCounts[] counts, RecordLayout layout, int from, int to){
+			this.chunks = chunks;
+			this.counts = counts;
+			this.layout = layout;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected ArrayList<ArrayList<VCFEntry>> compute(){
+			if (to - from == 1){
+				ArrayList<ArrayList<VCFEntry>> result = new ArrayList<ArrayList<VCFEntry>>();
+				result.add(parseChunk(chunks.get(from), counts[from], layout));
+				return result;
+			}
+			int mid = (from + to) >>> 1;
+			ParseTask left = new ParseTask(chunks, counts, layout, from, mid);
+			ParseTask right = new ParseTask(chunks, counts, layout, mid, to);
+			right.fork();
+			ArrayList<ArrayList<VCFEntry>> result = left.compute();
+			result.addAll(right.join());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/**
+ * Class: VCFSnapshot
+ * Constructor: None
+ * ----
+ * Saves the filtered entries of a VCFDatabase to a binary file and
+ * loads them back without parsing the VCF again. The snapshot is
+ * columnar: the field offsets, GATK code words, genotypes and depths
+ * of every entry are stored as flat arrays, followed by the bytes of
+ * the surviving lines. A reloaded database memory-maps the snapshot
+ * and its entries read their lines straight from the mapping.
+ *
+ * Each snapshot records the length and content hash of the VCF it
+ * was built from, the filter settings and the format version. A
+ * snapshot whose key does not match is ignored and rebuilt. The
+ * input is hashed on every reload. Its modification time is not
+ * recorded: a same-length edit can keep it (cp -p, rsync -t,
+ * touch -r, or two writes within the filesystem's time granularity),
+ * so it could not stand in for the hash, and a touched but unchanged
+ * input still reloads.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+class VCFSnapshot {
+
+	/* Private Constants */
+	private static final long MAGIC = 0x564346534e415053L; // "VCFSNAPS"
+	/* Bump whenever the layout, the filters in VCFLoader.classify or how entries are decoded change */
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 8 + 8 * 4 + 4 * 5;
+	private static final int HASH_CHUNK = 1 << 16;
+
+	private VCFSnapshot(){}
+
+	/**
+	 * Function: contentHash(String fileName)
+	 * Usage: long hash = VCFSnapshot.contentHash(fileName)
+	 * ----
+	 * Hashes the bytes of a file with CRC32 and Adler32, one in each
+	 * half of the result. Both are cheap enough that hashing costs a
+	 * small fraction of parsing the file.
+	 *
+	 * @param fileName	The path of the file to hash
+	 * @return	The 64-bit content hash
+	 * @throws IOException	If the file cannot be read
+	 */
+	static long contentHash(String fileName) throws IOException {
+		CRC32 crc = new CRC32();
+		Adler32 adler = new Adler32();
+		byte[] chunk = new byte[HASH_CHUNK];
+		InputStream in = new FileInputStream(fileName);
+		try {
+			int n;
+			while ((n = in.read(chunk)) > 0){
+				crc.update(chunk, 0, n);
+				adler.update(chunk, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return (crc.getValue() << 32) | adler.getValue();
+	}
+
+	/**
+	 * Function: write(VCFDatabase db, String snapshotFile, String inputFile)
+	 * Usage: VCFSnapshot.write(db, snapshotFile, inputFile)
+	 * ----
+	 * Writes the database's entries to a snapshot keyed by the VCF they
+	 * were parsed from. The file is written under a temporary name and
+	 * renamed when complete, so a reader never sees a partial snapshot.
+	 *
+	 * @param db	The database to save
+	 * @param snapshotFile	The path of the snapshot
+	 * @param inputFile	The VCF the database was built from
+	 * @throws IOException	If the VCF cannot be hashed or the snapshot cannot be written
+	 */
+	static void write(VCFDatabase db, String snapshotFile, String inputFile) throws IOException {
+		File input = new File(inputFile);
+		long inputLength = input.length();
+		long inputHash = contentHash(inputFile);
+		int numEntries = db.size();
+		int totalFields = 0;
+		int totalSamples = 0;
+		int totalWords = 0;
+		long blobLength = 0;
+		for (int i = 0; i < numEntries; i++){
+			VCFEntry entry = db.getEntry(i);
+			if (entry.getSource() == null) throw new IOException("Entries that do not keep their lines cannot be saved");
+			int[] starts = entry.getFieldStarts();
+			totalFields += starts.length;
+			totalSamples += entry.getNumSamples();
+			totalWords += entry.getGATKCode().numWords();
+			blobLength += entry.getLineEnd() - starts[0] + 1;
+		}
+		long snapshotSize = HEADER_SIZE + 4L * (2 * numEntries + totalFields) + 8L * totalWords + 13L * totalSamples + blobLength;
+		if (snapshotSize > Integer.MAX_VALUE) throw new IOException("Too large to snapshot: " + snapshotSize + " bytes");
+		File target = new File(snapshotFile);
+		File temp = new File(snapshotFile + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(VCFConstants.COVERAGE);
+			out.writeLong(inputLength);
+			out.writeLong(inputHash);
+			FilterCounts counts = db.getFilterCounts();
+			out.writeLong(counts.getRecords());
+			out.writeLong(counts.getRejectedMissing());
+			out.writeLong(counts.getRejectedGermline());
+			out.writeLong(counts.getRejectedLowCoverage());
+			out.writeInt(numEntries);
+			out.writeInt(totalFields);
+			out.writeInt(totalSamples);
+			out.writeInt(totalWords);
+			out.writeInt((int) blobLength);
+			for (int i = 0; i < numEntries; i++) out.writeInt(db.getEntry(i).getFieldStarts().length);
+			//Field offsets and line ends are stored relative to the start of the line bytes
+			int linePos = 0;
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				int[] starts = entry.getFieldStarts();
+				for (int j = 0; j < starts.length; j++) out.writeInt(linePos + starts[j] - starts[0]);
+				linePos += entry.getLineEnd() - starts[0] + 1;
+			}
+			linePos = 0;
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				int[] starts = entry.getFieldStarts();
+				out.writeInt(linePos + entry.getLineEnd() - starts[0]);
+				linePos += entry.getLineEnd() - starts[0] + 1;
+			}
+			for (int i = 0; i < numEntries; i++){
+				GATKCode code = db.getEntry(i).getGATKCode();
+				for (int w = 0; w < code.numWords(); w++) out.writeLong(code.getWord(w));
+			}
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				for (int s = 0; s < entry.getNumSamples(); s++) out.writeByte(entry.getGenotypeCode(s));
+			}
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				for (int s = 0; s < entry.getNumSamples(); s++) out.writeInt(entry.getRefDepth(s));
+			}
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				for (int s = 0; s < entry.getNumSamples(); s++) out.writeInt(entry.getAltDepth(s));
+			}
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				for (int s = 0; s < entry.getNumSamples(); s++) out.writeInt(entry.getRawReadDepth(s));
+			}
+			for (int i = 0; i < numEntries; i++){
+				VCFEntry entry = db.getEntry(i);
+				ByteBuffer source = entry.getSource();
+				for (int b = entry.getLineStart(); b < entry.getLineEnd(); b++) out.write(source.get(b));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		if (target.exists() && !target.delete()) throw new IOException("Cannot replace " + snapshotFile);
+		if (!temp.renameTo(target)) throw new IOException("Cannot write " + snapshotFile);
+	}
+
+	/**
+	 * Function: read(String snapshotFile, String inputFile)
+	 * Usage: VCFDatabase db = VCFSnapshot.read(snapshotFile, inputFile)
+	 * ----
+	 * Maps a snapshot and rebuilds the database from its columns.
+	 *
+	 * @param snapshotFile	The path of the snapshot
+	 * @param inputFile	The VCF the caller wants a database for
+	 * @return	The database, or null if there is no snapshot or it was
+	 * 			made from other input, with other filters or by another version
+	 * @throws IOException	If the snapshot or the VCF cannot be read
+	 */
+	static VCFDatabase read(String snapshotFile, String inputFile) throws IOException {
+		File file = new File(snapshotFile);
+		if (!file.isFile() || file.length() < HEADER_SIZE) return null;
+		MappedByteBuffer map;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) return null;
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		File input = new File(inputFile);
+		if (map.getLong(0) != MAGIC || map.getInt(8) != VERSION || map.getDouble(12) != VCFConstants.COVERAGE
+				|| map.getLong(20) != input.length()) return null;
+		if (map.getLong(28) != contentHash(inputFile)) return null;
+		FilterCounts counts = new FilterCounts(map.getLong(36), map.getLong(44), map.getLong(52), map.getLong(60));
+		int numEntries = map.getInt(68);
+		int totalFields = map.getInt(72);
+		int totalSamples = map.getInt(76);
+		int totalWords = map.getInt(80);
+		int blobLength = map.getInt(84);
+		int numFieldsPos = HEADER_SIZE;
+		int fieldStartsPos = numFieldsPos + 4 * numEntries;
+		int lineEndsPos = fieldStartsPos + 4 * totalFields;
+		int wordsPos = lineEndsPos + 4 * numEntries;
+		int genotypesPos = wordsPos + 8 * totalWords;
+		int refDepthsPos = genotypesPos + totalSamples;
+		int altDepthsPos = refDepthsPos + 4 * totalSamples;
+		int readDepthsPos = altDepthsPos + 4 * totalSamples;
+		int blobPos = readDepthsPos + 4 * totalSamples;
+		if ((long) blobPos + blobLength != map.capacity()) throw new IOException("Corrupt snapshot " + snapshotFile);
+
+		//Copy each column out in bulk; per-element reads from the mapping are far slower
+		int[] numStarts = readInts(map, numFieldsPos, numEntries);
+		int[] fieldStarts = readInts(map, fieldStartsPos, totalFields);
+		int[] lineEnds = readInts(map, lineEndsPos, numEntries);
+		long[] words = new long[totalWords];
+		((ByteBuffer) map.duplicate().position(wordsPos)).asLongBuffer().get(words);
+		byte[] genotypes = new byte[totalSamples];
+		((ByteBuffer) map.duplicate().position(genotypesPos)).get(genotypes);
+		int[] refDepths = readInts(map, refDepthsPos, totalSamples);
+		int[] altDepths = readInts(map, altDepthsPos, totalSamples);
+		int[] readDepths = readInts(map, readDepthsPos, totalSamples);
+
+		VCFDatabase db = new VCFDatabase(counts);
+		int field = 0;
+		int sample = 0;
+		int word = 0;
+		for (int i = 0; i < numEntries; i++){
+			int[] starts = new int[numStarts[i]];
+			for (int j = 0; j < starts.length; j++) starts[j] = blobPos + fieldStarts[field + j];
+			field += starts.length;
+			int numSamples = Math.max(0, starts.length - 1 - 9);
+			long[] codeWords = new long[GATKCode.numWords(numSamples)];
+			System.arraycopy(words, word, codeWords, 0, codeWords.length);
+			word += codeWords.length;
+			int[] depths = new int[3 * numSamples];
+			System.arraycopy(refDepths, sample, depths, 0, numSamples);
+			System.arraycopy(altDepths, sample, depths, numSamples, numSamples);
+			System.arraycopy(readDepths, sample, depths, 2 * numSamples, numSamples);
+			db.addEntry(new VCFEntry(map, starts, blobPos + lineEnds[i], slice(genotypes, sample, numSamples),
+					depths, GATKCode.fromWords(numSamples, codeWords)));
+			sample += numSamples;
+		}
+		return db;
+	}
+
+	private static int[] readInts(ByteBuffer map, int position, int count){
+		int[] values = new int[count];
+		((ByteBuffer) map.duplicate().position(position)).asIntBuffer().get(values);
+		return values;
+	}
+
+	private static byte[] slice(byte[] values, int from, int count){
+		byte[] result = new byte[count];
+		System.arraycopy(values, from, result, 0, count);
+		return result;
+	}
+}
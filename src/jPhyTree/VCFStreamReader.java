@@ -0,0 +1,225 @@
+/**
+ * Class: VCFStreamReader
+ * Constructor: VCFStreamReader(InputStream in, int readAhead)
+ * ----
+ * Reads a VCF from a stream, such as standard input or a named pipe,
+ * on a background thread and hands it out as buffers of whole lines
+ * for the tokenizer. At most readAhead buffers of about CHUNK_SIZE
+ * bytes are read ahead of the caller, so the stream is consumed while
+ * earlier buffers are being parsed but a fast producer cannot fill
+ * the heap. A slow producer is not waited on for longer than it takes
+ * to fill one buffer.
+ *
+ * Each buffer is a new array that is never reused, so entries may
+ * keep referring to the buffer they were parsed from.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+class VCFStreamReader implements Runnable {
+
+	/* The file name that stands for standard input */
+	static final String STDIN = "-";
+
+	/* Private Constants */
+	private static final int CHUNK_SIZE = 1 << 20;
+	/* Queued after the last buffer, or after a read error */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/* Private Instance Variables */
+	private final InputStream in;
+	private final BlockingQueue<ByteBuffer> chunks;
+	private final Thread thread;
+	private volatile IOException error;
+	private boolean done;
+
+	/**
+	 * Function: VCFStreamReader(InputStream in, int readAhead)
+	 * Usage: (Constructor)
+	 * ----
+	 * Starts reading the stream on a daemon thread.
+	 *
+	 * @param in	The uncompressed VCF; see open to decompress it
+	 * @param readAhead	How many buffers may be read before the caller takes them
+	 */
+	VCFStreamReader(InputStream in, int readAhead){
+		this.in = in;
+		chunks = new ArrayBlockingQueue<ByteBuffer>(Math.max(1, readAhead) + 1);
+		thread = new Thread(this, "VCF stream reader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Function: isStream(String fileName)
+	 * Usage: if (VCFStreamReader.isStream(fileName)) ...
+	 * ----
+	 * @param fileName	A path given for a VCF
+	 * @return	true if the VCF has to be read as a stream rather than mapped:
+	 * 			the path is "-", for standard input, or names something
+	 * 			other than a regular file, such as a named pipe
+	 */
+	static boolean isStream(String fileName){
+		if (fileName.equals(STDIN)) return true;
+		File file = new File(fileName);
+		return file.exists() && !file.isFile();
+	}
+
+	/**
+	 * Function: open(String fileName)
+	 * Usage: InputStream in = VCFStreamReader.open(fileName)
+	 * ----
+	 * Opens a VCF as a stream, "-" being standard input, and
+	 * decompresses it if it is gzip or BGZF compressed.
+	 *
+	 * @param fileName	The path of the VCF, or "-"
+	 * @return	The uncompressed VCF
+	 * @throws IOException	If the file cannot be opened
+	 */
+	static InputStream open(String fileName) throws IOException {
+		return decompress(fileName.equals(STDIN) ? System.in : new FileInputStream(fileName));
+	}
+
+	/**
+	 * Function: decompress(InputStream in)
+	 * Usage: InputStream vcf = VCFStreamReader.decompress(in)
+	 * ----
+	 * Looks at the first two bytes of the stream without consuming them
+	 * and, if they are the gzip magic number, inflates the stream. Every
+	 * member of a multi-member file, as BGZF files are, is inflated.
+	 *
+	 * @param in	A VCF, compressed or not
+	 * @return	The uncompressed VCF
+	 * @throws IOException	If the stream cannot be read
+	 */
+	static InputStream decompress(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+		buffered.mark(2);
+		boolean gzip = buffered.read() == 0x1f && buffered.read() == 0x8b;
+		buffered.reset();
+		if (!gzip) return buffered;
+		return new GZIPInputStream(new MemberStream(buffered), 1 << 16);
+	}
+
+	/**
+	 * Function: nextChunks(int max)
+	 * Usage: ArrayList<ByteBuffer> chunks = reader.nextChunks(max)
+	 * ----
+	 * Waits for the next buffer, then takes up to max - 1 more that are
+	 * already read, without waiting for the producer to write them. Only
+	 * the last buffer of the stream may end without a newline.
+	 *
+	 * @param max	The most buffers to take
+	 * @return	The next buffers of whole lines, in stream order; empty at
+	 * 			the end of the stream
+	 * @throws IOException	If reading the stream failed
+	 */
+	ArrayList<ByteBuffer> nextChunks(int max) throws IOException {
+		ArrayList<ByteBuffer> result = new ArrayList<ByteBuffer>();
+		if (done) return result;
+		ByteBuffer chunk;
+		try {
+			chunk = chunks.take();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the VCF stream");
+		}
+		while (chunk != null && chunk != END){
+			result.add(chunk);
+			chunk = result.size() < max ? chunks.poll() : null;
+		}
+		if (chunk == END){
+			done = true;
+			if (error != null) throw error;
+		}
+		return result;
+	}
+
+	/**
+	 * Function: close()
+	 * Usage: reader.close()
+	 * ----
+	 * Stops the background thread if it is still reading, as when the
+	 * caller gives up before the end of the stream. The stream itself
+	 * is left open.
+	 */
+	void close(){
+		done = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * Function: run()
+	 * Usage: (Called by the background thread)
+	 * ----
+	 * Fills buffers from the stream and queues the whole lines of each,
+	 * carrying a partial last line over to the next buffer.
+	 */
+	public void run(){
+		try {
+			byte[] buffer = new byte[CHUNK_SIZE];
+			int filled = 0;
+			while (true){
+				int read = in.read(buffer, filled, buffer.length - filled);
+				if (read > 0) filled += read;
+				if (read >= 0 && filled < buffer.length) continue;
+				int end = read < 0 ? filled : lastLineEnd(buffer, filled);
+				if (end == 0 && read >= 0){
+					//A single line fills the buffer
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+					continue;
+				}
+				byte[] next = new byte[Math.max(CHUNK_SIZE, filled - end)];
+				System.arraycopy(buffer, end, next, 0, filled - end);
+				if (end > 0) chunks.put(ByteBuffer.wrap(buffer, 0, end));
+				if (read < 0) break;
+				filled -= end;
+				buffer = next;
+			}
+		} catch (IOException e){
+			error = e;
+		} catch (InterruptedException e){
+			return;
+		}
+		try {
+			chunks.put(END);
+		} catch (InterruptedException e){
+			//The caller has stopped reading
+		}
+	}
+
+	private static int lastLineEnd(byte[] buffer, int filled){
+		for (int i = filled - 1; i >= 0; i--){
+			if (buffer[i] == '\n') return i + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Class: MemberStream
+	 * Constructor: MemberStream(InputStream in)
+	 * ----
+	 * GZIPInputStream only looks for another member after the end of
+	 * one when available() says more bytes are waiting, which a pipe
+	 * may not say even though the producer has more to write. This
+	 * stream always claims a byte is available; at the real end of the
+	 * input, GZIPInputStream finds no header and stops as it should.
+	 */
+	private static class MemberStream extends FilterInputStream {
+
+		MemberStream(InputStream in){
+			super(in);
+		}
+
+		public int available() throws IOException {
+			return Math.max(1, super.available());
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * Class: VCFTokenizer
+ * Constructor: VCFTokenizer(ByteBuffer buffer)
+ * ----
+ * This class walks the records of a VCF file directly in a byte
+ * buffer (normally a memory-mapped region of the file). For each
+ * record it only records the byte offsets of the tab-delimited
+ * fields; no Strings are created while scanning. Header lines
+ * (starting with "#") and empty lines are skipped.
+ * 
+ * The FORMAT layout of a record is resolved at most once, the first
+ * time it is asked for, with the previous record's as a hint.
+ */
+package jPhyTree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+public class VCFTokenizer {
+
+	/* Private Constants */
+	private static final int MAX_WINDOW = 1 << 30;
+	private static final int INITIAL_FIELDS = 16;
+	private static final int FORMAT_FIELD = 8;
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/* Private Instance Variables */
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+	private int lineStart;
+	private int lineEnd;
+	private int numFields;
+	private int[] fieldStarts;
+	private long numLines;
+	/* The Chromosomes id of the last entry built from this tokenizer, a hint for the next */
+	int chromosomeHint = -1;
+	/* The FORMAT layout of the last record it was asked for, and that record's number */
+	private FormatLayout formatLayout;
+	private long formatLine = -1;
+
+	/**
+	 * Function: VCFTokenizer(ByteBuffer buffer)
+	 * Usage: (Constructor)
+	 * ----
+	 * Creates a tokenizer over the bytes between the buffer's
+	 * position and limit. The buffer's own position is never moved;
+	 * all reads are absolute.
+	 *
+	 * @param buffer	The buffer holding whole VCF lines
+	 */
+	public VCFTokenizer(ByteBuffer buffer){
+		this.buffer = buffer;
+		position = buffer.position();
+		limit = buffer.limit();
+		fieldStarts = new int[INITIAL_FIELDS];
+	}
+
+	/**
+	 * Function: mapFile(String fileName)
+	 * Usage: ArrayList<ByteBuffer> windows = VCFTokenizer.mapFile(fileName)
+	 * ----
+	 * Memory-maps a file read-only. A single mapping cannot exceed 2GB, so
+	 * larger files are mapped as several windows. Every window except the
+	 * last ends right after a newline, so no record is ever split between
+	 * two windows.
+	 *
+	 * @param fileName	The path of the file to map
+	 * @return	The mapped windows in file order
+	 * @throws IOException	If the file cannot be opened or mapped
+	 */
+	public static ArrayList<ByteBuffer> mapFile(String fileName) throws IOException {
+		ArrayList<ByteBuffer> windows = new ArrayList<ByteBuffer>();
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			long offset = 0;
+			while (offset < size){
+				long length = Math.min(size - offset, MAX_WINDOW);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				int end = (int) length;
+				if (offset + length < size){
+					while (end > 0 && window.get(end - 1) != '\n') end--;
+					if (end == 0) throw new IOException("Line longer than " + MAX_WINDOW + " bytes in " + fileName);
+				}
+				window.limit(end);
+				windows.add(window);
+				offset += end;
+			}
+		} finally {
+			file.close();
+		}
+		return windows;
+	}
+
+	/**
+	 * Function: nextRecord()
+	 * Usage: while (tokenizer.nextRecord()) ...
+	 * ----
+	 * Advances to the next data line and records where each of its
+	 * fields starts. Trailing carriage returns are dropped.
+	 *
+	 * @return	true if a record was found; false at the end of the buffer
+	 */
+	public boolean nextRecord(){
+		while (position < limit){
+			int start = position;
+			int end = start;
+			while (end < limit && buffer.get(end) != '\n') end++;
+			position = end + 1;
+			if (end > start && buffer.get(end - 1) == '\r') end--;
+			if (end == start || buffer.get(start) == '#') continue;
+			lineStart = start;
+			lineEnd = end;
+			numLines++;
+			numFields = 0;
+			addField(start);
+			for (int i = start; i < end; i++){
+				if (buffer.get(i) == '\t') addField(i + 1);
+			}
+			//Sentinel so that the end of field i is always fieldStarts[i + 1] - 1
+			if (numFields == fieldStarts.length) growFields();
+			fieldStarts[numFields] = end + 1;
+			//Like String.split, trailing empty fields are not counted
+			while (numFields > 1 && fieldStarts[numFields - 1] == fieldStarts[numFields] - 1){
+				numFields--;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Function: addField(int start)
+	 * Usage: addField(start)
+	 * ----
+	 * Appends the start offset of a new field, growing the offset array if needed.
+	 *
+	 * @param start	The absolute offset of the field's first byte
+	 */
+	private void addField(int start){
+		if (numFields == fieldStarts.length) growFields();
+		fieldStarts[numFields++] = start;
+	}
+
+	private void growFields(){
+		int[] grown = new int[fieldStarts.length * 2];
+		System.arraycopy(fieldStarts, 0, grown, 0, fieldStarts.length);
+		fieldStarts = grown;
+	}
+
+	/**
+	 * Function: getBuffer()
+	 * Usage: ByteBuffer buffer = tokenizer.getBuffer()
+	 * ----
+	 * @return	The buffer the offsets of this tokenizer refer to
+	 */
+	public ByteBuffer getBuffer(){
+		return buffer;
+	}
+
+	/**
+	 * Function: getNumFields()
+	 * Usage: int numFields = tokenizer.getNumFields()
+	 * ----
+	 * @return	The number of tab-delimited fields in the current record
+	 */
+	public int getNumFields(){
+		return numFields;
+	}
+
+	/**
+	 * Function: getFieldStart(int field)
+	 * Usage: int start = tokenizer.getFieldStart(field)
+	 * ----
+	 * @param field	The 0-indexed field of the current record
+	 * @return	The absolute offset of the field's first byte
+	 */
+	public int getFieldStart(int field){
+		return fieldStarts[field];
+	}
+
+	/**
+	 * Function: getFieldEnd(int field)
+	 * Usage: int end = tokenizer.getFieldEnd(field)
+	 * ----
+	 * @param field	The 0-indexed field of the current record
+	 * @return	The absolute offset just past the field's last byte
+	 */
+	public int getFieldEnd(int field){
+		return fieldStarts[field + 1] - 1;
+	}
+
+	/**
+	 * Function: getLineStart()
+	 * Usage: int start = tokenizer.getLineStart()
+	 * ----
+	 * @return	The absolute offset of the current record's first byte
+	 */
+	public int getLineStart(){
+		return lineStart;
+	}
+
+	/**
+	 * Function: getLineEnd()
+	 * Usage: int end = tokenizer.getLineEnd()
+	 * ----
+	 * @return	The absolute offset just past the current record's last byte
+	 */
+	public int getLineEnd(){
+		return lineEnd;
+	}
+
+	/**
+	 * Function: getNumLines()
+	 * Usage: long lines = tokenizer.getNumLines()
+	 * ----
+	 * @return	The number of data records returned so far
+	 */
+	public long getNumLines(){
+		return numLines;
+	}
+
+	/**
+	 * Function: getFormatLayout()
+	 * Usage: FormatLayout layout = tokenizer.getFormatLayout()
+	 * ----
+	 * @return	Where GT, AD and DP sit in the sample columns of the current
+	 * 			record; FormatLayout.GATK if it has no FORMAT column
+	 */
+	FormatLayout getFormatLayout(){
+		if (formatLine != numLines){
+			if (numFields > FORMAT_FIELD) formatLayout = FormatLayout.resolve(buffer, getFieldStart(FORMAT_FIELD), getFieldEnd(FORMAT_FIELD), formatLayout);
+			else formatLayout = FormatLayout.GATK;
+			formatLine = numLines;
+		}
+		return formatLayout;
+	}
+
+	/**
+	 * Function: copyFieldStarts()
+	 * Usage: int[] starts = tokenizer.copyFieldStarts()
+	 * ----
+	 * Returns the field offsets of the current record, including the
+	 * trailing sentinel, so that they outlive the next call to nextRecord().
+	 *
+	 * @return	An array of numFields + 1 absolute offsets
+	 */
+	int[] copyFieldStarts(){
+		int[] starts = new int[numFields + 1];
+		System.arraycopy(fieldStarts, 0, starts, 0, numFields + 1);
+		return starts;
+	}
+
+	/**
+	 * Function: decode(ByteBuffer buffer, int start, int end)
+	 * Usage: String str = VCFTokenizer.decode(buffer, start, end)
+	 * ----
+	 * Decodes the bytes in [start, end) of the buffer into a String.
+	 *
+	 * @param buffer	The buffer to read
+	 * @param start	The absolute offset of the first byte
+	 * @param end	The absolute offset just past the last byte
+	 * @return	The decoded String
+	 */
+	static String decode(ByteBuffer buffer, int start, int end){
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(start + i);
+		return new String(bytes, CHARSET);
+	}
+
+	/**
+	 * Function: parseInt(ByteBuffer buffer, int start, int end)
+	 * Usage: int value = VCFTokenizer.parseInt(buffer, start, end)
+	 * ----
+	 * Parses a non-negative decimal integer directly from the buffer.
+	 *
+	 * @param buffer	The buffer to read
+	 * @param start	The absolute offset of the first digit
+	 * @param end	The absolute offset just past the last digit
+	 * @return	The parsed value
+	 * @throws NumberFormatException	If a non-digit byte is found or the range is empty
+	 */
+	static int parseInt(ByteBuffer buffer, int start, int end){
+		if (start >= end) throw new NumberFormatException("Empty number");
+		int value = 0;
+		for (int i = start; i < end; i++){
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) throw new NumberFormatException(decode(buffer, start, end));
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Function: indexOf(ByteBuffer buffer, int start, int end, byte b)
+	 * Usage: int index = VCFTokenizer.indexOf(buffer, start, end, b)
+	 * ----
+	 * @param buffer	The buffer to search
+	 * @param start	The absolute offset to start from
+	 * @param end	The absolute offset to stop at
+	 * @param b	The byte to look for
+	 * @return	The offset of the first occurrence of b in [start, end), or end if absent
+	 */
+	static int indexOf(ByteBuffer buffer, int start, int end, byte b){
+		for (int i = start; i < end; i++){
+			if (buffer.get(i) == b) return i;
+		}
+		return end;
+	}
+}
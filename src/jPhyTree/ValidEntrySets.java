@@ -0,0 +1,104 @@
+/**
+ * Class: ValidEntrySets
+ * Constructor: (None; returned by VCFDatabase.getValidEntrySets)
+ * ----
+ * The result of testing every entry of one GATK code against several
+ * destination codes at once. The entries are numbered 0..size()-1 in
+ * the order they were added to the database, and for each destination
+ * two BitSets over those numbers say which entries can be converted to
+ * it and which cannot; they are the validEntries and failCodes lists
+ * getValidEntries fills for the same pair.
+ *
+ * The BitSets belong to the caller, who may change them, for instance
+ * to clear entries a set cover has already moved.
+ */
+package jPhyTree;
+
+import java.util.*;
+
+public class ValidEntrySets {
+
+	/* Private Instance Variables */
+	private VCFDatabase db;
+	private String inputCode;
+	private int[] ordinals;
+	private Map<String, BitSet> validSets;
+	private Map<String, BitSet> failedSets;
+
+	ValidEntrySets(VCFDatabase db, String inputCode, int[] ordinals,
+			Map<String, BitSet> validSets, Map<String, BitSet> failedSets){
+		this.db = db;
+		this.inputCode = inputCode;
+		this.ordinals = ordinals;
+		this.validSets = validSets;
+		this.failedSets = failedSets;
+	}
+
+	/**
+	 * Function: getInputCode()
+	 * Usage: String code = sets.getInputCode()
+	 * ----
+	 * @return	The GATK code whose entries were tested
+	 */
+	public String getInputCode(){
+		return inputCode;
+	}
+
+	/**
+	 * Function: size()
+	 * Usage: int numEntries = sets.size()
+	 * ----
+	 * @return	The number of entries with the input code
+	 */
+	public int size(){
+		return ordinals.length;
+	}
+
+	/**
+	 * Function: getEntry(int index)
+	 * Usage: VCFEntry entry = sets.getEntry(index)
+	 * ----
+	 * @param index	A bit of one of the sets, between 0 and size() - 1
+	 * @return	The entry that bit stands for
+	 */
+	public VCFEntry getEntry(int index){
+		return db.getEntry(ordinals[index]);
+	}
+
+	/**
+	 * Function: getEntries(BitSet entries)
+	 * Usage: ArrayList<VCFEntry> entries = sets.getEntries(bits)
+	 * ----
+	 * @param entries	A set of entry bits
+	 * @return	The entries whose bits are set, in the order they were added to the database
+	 */
+	public ArrayList<VCFEntry> getEntries(BitSet entries){
+		ArrayList<VCFEntry> result = new ArrayList<VCFEntry>(entries.cardinality());
+		for (int i = entries.nextSetBit(0); i >= 0; i = entries.nextSetBit(i + 1)) result.add(getEntry(i));
+		return result;
+	}
+
+	/**
+	 * Function: getValid(String destCode)
+	 * Usage: BitSet valid = sets.getValid(destCode)
+	 * ----
+	 * @param destCode	One of the destination codes the sets were built for
+	 * @return	The entries that can be converted to destCode, or null if
+	 * 			destCode was not tested
+	 */
+	public BitSet getValid(String destCode){
+		return validSets.get(destCode);
+	}
+
+	/**
+	 * Function: getFailed(String destCode)
+	 * Usage: BitSet failed = sets.getFailed(destCode)
+	 * ----
+	 * @param destCode	One of the destination codes the sets were built for
+	 * @return	The entries that cannot be converted to destCode, or null if
+	 * 			destCode was not tested
+	 */
+	public BitSet getFailed(String destCode){
+		return failedSets.get(destCode);
+	}
+}